@@ -0,0 +1,65 @@
+package de.tu_berlin.cit.vs.jms.benchmarks;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatFactory;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.NoBenchmarksException;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Runs every suite and writes all results into one JMH JSON file, so runs of different releases
+ * can be compared with any JMH result viewer or diffed directly.
+ *
+ * The trading benchmark is repeated for each thread count, the thread count is part of every
+ * JSON entry. System properties:
+ * <ul>
+ *     <li>bench.include - regex of benchmarks to run, default all</li>
+ *     <li>bench.threads - comma separated thread counts for TradingBenchmark, default 1,2,4,8</li>
+ *     <li>bench.result - output file, default jmh-result.json</li>
+ * </ul>
+ * For single runs the standard JMH command line works as well: java -cp benchmarks.jar org.openjdk.jmh.Main -h
+ */
+public class BenchmarkMain {
+    private static final String TRADING = "de.tu_berlin.cit.vs.jms.broker.TradingBenchmark";
+
+    public static void main(String[] args) throws RunnerException, FileNotFoundException {
+        String include = System.getProperty("bench.include", "de.tu_berlin.cit.vs.jms");
+        String result = System.getProperty("bench.result", "jmh-result.json");
+        List<RunResult> results = new ArrayList<>();
+
+        results.addAll(run(new OptionsBuilder()
+                .include(include)
+                .exclude(TRADING)));
+
+        if (Pattern.compile(include).matcher(TRADING).find()) {
+            for (String threads : System.getProperty("bench.threads", "1,2,4,8").split(",")) {
+                results.addAll(run(new OptionsBuilder()
+                        .include(TRADING)
+                        .threads(Integer.parseInt(threads.trim()))));
+            }
+        }
+
+        try (PrintStream out = new PrintStream(result)) {
+            ResultFormatFactory.getInstance(ResultFormatType.JSON, out).writeOut(results);
+        }
+        System.out.println("Results written to " + result);
+    }
+
+    private static Collection<RunResult> run(ChainedOptionsBuilder options) throws RunnerException {
+        try {
+            return new Runner(options.build()).run();
+        } catch (NoBenchmarksException e) {
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.*;
+import org.openjdk.jmh.annotations.*;
+
+import javax.jms.JMSException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Orders per millisecond through the broker, submitted one message per order or as one
+ * BatchOrderMessage of 100 legs across 10 symbols: decoding the binary request, executing it and
+ * encoding the reply. The JMS send and receive per message come on top in a real deployment and
+ * are not measured here, so the single path only looks better than it is.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchOrderBenchmark {
+    static final int LEGS = 100;
+
+    @Param({"ALL_OR_NOTHING", "BEST_EFFORT"})
+    BatchOrderMessage.Mode mode;
+
+    SimpleBroker broker;
+    Client client;
+    String[] symbols;
+    // buys one share of each symbol in turn, then sells them again, so every invocation leaves the state as it was
+    byte[] batch;
+    byte[][] singles;
+
+    @Setup(Level.Trial)
+    public void startBroker() throws JMSException {
+        symbols = BenchmarkBroker.symbols(10);
+        broker = BenchmarkBroker.start(symbols, Integer.MAX_VALUE / 2, FixedPoint.fromUnits(100));
+        client = BenchmarkBroker.register(broker, "rebalancer", FixedPoint.fromUnits(1_000_000));
+        BatchOrderMessage orders = new BatchOrderMessage(mode);
+        singles = new byte[LEGS][];
+        for (int i = 0; i < LEGS; i++) {
+            String symbol = symbols[i % symbols.length];
+            BrokerMessage single;
+            if (i < LEGS / 2) {
+                orders.buy(symbol, 1);
+                single = new BuyMessage(symbol, 1);
+            } else {
+                orders.sell(symbol, 1);
+                single = new SellMessage(symbol, 1);
+            }
+            singles[i] = BinaryCodec.encode(single);
+        }
+        batch = BinaryCodec.encode(orders);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopBroker() throws JMSException {
+        broker.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LEGS)
+    public int single() throws Exception {
+        int replyBytes = 0;
+        for (byte[] request : singles) {
+            BrokerMessage order = BinaryCodec.decode(request, null);
+            Execution execution = order instanceof BuyMessage buy
+                    ? broker.buyStock(client, buy.getStockName(), buy.getAmount())
+                    : broker.sellStock(client, ((SellMessage) order).getStockName(), ((SellMessage) order).getAmount());
+            replyBytes += BinaryCodec.encode(new ExecutionReportMessage(execution.getOrderId(), execution.getStockName(),
+                    execution.getSide(), execution.getQuantity(), execution.getPrice(), execution.getFunds(),
+                    execution.getQuoteVersion(), null)).length;
+        }
+        return replyBytes;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LEGS)
+    public int batched() throws Exception {
+        BatchOrderMessage orders = (BatchOrderMessage) BinaryCodec.decode(batch, null);
+        return BinaryCodec.encode(broker.executeBatch(client, orders)).length;
+    }
+}
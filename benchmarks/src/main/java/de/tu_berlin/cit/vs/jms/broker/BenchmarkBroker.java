@@ -0,0 +1,47 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.Stock;
+
+import javax.jms.JMSException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * SimpleBroker on an in-VM, non-persistent ActiveMQ broker with an exchange that replays no
+ * prices, so benchmarks need no external service and always trade at the same price.
+ */
+final class BenchmarkBroker {
+    static final String VM_URL = "vm://benchmarks?broker.persistent=false&broker.useJmx=false";
+
+    private BenchmarkBroker() {
+    }
+
+    static String[] symbols(int count) {
+        String[] symbols = new String[count];
+        for (int i = 0; i < count; i++) {
+            symbols[i] = "SYM" + i;
+        }
+        return symbols;
+    }
+
+    static SimpleBroker start(String[] symbols, int sharesPerSymbol, long priceMicros) throws JMSException {
+        return start(symbols, sharesPerSymbol, priceMicros, new BrokerOptions());
+    }
+
+    static SimpleBroker start(String[] symbols, int sharesPerSymbol, long priceMicros, BrokerOptions options)
+            throws JMSException {
+        Map<String, Stock> stocks = new HashMap<>();
+        for (String symbol : symbols) {
+            stocks.put(symbol, new Stock(symbol, sharesPerSymbol, priceMicros));
+        }
+        options.setBrokerUrl(VM_URL);
+        return new SimpleBroker(new StockExchange(stocks), options);
+    }
+
+    static Client register(SimpleBroker broker, String clientName, long funds) throws JMSException {
+        if (broker.registerClient(clientName, broker.con, funds) != 0) {
+            throw new IllegalStateException("Could not register " + clientName);
+        }
+        return broker.getClient(clientName);
+    }
+}
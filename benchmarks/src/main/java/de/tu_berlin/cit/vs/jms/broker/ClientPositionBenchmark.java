@@ -0,0 +1,45 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.FixedPoint;
+import org.openjdk.jmh.annotations.*;
+
+import javax.jms.JMSException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client.addStock and removeStock on a client already holding {@code positions} other symbols.
+ * The client has no JMS resources, only its position map is exercised.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClientPositionBenchmark {
+    @Param({"1", "100"})
+    int positions;
+
+    Client client;
+    long price = FixedPoint.fromUnits(100);
+
+    @Setup(Level.Trial)
+    public void createClient() throws JMSException {
+        client = new Client(null, "bench", null, null, 0L);
+        for (int i = 0; i < positions; i++) {
+            client.addStock("HELD" + i, 10, price);
+        }
+    }
+
+    @Benchmark
+    public void addThenRemove() throws JMSException {
+        client.addStock("SYM", 1, price);
+        client.removeStock("SYM", 1);
+    }
+
+    @Benchmark
+    public void addToExisting() throws JMSException {
+        client.addStock("HELD0", 1, price);
+        client.removeStock("HELD0", 1);
+    }
+}
@@ -0,0 +1,80 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.FixedPoint;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Trade throughput with the trade journal off and at each durability level, same workload as
+ * TradingBenchmark. Run with -t N: in SYNC mode concurrent trades share one force.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JournalBenchmark {
+    @Param({"off", "none", "batch", "sync"})
+    String journal;
+
+    SimpleBroker broker;
+    String[] names;
+    Path directory;
+    final AtomicInteger traders = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void startBroker() throws Exception {
+        names = BenchmarkBroker.symbols(10);
+        BrokerOptions options = new BrokerOptions();
+        if (!journal.equals("off")) {
+            directory = Files.createTempDirectory("journal-benchmark");
+            options.setJournalDir(directory.toString());
+            options.setJournalDurability(JournalDurability.valueOf(journal.toUpperCase()));
+        }
+        broker = BenchmarkBroker.start(names, Integer.MAX_VALUE / 2, FixedPoint.fromUnits(100), options);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopBroker() throws Exception {
+        broker.stop();
+        if (directory != null) {
+            delete(directory);
+        }
+    }
+
+    static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Trader {
+        Client client;
+        int next;
+
+        @Setup(Level.Trial)
+        public void register(JournalBenchmark benchmark) throws Exception {
+            client = BenchmarkBroker.register(benchmark.broker, "trader-" + benchmark.traders.incrementAndGet(),
+                    FixedPoint.fromUnits(1_000_000));
+            next = benchmark.traders.get();
+        }
+    }
+
+    @Benchmark
+    public long buyThenSell(Trader trader) throws Exception {
+        String stockName = names[trader.next++ % names.length];
+        broker.buyStock(trader.client, stockName, 1);
+        return broker.sellStock(trader.client, stockName, 1).getPrice();
+    }
+}
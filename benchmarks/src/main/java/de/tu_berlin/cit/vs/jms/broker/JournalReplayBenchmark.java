@@ -0,0 +1,71 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.FixedPoint;
+import de.tu_berlin.cit.vs.jms.common.Stock;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Start-up recovery: replaying a journal of 10M events (1000 accounts buying and selling 10
+ * symbols) into accounts and stock availability, as SimpleBroker does before accepting clients.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JournalReplayBenchmark {
+    @Param({"10000000"})
+    int events;
+
+    Path directory;
+    String[] symbols;
+
+    @Setup(Level.Trial)
+    public void writeJournal() throws Exception {
+        directory = Files.createTempDirectory("journal-replay");
+        symbols = BenchmarkBroker.symbols(10);
+        try (TradeJournal journal = TradeJournal.open(directory, TradeJournal.DEFAULT_SEGMENT_BYTES,
+                JournalDurability.NONE, 10, new JournalRecovery(null, new HashMap<>()))) {
+            int accounts = 1000;
+            for (int i = 0; i < accounts; i++) {
+                journal.register("client-" + i, FixedPoint.fromUnits(1_000_000));
+            }
+            for (int i = accounts; i < events; i++) {
+                String client = "client-" + (i % accounts);
+                int round = i / accounts - 1;
+                // every other round sells back what the round before bought
+                String symbol = symbols[(round / 2) % symbols.length];
+                if (round % 2 == 0) {
+                    journal.buy(client, symbol, 1, FixedPoint.fromUnits(100));
+                } else {
+                    journal.sell(client, symbol, 1, FixedPoint.fromUnits(101));
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteJournal() throws Exception {
+        JournalBenchmark.delete(directory);
+    }
+
+    @Benchmark
+    public long replay() throws Exception {
+        Map<String, Stock> stocks = new HashMap<>();
+        for (String symbol : symbols) {
+            stocks.put(symbol, new Stock(symbol, 1_000_000, FixedPoint.fromUnits(100)));
+        }
+        JournalRecovery recovery = new JournalRecovery(null, stocks);
+        try (TradeJournal journal = TradeJournal.open(directory, TradeJournal.DEFAULT_SEGMENT_BYTES,
+                JournalDurability.NONE, 10, recovery)) {
+            return journal.getRecoveredEvents();
+        }
+    }
+}
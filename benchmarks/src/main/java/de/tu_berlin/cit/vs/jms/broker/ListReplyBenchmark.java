@@ -0,0 +1,47 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.FixedPoint;
+import de.tu_berlin.cit.vs.jms.common.ListMessage;
+import de.tu_berlin.cit.vs.jms.common.WireFormat;
+import org.openjdk.jmh.annotations.*;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the JMS reply to a STOCK_LIST request in the binary wire format: copying and encoding
+ * all stocks per request versus the prepared reply of ResponseCache between ticks and trades.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListReplyBenchmark {
+    @Param({"10", "100"})
+    int symbols;
+
+    SimpleBroker broker;
+
+    @Setup(Level.Trial)
+    public void startBroker() throws JMSException {
+        broker = BenchmarkBroker.start(BenchmarkBroker.symbols(symbols), 1000, FixedPoint.fromUnits(100));
+    }
+
+    @TearDown(Level.Trial)
+    public void stopBroker() throws JMSException {
+        broker.stop();
+    }
+
+    @Benchmark
+    public Message fresh() throws JMSException {
+        return PreparedReply.toJms(broker.session, new ListMessage(broker.getStockExchangeMap()), WireFormat.BINARY);
+    }
+
+    @Benchmark
+    public Message cached() throws JMSException {
+        return PreparedReply.toJms(broker.session, broker.getResponseCache().list(), WireFormat.BINARY);
+    }
+}
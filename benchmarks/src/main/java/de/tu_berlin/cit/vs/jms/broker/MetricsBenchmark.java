@@ -0,0 +1,44 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.BrokerMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of --metrics: the clock reads and histogram records SimpleBroker.dispatch adds
+ * to one request, and an uncontended lock wait record. Run with -t N to see contention on the
+ * shared histogram buckets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+    BrokerMetrics metrics;
+
+    @Setup(Level.Trial)
+    public void create() {
+        metrics = new BrokerMetrics(() -> 0);
+    }
+
+    @Benchmark
+    public void request() {
+        long received = System.nanoTime();
+        long started = System.nanoTime();
+        long done = System.nanoTime();
+        metrics.recordRequest(BrokerMessage.Type.STOCK_BUY, done - received, done - started);
+    }
+
+    @Benchmark
+    public void uncontendedLock() {
+        metrics.recordLockWait(0);
+    }
+
+    @Benchmark
+    public void topicPublish() {
+        metrics.topicPublished();
+    }
+}
@@ -0,0 +1,70 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.FixedPoint;
+import de.tu_berlin.cit.vs.jms.common.Side;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching on one symbol's book with 1M resting orders: 500k bids and 500k asks of one share
+ * each, spread over 1000 price levels per side. Every operation is a marketable buy that fills
+ * the oldest order of the best ask level, followed by a new one-share ask on one of the 1000 ask
+ * levels in turn, so the book stays at 1M orders and levels keep emptying and coming back.
+ *
+ * matchesPerSecond gives the throughput, matchLatency the percentiles (p99 in the JMH output).
+ * Both include the replenishing ask, a plain insert into a level.
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class OrderBookBenchmark {
+    static final int RESTING_ORDERS = 1_000_000;
+    static final int LEVELS = 1000;
+    static final long TICK = FixedPoint.parse("0.01");
+    static final long BEST_ASK = FixedPoint.fromUnits(100);
+    static final long BEST_BID = BEST_ASK - TICK;
+
+    OrderBook book;
+    long nextOrderId;
+    int nextLevel;
+    long matched;
+    final OrderBook.FillListener onFill = (resting, quantity, price) -> matched += quantity;
+
+    @Setup(Level.Trial)
+    public void fillBook() {
+        book = new OrderBook("SYM");
+        OrderBook.FillListener none = (resting, quantity, price) -> {
+        };
+        for (int i = 0; i < RESTING_ORDERS / 2; i++) {
+            long offset = (i % LEVELS) * TICK;
+            book.submit(++nextOrderId, null, Side.SELL, 1, BEST_ASK + offset, none);
+            book.submit(++nextOrderId, null, Side.BUY, 1, BEST_BID - offset, none);
+        }
+        if (book.restingOrderCount() != RESTING_ORDERS) {
+            throw new IllegalStateException("Book holds " + book.restingOrderCount() + " orders");
+        }
+    }
+
+    private long matchOne() {
+        book.submit(++nextOrderId, null, Side.BUY, 1, BEST_ASK + LEVELS * TICK, onFill);
+        nextLevel = nextLevel + 1 == LEVELS ? 0 : nextLevel + 1;
+        book.submit(++nextOrderId, null, Side.SELL, 1, BEST_ASK + nextLevel * TICK, onFill);
+        return matched;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public long matchesPerSecond() {
+        return matchOne();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long matchLatency() {
+        return matchOne();
+    }
+}
@@ -0,0 +1,76 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.Stock;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One unthrottled replay of the whole price history per operation, as the exchange's ticker runs
+ * it with --replay max: from the CSV through commons-csv and processStockRecord, or from the
+ * converted PriceFeedFile through processPriceRow, each row published on the QuoteBoard. Opening
+ * the file is part of every replay. The rows counter gives the replayed rows per second. The file
+ * defaults to the bundled five years and can be changed with -Dbench.prices=path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PriceReplayBenchmark {
+    StockExchange exchange;
+    String csvFile;
+    String mappedFile;
+    final ReplayClock clock = ReplayClock.unthrottled();
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Rows {
+        public long rows;
+    }
+
+    @Setup(Level.Trial)
+    public void convert() throws IOException {
+        Path csv = Path.of(System.getProperty("bench.prices", "historical-prices/stock_prices_5yr.csv"));
+        csvFile = csv.toString();
+        Path mapped = Files.createTempFile("bench", PriceFeedFile.EXTENSION);
+        PriceFeedConverter.convert(csv, mapped);
+        mappedFile = mapped.toString();
+        Map<String, Stock> stocks = new HashMap<>();
+        try (PriceFeedFile feed = new PriceFeedFile(mapped)) {
+            for (int column = 0; column < feed.getSymbolCount(); column++) {
+                stocks.put(feed.getSymbol(column), new Stock(feed.getSymbol(column), 100));
+            }
+        }
+        exchange = new StockExchange(stocks);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        Files.deleteIfExists(Path.of(mappedFile));
+    }
+
+    @Benchmark
+    public boolean csvReplay(Rows rows) throws Exception {
+        long version = exchange.getQuotes().getVersion();
+        clock.start();
+        boolean ticked = exchange.replayCsv(csvFile, clock);
+        rows.rows += exchange.getQuotes().getVersion() - version;
+        return ticked;
+    }
+
+    @Benchmark
+    public boolean mappedReplay(Rows rows) throws Exception {
+        long version = exchange.getQuotes().getVersion();
+        clock.start();
+        boolean ticked = exchange.replayPriceFile(mappedFile, clock);
+        rows.rows += exchange.getQuotes().getVersion() - version;
+        return ticked;
+    }
+}
@@ -0,0 +1,81 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.FixedPoint;
+import de.tu_berlin.cit.vs.jms.common.Stock;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Start-up time with 1M accounts, each having bought into a few of 10 symbols: replaying the whole
+ * journal against loading a snapshot of the same state.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class SnapshotRestartBenchmark {
+    @Param({"1000000"})
+    int accounts;
+
+    // trades per account after its registration
+    @Param({"4", "20"})
+    int trades;
+
+    @Param({"false", "true"})
+    boolean snapshot;
+
+    Path directory;
+    String[] symbols;
+
+    @Setup(Level.Trial)
+    public void writeState() throws Exception {
+        directory = Files.createTempDirectory("snapshot-restart");
+        symbols = BenchmarkBroker.symbols(10);
+        TradeJournal journal = TradeJournal.open(directory, TradeJournal.DEFAULT_SEGMENT_BYTES,
+                JournalDurability.NONE, 10, new JournalRecovery(null, new HashMap<>()));
+        for (int i = 0; i < accounts; i++) {
+            journal.register("client-" + i, FixedPoint.fromUnits(1_000_000));
+        }
+        for (int round = 0; round < trades; round++) {
+            for (int i = 0; i < accounts; i++) {
+                journal.buy("client-" + i, symbols[(i + round) % 4], 1, FixedPoint.fromUnits(100));
+            }
+        }
+        if (snapshot) {
+            Snapshotter snapshotter = new Snapshotter(journal, stocks(), TimeUnit.DAYS.toSeconds(1));
+            journal.close();
+            snapshotter.close();
+        } else {
+            journal.close();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteState() throws Exception {
+        JournalBenchmark.delete(directory);
+    }
+
+    @Benchmark
+    public int restart() throws Exception {
+        JournalRecovery recovery = new JournalRecovery(null, stocks());
+        try (TradeJournal ignored = TradeJournal.open(directory, TradeJournal.DEFAULT_SEGMENT_BYTES,
+                JournalDurability.NONE, 10, recovery)) {
+            return recovery.getAccounts().size();
+        }
+    }
+
+    private Map<String, Stock> stocks() {
+        Map<String, Stock> stocks = new HashMap<>();
+        for (String symbol : symbols) {
+            stocks.put(symbol, new Stock(symbol, Integer.MAX_VALUE, FixedPoint.fromUnits(100)));
+        }
+        return stocks;
+    }
+}
@@ -0,0 +1,88 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.Stock;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applying one historical row to the exchange: StockExchange.processStockRecord on a parsed CSV
+ * record versus processPriceRow on the memory-mapped PriceFeedFile, each followed by publishing
+ * the tick on the QuoteBoard. CSV tokenizing is left out,
+ * records are parsed once in setup. The file defaults to the bundled history and can be changed
+ * with -Dbench.prices=path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StockRecordBenchmark {
+    StockExchange exchange;
+    List<CSVRecord> records;
+    List<String> symbols;
+    PriceFeedFile feed;
+    int[] columns;
+    Path mappedFile;
+    int next;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        Path csv = Path.of(System.getProperty("bench.prices", "historical-prices/stock_prices_5yr.csv"));
+        try (Reader reader = new FileReader(csv.toFile())) {
+            CSVParser parser = CSVFormat.DEFAULT.builder()
+                    .setHeader()
+                    .setIgnoreHeaderCase(true)
+                    .setTrim(false)
+                    .build()
+                    .parse(reader);
+            symbols = new ArrayList<>(parser.getHeaderMap().keySet());
+            symbols.remove("Date");
+            records = parser.getRecords();
+        }
+        Map<String, Stock> stocks = new HashMap<>();
+        for (String symbol : symbols) {
+            stocks.put(symbol, new Stock(symbol, 100));
+        }
+        exchange = new StockExchange(stocks);
+
+        mappedFile = Files.createTempFile("bench", PriceFeedFile.EXTENSION);
+        PriceFeedConverter.convert(csv, mappedFile);
+        feed = new PriceFeedFile(mappedFile);
+        columns = new int[feed.getSymbolCount()];
+        for (int column = 0; column < columns.length; column++) {
+            columns[column] = exchange.getQuoteBoard().indexOf(feed.getSymbol(column));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        feed.close();
+        Files.deleteIfExists(mappedFile);
+    }
+
+    @Benchmark
+    public QuoteBoard.Quotes csvRecord() {
+        exchange.processStockRecord(records.get(next++ % records.size()), symbols);
+        return exchange.getQuoteBoard().publish(next);
+    }
+
+    @Benchmark
+    public QuoteBoard.Quotes mappedRow() {
+        StockExchange.processPriceRow(feed, columns, exchange.getQuoteBoard(), next++ % feed.getRowCount());
+        return exchange.getQuoteBoard().publish(next);
+    }
+}
@@ -0,0 +1,47 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.FixedPoint;
+import de.tu_berlin.cit.vs.jms.common.Stock;
+import de.tu_berlin.cit.vs.jms.common.StockEvent;
+import org.openjdk.jmh.annotations.*;
+
+import javax.jms.JMSException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Text built for a stock topic update (SimpleBroker.updateStockTopic without the send).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopicPayloadBenchmark {
+    @Param({"STOCK_PRICE_CHANGED", "STOCK_BOUGHT", "STOCK_SOLD"})
+    StockEvent event;
+
+    SimpleBroker broker;
+    Stock traded;
+
+    @Setup(Level.Trial)
+    public void startBroker() throws JMSException {
+        broker = BenchmarkBroker.start(new String[]{"MSFT"}, 150, FixedPoint.parse("193.44708251953125"));
+        traded = new Stock("MSFT", 5, FixedPoint.fromUnits(193));
+    }
+
+    @TearDown(Level.Trial)
+    public void stopBroker() throws JMSException {
+        broker.stop();
+    }
+
+    @Benchmark
+    public String fromStock() {
+        return broker.topicPayload(traded, event);
+    }
+
+    @Benchmark
+    public String fromName() {
+        return broker.topicPayload("MSFT", event);
+    }
+}
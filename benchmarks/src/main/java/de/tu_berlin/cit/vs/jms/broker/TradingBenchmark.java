@@ -0,0 +1,59 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.FixedPoint;
+import org.openjdk.jmh.annotations.*;
+
+import javax.jms.JMSException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SimpleBroker.buyStock followed by sellStock of one share, including the topic update each
+ * trade publishes. Run with -t N (BenchmarkMain sweeps the thread counts) to see how the
+ * per-symbol locks scale; symbols=1 puts every thread on the same lock.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TradingBenchmark {
+    @Param({"1", "10"})
+    int symbols;
+
+    SimpleBroker broker;
+    String[] names;
+    final AtomicInteger traders = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void startBroker() throws JMSException {
+        names = BenchmarkBroker.symbols(symbols);
+        broker = BenchmarkBroker.start(names, Integer.MAX_VALUE / 2, FixedPoint.fromUnits(100));
+    }
+
+    @TearDown(Level.Trial)
+    public void stopBroker() throws JMSException {
+        broker.stop();
+    }
+
+    @State(Scope.Thread)
+    public static class Trader {
+        Client client;
+        int next;
+
+        @Setup(Level.Trial)
+        public void register(TradingBenchmark benchmark) throws JMSException {
+            client = BenchmarkBroker.register(benchmark.broker, "trader-" + benchmark.traders.incrementAndGet(),
+                    FixedPoint.fromUnits(1_000_000));
+            next = benchmark.traders.get();
+        }
+    }
+
+    @Benchmark
+    public long buyThenSell(Trader trader) throws Exception {
+        String stockName = names[trader.next++ % names.length];
+        broker.buyStock(trader.client, stockName, 1);
+        return broker.sellStock(trader.client, stockName, 1).getPrice();
+    }
+}
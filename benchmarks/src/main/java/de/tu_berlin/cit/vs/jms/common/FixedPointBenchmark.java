@@ -0,0 +1,80 @@
+package de.tu_berlin.cit.vs.jms.common;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Money arithmetic of one trade, as it was with BigDecimal and as it is with FixedPoint longs:
+ * the cost of the order, the funds check, the withdrawal and the proceeds of selling it back.
+ * The parse benchmarks compare reading a tick's price from the CSV. Run with -prof gc to see the
+ * allocation per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FixedPointBenchmark {
+    // prices as they appear in historical-prices/stock_prices_5yr.csv
+    private static final String[] PRICES = {"193.44708251953125", "415.0899963378906", "128.5500030517578",
+            "61.869998931884766", "2811.919921875"};
+
+    int quantity = 10;
+    int next;
+    BigDecimal[] decimalPrices;
+    long[] fixedPrices;
+    BigDecimal decimalFunds;
+    long fixedFunds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        decimalPrices = new BigDecimal[PRICES.length];
+        fixedPrices = new long[PRICES.length];
+        for (int i = 0; i < PRICES.length; i++) {
+            decimalPrices[i] = new BigDecimal(PRICES[i]);
+            fixedPrices[i] = FixedPoint.parse(PRICES[i]);
+        }
+        decimalFunds = BigDecimal.valueOf(100000);
+        fixedFunds = FixedPoint.fromUnits(100000);
+    }
+
+    private int nextPrice() {
+        next = next + 1 == PRICES.length ? 0 : next + 1;
+        return next;
+    }
+
+    @Benchmark
+    public BigDecimal tradeBigDecimal() {
+        BigDecimal price = decimalPrices[nextPrice()];
+        BigDecimal cost = price.multiply(BigDecimal.valueOf(quantity));
+        if (decimalFunds.compareTo(cost) >= 0) {
+            decimalFunds = decimalFunds.subtract(cost);
+            decimalFunds = decimalFunds.add(price.multiply(BigDecimal.valueOf(quantity)));
+        }
+        return decimalFunds;
+    }
+
+    @Benchmark
+    public long tradeFixedPoint() {
+        long price = fixedPrices[nextPrice()];
+        long cost = FixedPoint.multiply(price, quantity);
+        if (fixedFunds >= cost) {
+            fixedFunds = FixedPoint.subtract(fixedFunds, cost);
+            fixedFunds = FixedPoint.add(fixedFunds, FixedPoint.multiply(price, quantity));
+        }
+        return fixedFunds;
+    }
+
+    @Benchmark
+    public BigDecimal parseBigDecimal() {
+        return new BigDecimal(PRICES[nextPrice()]);
+    }
+
+    @Benchmark
+    public long parseFixedPoint() {
+        return FixedPoint.parse(PRICES[nextPrice()]);
+    }
+}
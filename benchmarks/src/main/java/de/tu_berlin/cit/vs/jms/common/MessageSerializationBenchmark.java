@@ -0,0 +1,98 @@
+package de.tu_berlin.cit.vs.jms.common;
+
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Java serialization, as done by ObjectMessage, of every BrokerMessage subclass. Samples carry
+ * realistic field values, list and profile replies hold the ten stocks the broker lists.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageSerializationBenchmark {
+    @Param({"BuyMessage", "SellMessage", "LimitOrderMessage", "CancelOrderMessage", "RequestInfoMessage",
+            "RequestListMessage", "RequestProfileMessage", "WatchMessage", "UnwatchMessage", "UnregisterMessage",
+            "RegisterMessage", "RegisterAcknowledgementMessage", "InfoMessage", "ListMessage", "ProfileMessage",
+            "TransactionRefusalMessage", "TopicMessage", "OrderReportMessage",
+            "ExecutionReportMessage"})
+    String message;
+
+    BrokerMessage sample;
+    byte[] serialized;
+
+    @Setup(Level.Trial)
+    public void createSample() throws IOException {
+        sample = sample(message);
+        serialized = serialize(sample);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return serialize(sample);
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+            return in.readObject();
+        }
+    }
+
+    private static byte[] serialize(BrokerMessage message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(message);
+        }
+        return bytes.toByteArray();
+    }
+
+    static BrokerMessage sample(String name) {
+        List<Stock> stocks = new ArrayList<>();
+        for (String symbol : new String[]{"MSFT", "NVDA", "AAPL", "GOOGL", "AMZN", "META", "TSLA", "BRK-A", "TSM", "WMT"}) {
+            stocks.add(new Stock(symbol, 150, FixedPoint.parse("193.44708251953125")));
+        }
+        switch (name) {
+            case "BuyMessage": return new BuyMessage("AAPL", 10);
+            case "SellMessage": return new SellMessage("AAPL", 10);
+            case "LimitOrderMessage": return new LimitOrderMessage("AAPL", Side.BUY, 10, FixedPoint.fromUnits(190));
+            case "CancelOrderMessage": return new CancelOrderMessage("AAPL", 123456L);
+            case "RequestInfoMessage": return new RequestInfoMessage("AAPL");
+            case "RequestListMessage": return new RequestListMessage();
+            case "RequestProfileMessage": return new RequestProfileMessage();
+            case "WatchMessage": return new WatchMessage("AAPL");
+            case "UnwatchMessage": return new UnwatchMessage("AAPL");
+            case "UnregisterMessage": return new UnregisterMessage("Client1");
+            case "RegisterMessage": return new RegisterMessage("Client1", BigDecimal.valueOf(100000), WireFormat.BINARY);
+            case "RegisterAcknowledgementMessage":
+                return new RegisterAcknowledgementMessage("Client1", new ActiveMQQueue("Client1ToBroker"),
+                        new ActiveMQQueue("Client1FromBroker"), WireFormat.BINARY);
+            case "InfoMessage": return new InfoMessage(stocks.get(0));
+            case "ListMessage": return new ListMessage(stocks);
+            case "ProfileMessage": return new ProfileMessage("Client1", BigDecimal.valueOf(100000), stocks);
+            case "TransactionRefusalMessage": return new TransactionRefusalMessage("Not enough funds to buy 10 stocks of AAPL");
+            case "TopicMessage": return new TopicMessage(new ActiveMQTopic("AAPL"), true);
+            case "OrderReportMessage":
+                return new OrderReportMessage(123456L, "AAPL", Side.BUY, OrderReportMessage.Status.PARTIALLY_FILLED,
+                        5, FixedPoint.fromUnits(190), 5, null);
+            case "ExecutionReportMessage":
+                return new ExecutionReportMessage(123456L, "AAPL", Side.BUY, 10, FixedPoint.fromUnits(190),
+                        FixedPoint.fromUnits(98100), 4711L, null);
+            default: throw new IllegalArgumentException("Unknown message: " + name);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package de.tu_berlin.cit.vs.jms.common;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode plus decode of the same message as a BinaryCodec body (WireFormat.BINARY) and as a Java
+ * serialized object (WireFormat.OBJECT, what an ObjectMessage carries). The body size of both is
+ * printed once per trial, JMH shows it in the run's output.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireCodecBenchmark {
+    @Param({"BuyMessage", "InfoMessage", "ListMessage", "ProfileMessage", "OrderReportMessage",
+            "ExecutionReportMessage"})
+    String message;
+
+    BrokerMessage sample;
+
+    @Setup(Level.Trial)
+    public void createSample() throws Exception {
+        sample = MessageSerializationBenchmark.sample(message);
+        System.out.println(message + ": binary " + BinaryCodec.encode(sample).length + " bytes, serialized "
+                + serialize(sample).length + " bytes");
+    }
+
+    @Benchmark
+    public BrokerMessage binaryRoundTrip() throws Exception {
+        return BinaryCodec.decode(BinaryCodec.encode(sample), null);
+    }
+
+    @Benchmark
+    public Object serializedRoundTrip() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialize(sample)))) {
+            return in.readObject();
+        }
+    }
+
+    private static byte[] serialize(BrokerMessage message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(message);
+        }
+        return bytes.toByteArray();
+    }
+}
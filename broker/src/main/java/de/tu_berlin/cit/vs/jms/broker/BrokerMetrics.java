@@ -0,0 +1,287 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.BrokerMessage;
+import de.tu_berlin.cit.vs.jms.common.ConcurrentHistogram;
+import de.tu_berlin.cit.vs.jms.common.LoggingUtils;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Instrumentation of the broker, only created with --metrics. Recording is lock-free (atomic
+ * histogram buckets and striped counters) so it can stay on in production; everything is read
+ * through JMX or the optional periodic dump to the log.
+ */
+public class BrokerMetrics implements BrokerMetricsMBean {
+    private static final Logger logger = LoggingUtils.getLogger(BrokerMetrics.class);
+
+    static final String DOMAIN = "de.tu_berlin.cit.vs.jms";
+    // requests clients send; replies and topic messages only flow the other way
+    static final EnumSet<BrokerMessage.Type> REQUEST_TYPES = EnumSet.of(
+            BrokerMessage.Type.SYSTEM_UNREGISTER, BrokerMessage.Type.STOCK_WATCH, BrokerMessage.Type.STOCK_UNWATCH,
+            BrokerMessage.Type.STOCK_LIST, BrokerMessage.Type.STOCK_BUY, BrokerMessage.Type.STOCK_SELL,
+            BrokerMessage.Type.STOCK_INFO, BrokerMessage.Type.STOCK_PROFILE, BrokerMessage.Type.STOCK_LIMIT_ORDER,
+            BrokerMessage.Type.STOCK_CANCEL_ORDER, BrokerMessage.Type.STOCK_BATCH_ORDER,
+            BrokerMessage.Type.PORTFOLIO_SUBSCRIBE);
+
+    private final MessageTypeMetrics[] types = new MessageTypeMetrics[BrokerMessage.Type.values().length];
+    private final ConcurrentHistogram lockWait = new ConcurrentHistogram();
+    private final ConcurrentHistogram registration = new ConcurrentHistogram();
+    private final LongAdder topicPublishes = new LongAdder();
+    private final LongAdder tickBatches = new LongAdder();
+    private final IntSupplier activeClients;
+    private final long startNanos = System.nanoTime();
+
+    private final List<ObjectName> registered = new ArrayList<>();
+    private ScheduledExecutorService dumper;
+    private long lastDumpNanos = startNanos;
+    private long lastDumpTopicPublishes;
+
+    public BrokerMetrics(IntSupplier activeClients) {
+        this.activeClients = activeClients;
+        for (BrokerMessage.Type type : BrokerMessage.Type.values()) {
+            types[type.ordinal()] = new MessageTypeMetrics(type);
+        }
+    }
+
+    // --- recording, called on the hot paths
+
+    void recordRequest(BrokerMessage.Type type, long latencyNanos, long processingNanos) {
+        MessageTypeMetrics metrics = types[type.ordinal()];
+        metrics.latency.record(latencyNanos);
+        metrics.processing.record(processingNanos);
+    }
+
+    // JMSTimestamp is the sender's wall clock, only meaningful when both sides share a host or NTP
+    void recordQueueTime(BrokerMessage.Type type, long jmsTimestamp) {
+        if (jmsTimestamp > 0) {
+            types[type.ordinal()].queueMillis.record(System.currentTimeMillis() - jmsTimestamp);
+        }
+    }
+
+    void recordLockWait(long nanos) {
+        lockWait.record(nanos);
+    }
+
+    void recordRegistration(long nanos) {
+        registration.record(nanos);
+    }
+
+    void topicPublished() {
+        topicPublishes.increment();
+    }
+
+    void tickBatchPublished() {
+        tickBatches.increment();
+    }
+
+    // --- JMX
+
+    public void registerMBeans() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName brokerName = new ObjectName(DOMAIN + ":type=Broker");
+        server.registerMBean(this, brokerName);
+        registered.add(brokerName);
+        for (BrokerMessage.Type type : REQUEST_TYPES) {
+            ObjectName typeName = new ObjectName(DOMAIN + ":type=MessageType,name=" + type.name());
+            server.registerMBean(types[type.ordinal()], typeName);
+            registered.add(typeName);
+        }
+    }
+
+    /**
+     * Logs {@link #dump()} or {@link #dumpJson()} every period on a daemon thread.
+     */
+    public synchronized void startDump(long periodSeconds, boolean json) {
+        dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "MetricsDump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> logger.log(Level.INFO, json ? dumpJson() : dump()),
+                periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void close() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                logger.log(Level.WARNING, "Could not unregister " + name, e);
+            }
+        }
+        registered.clear();
+    }
+
+    // --- reading
+
+    @Override
+    public int getActiveClients() {
+        return activeClients.getAsInt();
+    }
+
+    @Override
+    public long getRequestCount() {
+        long count = 0;
+        for (BrokerMessage.Type type : REQUEST_TYPES) {
+            count += types[type.ordinal()].getCount();
+        }
+        return count;
+    }
+
+    @Override
+    public long getTopicPublishCount() {
+        return topicPublishes.sum();
+    }
+
+    @Override
+    public long getTickBatchCount() {
+        return tickBatches.sum();
+    }
+
+    @Override
+    public double getTopicPublishesPerSecond() {
+        return topicPublishes.sum() / ((System.nanoTime() - startNanos) / 1e9);
+    }
+
+    @Override
+    public long getLockAcquisitions() {
+        return lockWait.snapshot().getCount();
+    }
+
+    @Override
+    public long getContendedLockAcquisitions() {
+        ConcurrentHistogram.Snapshot snapshot = lockWait.snapshot();
+        // uncontended acquisitions are recorded as exactly 0
+        return snapshot.getCount() - snapshot.countAtMost(0);
+    }
+
+    @Override
+    public double getLockWaitMeanMicros() {
+        return lockWait.snapshot().getMean() / 1000;
+    }
+
+    @Override
+    public double getLockWaitP99Micros() {
+        return lockWait.snapshot().getValueAtPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getLockWaitMaxMicros() {
+        return lockWait.snapshot().getMax() / 1000.0;
+    }
+
+    @Override
+    public long getRegistrationCount() {
+        return registration.snapshot().getCount();
+    }
+
+    @Override
+    public double getRegistrationMeanMicros() {
+        return registration.snapshot().getMean() / 1000;
+    }
+
+    @Override
+    public double getRegistrationP99Micros() {
+        return registration.snapshot().getValueAtPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getRegistrationMaxMicros() {
+        return registration.snapshot().getMax() / 1000.0;
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder out = new StringBuilder(String.format(Locale.ROOT,
+                "clients=%d requests=%d topicPublishes=%d (%.1f/s) tickBatches=%d",
+                getActiveClients(), getRequestCount(), getTopicPublishCount(), topicRateSinceLastDump(),
+                getTickBatchCount()));
+        appendLine(out, "lockWait", lockWait.snapshot(), null);
+        appendLine(out, "register", registration.snapshot(), null);
+        for (BrokerMessage.Type type : REQUEST_TYPES) {
+            MessageTypeMetrics metrics = types[type.ordinal()];
+            ConcurrentHistogram.Snapshot latency = metrics.latency.snapshot();
+            if (latency.getCount() > 0) {
+                appendLine(out, type.name(), latency, metrics);
+            }
+        }
+        return out.toString();
+    }
+
+    private static void appendLine(StringBuilder out, String name, ConcurrentHistogram.Snapshot snapshot,
+                                   MessageTypeMetrics type) {
+        out.append(String.format(Locale.ROOT, "%n  %-18s count=%d mean=%.1fus p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                name, snapshot.getCount(), snapshot.getMean() / 1000, snapshot.getValueAtPercentile(50) / 1000.0,
+                snapshot.getValueAtPercentile(99) / 1000.0, snapshot.getValueAtPercentile(99.9) / 1000.0,
+                snapshot.getMax() / 1000.0));
+        if (type != null) {
+            out.append(String.format(Locale.ROOT, " processing p99=%.1fus queue p99=%dms",
+                    type.getProcessingP99Micros(), type.queueMillis.snapshot().getValueAtPercentile(99)));
+        }
+    }
+
+    @Override
+    public String dumpJson() {
+        StringBuilder out = new StringBuilder(String.format(Locale.ROOT,
+                "{\"clients\":%d,\"requests\":%d,\"topicPublishes\":%d,\"topicPublishesPerSecond\":%.1f,\"tickBatches\":%d",
+                getActiveClients(), getRequestCount(), getTopicPublishCount(), topicRateSinceLastDump(),
+                getTickBatchCount()));
+        out.append(",\"lockWait\":");
+        appendJson(out, lockWait.snapshot());
+        out.append(",\"registration\":");
+        appendJson(out, registration.snapshot());
+        out.append(",\"types\":{");
+        String separator = "";
+        for (BrokerMessage.Type type : REQUEST_TYPES) {
+            MessageTypeMetrics metrics = types[type.ordinal()];
+            ConcurrentHistogram.Snapshot latency = metrics.latency.snapshot();
+            if (latency.getCount() == 0) {
+                continue;
+            }
+            out.append(separator).append('"').append(type.name()).append("\":{\"latency\":");
+            appendJson(out, latency);
+            out.append(",\"processing\":");
+            appendJson(out, metrics.processing.snapshot());
+            out.append(",\"queueMillisP99\":").append(metrics.queueMillis.snapshot().getValueAtPercentile(99));
+            out.append('}');
+            separator = ",";
+        }
+        return out.append("}}").toString();
+    }
+
+    private static void appendJson(StringBuilder out, ConcurrentHistogram.Snapshot snapshot) {
+        out.append(String.format(Locale.ROOT,
+                "{\"count\":%d,\"meanMicros\":%.1f,\"p50Micros\":%.1f,\"p99Micros\":%.1f,\"p999Micros\":%.1f,\"maxMicros\":%.1f}",
+                snapshot.getCount(), snapshot.getMean() / 1000, snapshot.getValueAtPercentile(50) / 1000.0,
+                snapshot.getValueAtPercentile(99) / 1000.0, snapshot.getValueAtPercentile(99.9) / 1000.0,
+                snapshot.getMax() / 1000.0));
+    }
+
+    // rate over the time since the previous dump, JMX only offers the average since start
+    private synchronized double topicRateSinceLastDump() {
+        long now = System.nanoTime();
+        long published = topicPublishes.sum();
+        double rate = (published - lastDumpTopicPublishes) / ((now - lastDumpNanos) / 1e9);
+        lastDumpNanos = now;
+        lastDumpTopicPublishes = published;
+        return rate;
+    }
+}
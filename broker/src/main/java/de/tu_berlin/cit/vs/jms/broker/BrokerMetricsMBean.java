@@ -0,0 +1,39 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+/**
+ * Broker-wide metrics as seen in JConsole/VisualVM under de.tu_berlin.cit.vs.jms:type=Broker.
+ * Times are microseconds.
+ */
+public interface BrokerMetricsMBean {
+    int getActiveClients();
+
+    long getRequestCount();
+
+    long getTopicPublishCount();
+
+    long getTickBatchCount();
+
+    double getTopicPublishesPerSecond();
+
+    long getLockAcquisitions();
+
+    long getContendedLockAcquisitions();
+
+    double getLockWaitMeanMicros();
+
+    double getLockWaitP99Micros();
+
+    double getLockWaitMaxMicros();
+
+    long getRegistrationCount();
+
+    double getRegistrationMeanMicros();
+
+    double getRegistrationP99Micros();
+
+    double getRegistrationMaxMicros();
+
+    String dump();
+
+    String dumpJson();
+}
@@ -0,0 +1,287 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import java.time.LocalDate;
+
+/**
+ * Start-up switches of the broker, read from "--name value" pairs on the JmsBrokerServer command line.
+ */
+public class BrokerOptions {
+    private String brokerUrl = "tcp://localhost:61616";
+    // run ActiveMQ inside this JVM, see EmbeddedBroker; the broker then connects in-VM by default
+    private boolean embedded = false;
+    private String listenUrl = "tcp://0.0.0.0:61616?maximumConnections=1000&wireFormat.maxFrameSize=104857600";
+    private EngineMode engineMode = EngineMode.LOCKING;
+    private ChannelMode channelMode = ChannelMode.DEDICATED;
+    private int channelPoolSize = 4;
+    private boolean tickBatch = false;
+    // .csv is parsed row by row, a .prices file from PriceFeedConverter is memory-mapped
+    private String priceFile = "historical-prices/stock_prices_5yr.csv";
+    // replay pacing and window, see ReplayClock
+    private String replay = "interval";
+    private long tickIntervalMillis = 30000;
+    private LocalDate from;
+    private LocalDate to;
+    private boolean loop = false;
+    // synthetic ticks between daily closes, see IntradayTickGenerator; 0 replays the closes only
+    private int intradayTicks = 0;
+    private long seed = 42;
+    private double volatility = 0.02;
+    // JMX instrumentation, see BrokerMetrics; a dump period > 0 also logs it periodically
+    private boolean metrics = false;
+    private long metricsDumpSeconds = 0;
+    private boolean metricsJson = false;
+    // event journal of accounts and trades, see TradeJournal; null keeps all state in memory only
+    private String journalDir;
+    private JournalDurability journalDurability = JournalDurability.BATCH;
+    private long journalFlushMillis = 10;
+    private int journalSegmentBytes = TradeJournal.DEFAULT_SEGMENT_BYTES;
+    // period of the state snapshots next to the journal, see Snapshotter; 0 disables them
+    private long snapshotIntervalSeconds = 300;
+
+    public static BrokerOptions fromArgs(String[] args) {
+        BrokerOptions options = new BrokerOptions();
+        options.embedded = Boolean.parseBoolean(option(args, "--embedded", "false"));
+        options.listenUrl = option(args, "--listen", options.listenUrl);
+        options.brokerUrl = option(args, "--broker-url", options.embedded ? EmbeddedBroker.VM_URL : options.brokerUrl);
+        options.engineMode = EngineMode.valueOf(option(args, "--engine", "locking").toUpperCase());
+        options.channelMode = ChannelMode.valueOf(option(args, "--channels", "dedicated").toUpperCase());
+        options.channelPoolSize = Integer.parseInt(option(args, "--channel-pool", "4"));
+        options.tickBatch = Boolean.parseBoolean(option(args, "--tick-batch", "false"));
+        options.priceFile = option(args, "--prices", options.priceFile);
+        options.replay = option(args, "--replay", options.replay);
+        options.tickIntervalMillis = Long.parseLong(option(args, "--tick-interval", "30000"));
+        String from = option(args, "--from", null);
+        options.from = from == null ? null : LocalDate.parse(from);
+        String to = option(args, "--to", null);
+        options.to = to == null ? null : LocalDate.parse(to);
+        options.loop = Boolean.parseBoolean(option(args, "--loop", "false"));
+        options.intradayTicks = Integer.parseInt(option(args, "--intraday-ticks", "0"));
+        options.seed = Long.parseLong(option(args, "--seed", "42"));
+        options.volatility = Double.parseDouble(option(args, "--volatility", "0.02"));
+        options.metricsDumpSeconds = Long.parseLong(option(args, "--metrics-dump", "0"));
+        options.metrics = Boolean.parseBoolean(option(args, "--metrics", Boolean.toString(options.metricsDumpSeconds > 0)));
+        options.metricsJson = option(args, "--metrics-format", "text").equals("json");
+        options.journalDir = option(args, "--journal", null);
+        options.journalDurability = JournalDurability.valueOf(option(args, "--journal-durability", "batch").toUpperCase());
+        options.journalFlushMillis = Long.parseLong(option(args, "--journal-flush-ms", "10"));
+        options.journalSegmentBytes = Integer.parseInt(option(args, "--journal-segment-mb", "64")) << 20;
+        options.snapshotIntervalSeconds = Long.parseLong(option(args, "--snapshot-interval", "300"));
+        return options;
+    }
+
+    // reads "--name value" from the command line
+    static String option(String[] args, String name, String defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+
+    public String getBrokerUrl() {
+        return brokerUrl;
+    }
+
+    public void setBrokerUrl(String brokerUrl) {
+        this.brokerUrl = brokerUrl;
+    }
+
+    public boolean isEmbedded() {
+        return embedded;
+    }
+
+    public void setEmbedded(boolean embedded) {
+        this.embedded = embedded;
+    }
+
+    public String getListenUrl() {
+        return listenUrl;
+    }
+
+    public void setListenUrl(String listenUrl) {
+        this.listenUrl = listenUrl;
+    }
+
+    public EngineMode getEngineMode() {
+        return engineMode;
+    }
+
+    public void setEngineMode(EngineMode engineMode) {
+        this.engineMode = engineMode;
+    }
+
+    public ChannelMode getChannelMode() {
+        return channelMode;
+    }
+
+    public void setChannelMode(ChannelMode channelMode) {
+        this.channelMode = channelMode;
+    }
+
+    public int getChannelPoolSize() {
+        return channelPoolSize;
+    }
+
+    public void setChannelPoolSize(int channelPoolSize) {
+        this.channelPoolSize = channelPoolSize;
+    }
+
+    public boolean isTickBatch() {
+        return tickBatch;
+    }
+
+    public void setTickBatch(boolean tickBatch) {
+        this.tickBatch = tickBatch;
+    }
+
+    public String getPriceFile() {
+        return priceFile;
+    }
+
+    public void setPriceFile(String priceFile) {
+        this.priceFile = priceFile;
+    }
+
+    public String getReplay() {
+        return replay;
+    }
+
+    public void setReplay(String replay) {
+        this.replay = replay;
+    }
+
+    public long getTickIntervalMillis() {
+        return tickIntervalMillis;
+    }
+
+    public void setTickIntervalMillis(long tickIntervalMillis) {
+        this.tickIntervalMillis = tickIntervalMillis;
+    }
+
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    public void setFrom(LocalDate from) {
+        this.from = from;
+    }
+
+    public LocalDate getTo() {
+        return to;
+    }
+
+    public void setTo(LocalDate to) {
+        this.to = to;
+    }
+
+    public boolean isLoop() {
+        return loop;
+    }
+
+    public void setLoop(boolean loop) {
+        this.loop = loop;
+    }
+
+    public int getIntradayTicks() {
+        return intradayTicks;
+    }
+
+    public void setIntradayTicks(int intradayTicks) {
+        this.intradayTicks = intradayTicks;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public double getVolatility() {
+        return volatility;
+    }
+
+    public void setVolatility(double volatility) {
+        this.volatility = volatility;
+    }
+
+    public boolean isMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(boolean metrics) {
+        this.metrics = metrics;
+    }
+
+    public long getMetricsDumpSeconds() {
+        return metricsDumpSeconds;
+    }
+
+    public void setMetricsDumpSeconds(long metricsDumpSeconds) {
+        this.metricsDumpSeconds = metricsDumpSeconds;
+    }
+
+    public boolean isMetricsJson() {
+        return metricsJson;
+    }
+
+    public void setMetricsJson(boolean metricsJson) {
+        this.metricsJson = metricsJson;
+    }
+
+    public String getJournalDir() {
+        return journalDir;
+    }
+
+    public void setJournalDir(String journalDir) {
+        this.journalDir = journalDir;
+    }
+
+    public JournalDurability getJournalDurability() {
+        return journalDurability;
+    }
+
+    public void setJournalDurability(JournalDurability journalDurability) {
+        this.journalDurability = journalDurability;
+    }
+
+    public long getJournalFlushMillis() {
+        return journalFlushMillis;
+    }
+
+    public void setJournalFlushMillis(long journalFlushMillis) {
+        this.journalFlushMillis = journalFlushMillis;
+    }
+
+    public int getJournalSegmentBytes() {
+        return journalSegmentBytes;
+    }
+
+    public void setJournalSegmentBytes(int journalSegmentBytes) {
+        this.journalSegmentBytes = journalSegmentBytes;
+    }
+
+    public long getSnapshotIntervalSeconds() {
+        return snapshotIntervalSeconds;
+    }
+
+    public void setSnapshotIntervalSeconds(long snapshotIntervalSeconds) {
+        this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return "url=" + brokerUrl + (embedded ? ", embedded listen=" + listenUrl : "") +
+                ", engine=" + engineMode + ", channels=" + channelMode + ", channelPool=" + channelPoolSize +
+                ", tickBatch=" + tickBatch + ", prices=" + priceFile + ", replay=" + replay +
+                (replay.equals("interval") ? " " + tickIntervalMillis + "ms" : "") +
+                (from != null ? ", from=" + from : "") + (to != null ? ", to=" + to : "") + (loop ? ", loop" : "") +
+                (intradayTicks > 0 ? ", intraday=" + intradayTicks + " seed=" + seed + " volatility=" + volatility : "") +
+                (metrics ? ", metrics" + (metricsDumpSeconds > 0 ? " dump=" + metricsDumpSeconds + "s" + (metricsJson ? " json" : "") : "") : "") +
+                (journalDir != null ? ", journal=" + journalDir + " " + journalDurability +
+                        (journalDurability == JournalDurability.BATCH ? " " + journalFlushMillis + "ms" : "") +
+                        (snapshotIntervalSeconds > 0 ? " snapshot=" + snapshotIntervalSeconds + "s" : "") : "");
+    }
+}
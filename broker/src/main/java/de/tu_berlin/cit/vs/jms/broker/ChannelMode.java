@@ -0,0 +1,11 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+/**
+ * How the broker talks to registered clients over JMS.
+ */
+public enum ChannelMode {
+    // every client gets its own session, consumer on <name>ToBroker and producer on <name>FromBroker
+    DEDICATED,
+    // all clients send to one inbound queue drained by a fixed consumer pool, replies use a fixed producer pool
+    SHARED
+}
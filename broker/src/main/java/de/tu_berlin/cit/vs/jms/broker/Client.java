@@ -5,7 +5,6 @@ import de.tu_berlin.cit.vs.jms.common.*;
 import javax.jms.*;
 import java.io.Serializable;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -23,9 +22,24 @@ public class Client {
     private MessageProducer producer;
     private MessageConsumer consumer;
     private Map<String, Stock> stocks = new HashMap<>();
-    private BigDecimal funds;
+    private long funds; // FixedPoint micro-units
+    private volatile WireFormat wireFormat = WireFormat.OBJECT;
+    private final Object sendLock = new Object();
+    // trace of the request being processed; a client's requests are processed one at a time
+    private TraceStamps currentTrace;
+    // JMSCorrelationID of the request being processed, null if the client sent none
+    private String currentCorrelationId;
+    // once subscribed, every change of funds or positions is queued here under this client's monitor
+    // with the next sequence number, and sent ahead of the next message the broker delivers to it
+    private boolean portfolioSubscribed;
+    private long portfolioSequence;
+    private List<BrokerMessage> portfolioOutbox = new ArrayList<>();
+    private List<BrokerMessage> portfolioSpare = new ArrayList<>();
+    private volatile boolean portfolioPending;
+    // held while an outbox is sent, so concurrent flushes cannot reorder the sequence
+    private final Object portfolioSendLock = new Object();
     private SimpleBroker broker;
-    public Client(SimpleBroker broker, String clientName, Connection connection, BigDecimal funds) throws JMSException {
+    public Client(SimpleBroker broker, String clientName, Connection connection, long funds) throws JMSException {
         this.broker = broker;
         this.clientName = clientName;
         this.funds = funds;
@@ -39,6 +53,18 @@ public class Client {
         this.producer = session.createProducer(outgoingQueue);
     }
 
+    /**
+     * Client in ChannelMode.SHARED: no session of its own, requests arrive through the broker's
+     * shared consumers and replies leave through its producer pool.
+     */
+    public Client(SimpleBroker broker, String clientName, Queue incomingQueue, Queue outgoingQueue, long funds) {
+        this.broker = broker;
+        this.clientName = clientName;
+        this.funds = funds;
+        this.incomingQueue = incomingQueue;
+        this.outgoingQueue = outgoingQueue;
+    }
+
     public Queue getIncomingQueue() {
         return incomingQueue;
     }
@@ -56,12 +82,15 @@ public class Client {
     }
 
     public void setMessageListener(MessageListener messageListener) throws JMSException {
-        consumer.setMessageListener(messageListener);
-
+        if (consumer != null) {
+            consumer.setMessageListener(messageListener);
+        }
     }
 
     public void removeMessageListener(MessageListener messageListener) throws JMSException {
-        consumer.setMessageListener(null);
+        if (consumer != null) {
+            consumer.setMessageListener(null);
+        }
     }
 
     public String getClientName() {
@@ -70,152 +99,340 @@ public class Client {
 
     protected void handleClientMessage(Client client, Message msg) {
         try {
-            if (msg instanceof ObjectMessage) {
-                Object obj = ((ObjectMessage) msg).getObject();
-                if (obj instanceof BrokerMessage) {
-                    BrokerMessage brokerMessage = (BrokerMessage) obj;
-                    BrokerMessage.Type msgType = brokerMessage.getType();
-                    switch (msgType) {
-                        case STOCK_INFO:
-                            if (brokerMessage instanceof RequestInfoMessage) {
-                                RequestInfoMessage rim = (RequestInfoMessage) brokerMessage;
-                                ObjectMessage request;
-                                if (broker.getStocks().get(rim.getStockName()) != null) {
-                                    InfoMessage listMessage = new InfoMessage(broker.getStocks().get(rim.getStockName()));
-                                    request = session.createObjectMessage(listMessage);
-                                } else {
-                                    TransactionRefusalMessage listMessage = new TransactionRefusalMessage("No such stock.");
-                                    request = session.createObjectMessage(listMessage);
-                                }
-                                logger.log(Level.FINE, "About to send info message");
-                                producer.send(request);
-                            }
-                            break;
-                        case STOCK_PROFILE:
-                            String clientName = client.getClientName();
-                            BigDecimal funds = client.getFunds();
-                            List<Stock> stocks = new ArrayList<>(client.getClientStocks().values());
-                            ProfileMessage profileMessage = new ProfileMessage(clientName, funds, stocks);
-                            logger.log(Level.FINE, "About to send profile message");
-                            producer.send(session.createObjectMessage(profileMessage));
-                            break;
-                        case STOCK_LIST:
-                            logger.log(Level.FINE, "Listing stocks for: " + client.getClientName());
-                            ListMessage listMessage = new ListMessage(broker.getStockExchangeMap());
-                            ObjectMessage request = session.createObjectMessage(listMessage);
-                            logger.log(Level.FINE, "About to send list message");
-                            producer.send(request);
-                            break;
-                        case SYSTEM_UNREGISTER:
-                            broker.deregisterClient(client.getClientName());
-                            break;
-                        case STOCK_BUY:
-                            logger.log(Level.FINE, "Buy stock request received from : " + client.getClientName());
-
-                            if (brokerMessage instanceof BuyMessage) {
-                                ObjectMessage transactionOM;
-                                try {
-                                    Stock boughtStock = broker.buyStock(
-                                            this, ((BuyMessage) brokerMessage).getStockName(),
-                                            ((BuyMessage) brokerMessage).getAmount());
-                                    addStock(boughtStock.getName(), boughtStock.getMaxStockCount(), boughtStock.getPrice());
-                                    String buyConfirmationPayload = "Confirmation: " + boughtStock.getMaxStockCount() +
-                                            " stocks of " + boughtStock.getName() + " bought. Price: " +
-                                            boughtStock.getPrice().setScale(2, RoundingMode.DOWN);
-                                    TransactionConfirmationMessage transactionConfirmationMessage =
-                                            new TransactionConfirmationMessage(buyConfirmationPayload);
-                                    transactionOM = session.createObjectMessage(transactionConfirmationMessage);
-                                } catch (Exception e) {
-                                    String refusalPayload = "Transaction Refusal: " + e.getMessage();
-                                    TransactionRefusalMessage transactionRefusalMessage =
-                                            new TransactionRefusalMessage(refusalPayload);
-                                    transactionOM = session.createObjectMessage(transactionRefusalMessage);
-                                }
-
-                                    producer.send(transactionOM);
-                            }
-
-                            break;
-                        case STOCK_SELL:
-                            logger.log(Level.FINE, "Sell stock request received from : " + client.getClientName());
-                            if (brokerMessage instanceof SellMessage) {
-                                String stockNameForSell = ((SellMessage) brokerMessage).getStockName();
-                                Integer amount = ((SellMessage) brokerMessage).getAmount();
-                                ObjectMessage transactionOM;
-                                try {
-                                    logger.log(Level.FINE, "Sending Sell Confirmation for : " + client.getClientName());
-                                    BigDecimal price = broker.sellStock(this, stockNameForSell, amount);
-                                    String sellConfirmationPayload = "Confirmation: " + amount + " stocks of "
-                                        + stockNameForSell + " sold. Price: " + price.setScale(2, RoundingMode.DOWN);
-                                    TransactionConfirmationMessage transactionConfirmationMessage =
-                                            new TransactionConfirmationMessage(sellConfirmationPayload);
-                                    transactionOM = session.createObjectMessage(transactionConfirmationMessage);
-                                } catch (JMSException e) {
-                                    logger.log(Level.FINE, "Sending Sell Refusal for : " + client.getClientName());
-                                    String sellRefusalPayload = "Transaction Refusal: " + e.getMessage();
-                                    TransactionRefusalMessage transactionRefusalMessage =
-                                            new TransactionRefusalMessage(sellRefusalPayload);
-                                    transactionOM = session.createObjectMessage(transactionRefusalMessage);
-                                }
-                                producer.send(transactionOM);
-                            }
-
-                            break;
-                        case STOCK_WATCH:
-                            if (brokerMessage instanceof WatchMessage) {
-                                String stockName = ((WatchMessage) brokerMessage).getStockName();
-                                TopicMessage topicMessage = new TopicMessage(broker.topicMap.get(stockName), true);
-                                ObjectMessage topicObject = session.createObjectMessage(topicMessage);
-                                producer.send(topicObject);
-                                logger.log(Level.FINE, "sent Information for subscriber " + client.getClientName() + " to topic " + stockName);
-                            }
-                            break;
-                        case STOCK_UNWATCH:
-                            if (brokerMessage instanceof UnwatchMessage) {
-                                String stockName = ((UnwatchMessage) brokerMessage).getStockName();
-                                TopicMessage topicMessage = new TopicMessage(broker.topicMap.get(stockName), false);
-                                ObjectMessage topicObject = session.createObjectMessage(topicMessage);
-                                producer.send(topicObject);
-                                logger.log(Level.FINE, "sent Information for subscriber " + client.getClientName() + " topic " + stockName);
-                            }
-                            break;
+            BrokerMetrics metrics = broker.getMetrics();
+            long received = metrics != null ? System.nanoTime() : 0;
+            TraceStamps trace = TraceStamps.received(msg);
+            BrokerMessage brokerMessage = decode(msg);
+            if (brokerMessage != null) {
+                brokerMessage.setTrace(trace);
+                brokerMessage.setCorrelationId(msg.getJMSCorrelationID());
+                if (metrics != null) {
+                    metrics.recordQueueTime(brokerMessage.getType(), msg.getJMSTimestamp());
+                }
+                broker.dispatch(client, brokerMessage, received);
+            }
+        } catch (JMSException | RuntimeException e) {
+            // dropped, not thrown: a message that cannot be processed would only be redelivered to fail again
+            logger.severe("Error from client " + client.getClientName() + ": " + e);
+        }
+    }
+
+    /**
+     * Executes one decoded request, either on this client's listener thread or on the
+     * sequencer's business thread, depending on the broker's EngineMode.
+     */
+    protected void processMessage(BrokerMessage brokerMessage) throws JMSException {
+        currentTrace = brokerMessage.getTrace();
+        currentCorrelationId = brokerMessage.getCorrelationId();
+        try {
+            process(brokerMessage);
+        } finally {
+            currentTrace = null;
+            currentCorrelationId = null;
+        }
+    }
+
+    private void process(BrokerMessage brokerMessage) throws JMSException {
+        BrokerMessage.Type msgType = brokerMessage.getType();
+        switch (msgType) {
+            case STOCK_INFO:
+                if (brokerMessage instanceof RequestInfoMessage) {
+                    RequestInfoMessage rim = (RequestInfoMessage) brokerMessage;
+                    BrokerMessage infoReply = broker.getResponseCache().info(rim.getStockName());
+                    if (infoReply == null) {
+                        infoReply = new TransactionRefusalMessage("No such stock.");
+                    }
+                    logger.log(Level.FINE, "About to send info message");
+                    reply(infoReply);
+                }
+                break;
+            case STOCK_PROFILE:
+                BigDecimal funds = FixedPoint.toBigDecimal(getFunds());
+                List<Stock> stocks = new ArrayList<>(getClientStocks().values());
+                ProfileMessage profileMessage = new ProfileMessage(clientName, funds, stocks);
+                logger.log(Level.FINE, "About to send profile message");
+                reply(profileMessage);
+                break;
+            case STOCK_LIST:
+                logger.log(Level.FINE, "Listing stocks for: " + clientName);
+                logger.log(Level.FINE, "About to send list message");
+                reply(broker.getResponseCache().list());
+                break;
+            case SYSTEM_UNREGISTER:
+                broker.deregisterClient(clientName);
+                break;
+            case STOCK_BUY:
+                if (brokerMessage instanceof BuyMessage buy) {
+                    logger.log(Level.FINE, "Buy stock request received from : {0}", clientName);
+                    reply(execute(Side.BUY, buy.getStockName(), buy.getAmount()));
+                }
+                break;
+            case STOCK_SELL:
+                if (brokerMessage instanceof SellMessage sell) {
+                    logger.log(Level.FINE, "Sell stock request received from : {0}", clientName);
+                    reply(execute(Side.SELL, sell.getStockName(), sell.getAmount()));
+                }
+                break;
+            case STOCK_BATCH_ORDER:
+                if (brokerMessage instanceof BatchOrderMessage) {
+                    logger.log(Level.FINE, "Batch order received from : " + clientName);
+                    reply(broker.executeBatch(this, (BatchOrderMessage) brokerMessage));
+                }
+                break;
+            case STOCK_LIMIT_ORDER:
+                if (brokerMessage instanceof LimitOrderMessage) {
+                    LimitOrderMessage order = (LimitOrderMessage) brokerMessage;
+                    logger.log(Level.FINE, "Limit order received from : " + clientName);
+                    try {
+                        // accepted/fill reports are sent by the broker once the order hit the book
+                        broker.placeLimitOrder(this, order.getStockName(), order.getSide(),
+                                order.getAmount(), order.getLimitPrice());
+                    } catch (OrderRejectedException e) {
+                        reply(new OrderReportMessage(0L, order.getStockName(), order.getSide(),
+                                OrderReportMessage.Status.REJECTED, 0, 0L, 0, e.getReason()));
+                    } catch (JMSException | RuntimeException e) {
+                        logger.log(Level.SEVERE, "Error placing limit order of " + clientName, e);
+                        reply(new OrderReportMessage(0L, order.getStockName(), order.getSide(),
+                                OrderReportMessage.Status.REJECTED, 0, 0L, 0, RejectReason.INTERNAL_ERROR));
                     }
                 }
+                break;
+            case STOCK_CANCEL_ORDER:
+                if (brokerMessage instanceof CancelOrderMessage) {
+                    CancelOrderMessage cancel = (CancelOrderMessage) brokerMessage;
+                    reply(broker.cancelOrder(this, cancel.getStockName(), cancel.getOrderId()));
+                }
+                break;
+            case PORTFOLIO_SUBSCRIBE:
+                logger.log(Level.FINE, "Portfolio subscription of " + clientName);
+                subscribePortfolio();
+                flushPortfolio();
+                break;
+            case STOCK_WATCH:
+                if (brokerMessage instanceof WatchMessage) {
+                    String stockName = ((WatchMessage) brokerMessage).getStockName();
+                    sendTopic(stockName, true);
+                    logger.log(Level.FINE, "sent Information for subscriber " + clientName + " to topic " + stockName);
+                }
+                break;
+            case STOCK_UNWATCH:
+                if (brokerMessage instanceof UnwatchMessage) {
+                    String stockName = ((UnwatchMessage) brokerMessage).getStockName();
+                    sendTopic(stockName, false);
+                    logger.log(Level.FINE, "sent Information for subscriber " + clientName + " topic " + stockName);
+                }
+                break;
+        }
+    }
 
+    // a market order's outcome as plain fields, wording it is up to whoever shows it to a person
+    private ExecutionReportMessage execute(Side side, String stockName, int quantity) {
+        try {
+            Execution execution = side == Side.BUY
+                    ? broker.buyStock(this, stockName, quantity)
+                    : broker.sellStock(this, stockName, quantity);
+            return new ExecutionReportMessage(execution.getOrderId(), stockName, side, execution.getQuantity(),
+                    execution.getPrice(), execution.getFunds(), execution.getQuoteVersion(), null);
+        } catch (OrderRejectedException e) {
+            return ExecutionReportMessage.rejected(stockName, side, quantity, getFunds(), e.getReason());
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Could not execute " + side + " of " + quantity + " " + stockName + " for "
+                    + clientName, e);
+            return ExecutionReportMessage.rejected(stockName, side, quantity, getFunds(), RejectReason.INTERNAL_ERROR);
+        }
+    }
+
+    // accepts both encodings regardless of the negotiated format, the client may still be on ObjectMessage
+    private BrokerMessage decode(Message msg) throws JMSException {
+        if (msg instanceof BytesMessage) {
+            return BinaryCodec.fromBytesMessage((BytesMessage) msg, session);
+        }
+        if (msg instanceof ObjectMessage) {
+            Object obj = ((ObjectMessage) msg).getObject();
+            if (obj instanceof BrokerMessage) {
+                return (BrokerMessage) obj;
             }
-        } catch (JMSException e) {
-            logger.severe("Error from client " + client.getClientName() + ": " + e.getMessage());
         }
+        return null;
     }
 
+    private void sendTopic(String stockName, boolean subscribing) throws JMSException {
+        Topic topic = broker.topicMap.get(stockName);
+        if (topic == null) {
+            reply(new TransactionRefusalMessage("No such stock."));
+            return;
+        }
+        reply(new TopicMessage(topic, subscribing));
+    }
 
-    protected synchronized void addFunds(BigDecimal funds) {
-        if (funds == null || funds.compareTo(BigDecimal.ZERO) <= 0)
-            throw new IllegalArgumentException("Invalid requested funds amount: " + funds);
+    private void reply(BrokerMessage message) throws JMSException {
+        if (currentTrace != null) {
+            currentTrace.processed();
+        }
+        if (currentTrace != null || currentCorrelationId != null) {
+            if (message instanceof PreparedReply prepared) {
+                // shared by other sends, trace and correlation go on a copy of the wrapper
+                message = prepared.forRequest(currentTrace, currentCorrelationId);
+            } else {
+                message.setTrace(currentTrace);
+                message.setCorrelationId(currentCorrelationId);
+            }
+        }
+        broker.deliver(this, message);
+    }
 
-        this.funds = this.funds.add(funds);
+    // called by SimpleBroker once it holds the symbol, only while this client's request is processed
+    void traceLockAcquired() {
+        if (currentTrace != null) {
+            currentTrace.lockAcquired();
+        }
     }
 
-    protected synchronized void removeFunds(BigDecimal cost) throws InsufficientFundsException {
-        if (cost == null || cost.compareTo(BigDecimal.ZERO) <= 0)
-            throw new IllegalArgumentException("Invalid Requested funds amount");
+    // order fill reports are sent from other clients' listener threads, the session must not be used concurrently
+    public void send(BrokerMessage message) throws JMSException {
+        if (producer == null) {
+            broker.getSharedChannels().send(this, message, wireFormat);
+            return;
+        }
+        synchronized (sendLock) {
+            producer.send(PreparedReply.toJms(session, message, wireFormat));
+        }
+    }
 
-        if (this.funds == null) throw new InsufficientFundsException("Account has no funds available");
+    /**
+     * Queues a snapshot of funds and positions in place of all unsent updates, which it contains, and
+     * pushes every later change.
+     */
+    protected synchronized void subscribePortfolio() {
+        Map<String, Integer> positions = new HashMap<>(stocks.size() * 2);
+        stocks.forEach((name, stock) -> positions.put(name, stock.getMaxStockCount()));
+        portfolioSubscribed = true;
+        portfolioOutbox.clear();
+        portfolioOutbox.add(new PortfolioSnapshotMessage(portfolioSequence, funds, positions));
+        portfolioPending = true;
+    }
 
-        if (this.funds.compareTo(cost) < 0)
-            throw new InsufficientFundsException("Insufficient funds: available: " + this.funds + ", requested: " + cost);
+    // called by SimpleBroker.deliver before every message to this client
+    void flushPortfolio() throws JMSException {
+        if (!portfolioPending) {
+            return;
+        }
+        synchronized (portfolioSendLock) {
+            List<BrokerMessage> outbox;
+            synchronized (this) {
+                outbox = portfolioOutbox;
+                portfolioOutbox = portfolioSpare;
+                portfolioPending = false;
+            }
+            try {
+                for (BrokerMessage message : outbox) {
+                    broker.sendOrStage(this, message);
+                }
+            } finally {
+                outbox.clear();
+                portfolioSpare = outbox;
+            }
+        }
+    }
 
-        this.funds = this.funds.subtract(cost);
+    // only under this client's monitor, so sequence numbers follow the order of the changes
+    private void recordChange(String stockName, int quantityDelta, long fundsDelta) {
+        if (portfolioSubscribed) {
+            portfolioOutbox.add(new PositionUpdateMessage(++portfolioSequence, stockName, quantityDelta, fundsDelta));
+            portfolioPending = true;
+        }
     }
 
-    protected BigDecimal getFunds() {
+    public WireFormat getWireFormat() {
+        return wireFormat;
+    }
+
+    public void setWireFormat(WireFormat wireFormat) {
+        this.wireFormat = wireFormat;
+    }
+
+
+    protected synchronized void addFunds(long funds) {
+        depositFunds(funds);
+        recordChange(null, 0, funds);
+    }
+
+    protected synchronized void removeFunds(long cost) throws InsufficientFundsException {
+        withdrawFunds(cost);
+        recordChange(null, 0, -cost);
+    }
+
+    private void depositFunds(long funds) {
+        if (funds <= 0)
+            throw new IllegalArgumentException("Invalid requested funds amount: " + FixedPoint.toBigDecimal(funds));
+
+        this.funds = FixedPoint.add(this.funds, funds);
+    }
+
+    private void withdrawFunds(long cost) throws InsufficientFundsException {
+        if (cost <= 0)
+            throw new IllegalArgumentException("Invalid Requested funds amount");
+
+        if (this.funds < cost)
+            throw new InsufficientFundsException("Insufficient funds: available: " + FixedPoint.toBigDecimal(this.funds) +
+                    ", requested: " + FixedPoint.toBigDecimal(cost));
+
+        this.funds = FixedPoint.subtract(this.funds, cost);
+    }
+
+    protected synchronized long getFunds() {
         return funds;
     }
 
-    protected synchronized void addStock(String stockName, Integer quantity, BigDecimal price) throws JMSException {
+    protected synchronized void settleBuy(String stockName, int quantity, long price) throws InsufficientFundsException, JMSException {
+        if (price <= 0)
+            throw new JMSException("Invalid price to buy " + stockName + " at");
+        long cost = FixedPoint.multiply(price, quantity);
+        withdrawFunds(cost);
+        depositStock(stockName, quantity, price);
+        recordChange(stockName, quantity, -cost);
+    }
+
+    /**
+     * A journaled buy, replayed without the funds check it passed when it was live. The journal only
+     * keeps one account's trades in order per symbol, a sale on another symbol that paid for this
+     * buy may come after it, so the funds can be negative until then.
+     */
+    protected synchronized void replayBuy(String stockName, int quantity, long price) {
+        long cost = FixedPoint.multiply(price, quantity);
+        this.funds = FixedPoint.subtract(this.funds, cost);
+        depositStock(stockName, quantity, price);
+        recordChange(stockName, quantity, -cost);
+    }
+
+    protected synchronized void settleSell(String stockName, int quantity, long price) throws JMSException {
+        if (quantity <= 0)
+            throw new JMSException("Invalid requested stock amount: " + quantity);
+        if (price <= 0)
+            throw new JMSException("Invalid price to sell " + stockName + " at");
+
+        // everything that can fail comes before the first change, so a failed sell leaves the account as it was
+        long proceeds = FixedPoint.multiply(price, quantity);
+        long newFunds = FixedPoint.add(this.funds, proceeds);
+        withdrawStock(stockName, quantity);
+        this.funds = newFunds;
+        recordChange(stockName, -quantity, proceeds);
+    }
+
+    protected synchronized void addStock(String stockName, int quantity, long price) throws JMSException {
+        depositStock(stockName, quantity, price);
+        recordChange(stockName, quantity, 0);
+    }
+
+    protected synchronized void removeStock(String stockName, int quantity) throws JMSException {
+        withdrawStock(stockName, quantity);
+        recordChange(stockName, -quantity, 0);
+    }
+
+    private void depositStock(String stockName, int quantity, long price) {
         if (stocks.containsKey(stockName)) {
-            Integer currentQuantity = stocks.get(stockName).getMaxStockCount();
-            Integer newQuantity = currentQuantity + quantity;
+            int currentQuantity = stocks.get(stockName).getMaxStockCount();
+            int newQuantity = currentQuantity + quantity;
             stocks.get(stockName).setMaxStockCount(newQuantity);
         } else {
             Stock newStock = new Stock(stockName, quantity, price);
@@ -223,11 +440,11 @@ public class Client {
         }
     }
 
-    protected synchronized void removeStock(String stockName, Integer quantity) throws JMSException {
+    private void withdrawStock(String stockName, int quantity) throws JMSException {
         if (stocks.containsKey(stockName)) {
             Stock stock = stocks.get(stockName);
             if (quantity <= stock.getMaxStockCount()) {
-                Integer newQuantity = stock.getMaxStockCount() - quantity;
+                int newQuantity = stock.getMaxStockCount() - quantity;
                 if (newQuantity == 0) {
                     stocks.remove(stockName);
                 } else {
@@ -243,8 +460,16 @@ public class Client {
         }
     }
 
-    protected Map<String, Stock> getClientStocks() {
-        return stocks;
+    // shares of the stock this client holds, 0 if none
+    protected synchronized int getQuantity(String stockName) {
+        Stock stock = stocks.get(stockName);
+        return stock == null ? 0 : stock.getMaxStockCount();
+    }
+
+    protected synchronized Map<String, Stock> getClientStocks() {
+        Map<String, Stock> snapshot = new HashMap<>();
+        stocks.forEach((name, stock) -> snapshot.put(name, new Stock(name, stock.getMaxStockCount(), stock.getPriceMicros())));
+        return snapshot;
     }
 
     public void cleanup() throws JMSException {
@@ -255,7 +480,9 @@ public class Client {
             if (consumer != null) {
                 consumer.close();
             }
-            stocks.clear();
+            synchronized (this) {
+                stocks.clear();
+            }
         } catch (JMSException e) {
             logger.log(Level.SEVERE, "Error cleaning up client", e);
         }
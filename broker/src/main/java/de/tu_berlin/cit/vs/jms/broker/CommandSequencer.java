@@ -0,0 +1,211 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.BrokerMessage;
+import de.tu_berlin.cit.vs.jms.common.LoggingUtils;
+
+import javax.jms.JMSException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Preallocated ring buffer that turns many JMS listener threads into a single-writer pipeline.
+ *
+ * Listener threads claim a sequence number and publish the decoded request into that slot.
+ * The business thread processes slots strictly in sequence order and is the only thread touching
+ * Stock, order book and account state, so it never contends on a lock. Replies it produces are
+ * staged in the same slot and sent by the publisher thread, which keeps JMS sends off the
+ * business thread. With a SYNC journal the publisher also waits for a slot's journal records to
+ * be forced before sending its replies, so the business thread never waits for the disk and one
+ * force covers every command processed meanwhile. Producers wait for the publisher before reusing
+ * a slot.
+ */
+class CommandSequencer {
+    private static final Logger logger = LoggingUtils.getLogger(CommandSequencer.class);
+
+    static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final int SPIN_TRIES = 200;
+    private static final long PARK_NANOS = 1_000;
+
+    private final Slot[] ring;
+    private final int mask;
+    // sequence last written to each slot, readers compare it to the sequence they wait for
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private volatile long processed = -1;
+    private volatile long sent = -1;
+    private volatile boolean running;
+
+    private final BrokerMetrics metrics; // null unless --metrics
+    private final TradeJournal journal; // null unless --journal
+    private Slot current; // slot the business thread is working on
+    private Thread businessThread;
+    private Thread publisherThread;
+
+    CommandSequencer(int capacity, BrokerMetrics metrics, TradeJournal journal) {
+        this.metrics = metrics;
+        this.journal = journal;
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two: " + capacity);
+        }
+        this.ring = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new Slot();
+        }
+        this.mask = capacity - 1;
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    void start() {
+        running = true;
+        businessThread = new Thread(this::runBusinessLogic, "TradingEngine");
+        publisherThread = new Thread(this::runPublisher, "ReplyPublisher");
+        businessThread.setDaemon(true);
+        publisherThread.setDaemon(true);
+        businessThread.start();
+        publisherThread.start();
+    }
+
+    void stop() {
+        running = false;
+        LockSupport.unpark(businessThread);
+        LockSupport.unpark(publisherThread);
+    }
+
+    boolean isBusinessThread() {
+        return Thread.currentThread() == businessThread;
+    }
+
+    /**
+     * Called by listener threads. Blocks (spinning, then parking) only if the ring is full.
+     */
+    void publish(Client client, BrokerMessage message, long receivedNanos) {
+        long sequence = claimed.incrementAndGet();
+        int idle = 0;
+        while (sequence - ring.length > sent) {
+            idle = idle(idle);
+        }
+        Slot slot = ring[(int) sequence & mask];
+        slot.client = client;
+        slot.request = message;
+        slot.receivedNanos = receivedNanos;
+        published.lazySet((int) sequence & mask, sequence);
+        LockSupport.unpark(businessThread);
+    }
+
+    /**
+     * Called by the business thread while it processes a command, see SimpleBroker.deliver.
+     */
+    void stageReply(Client target, BrokerMessage reply) {
+        current.addReply(target, reply);
+    }
+
+    /**
+     * Called by the business thread: the replies of the current command wait until the journal is
+     * durable up to the position.
+     */
+    void stageCommit(long position) {
+        current.journalPosition = Math.max(current.journalPosition, position);
+    }
+
+    private void runBusinessLogic() {
+        long next = 0;
+        int idle = 0;
+        while (running) {
+            if (published.get((int) next & mask) != next) {
+                idle = idle(idle);
+                continue;
+            }
+            idle = 0;
+            Slot slot = ring[(int) next & mask];
+            current = slot;
+            long started = metrics != null ? System.nanoTime() : 0;
+            try {
+                slot.client.processMessage(slot.request);
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "Error processing " + slot.request.getType() + " of "
+                        + slot.client.getClientName(), e);
+            }
+            if (metrics != null) {
+                slot.processingNanos = System.nanoTime() - started;
+            }
+            processed = next++;
+            LockSupport.unpark(publisherThread);
+        }
+    }
+
+    private void runPublisher() {
+        long next = 0;
+        int idle = 0;
+        while (running) {
+            if (next > processed) {
+                idle = idle(idle);
+                continue;
+            }
+            idle = 0;
+            Slot slot = ring[(int) next & mask];
+            if (slot.journalPosition > 0) {
+                journal.commit(slot.journalPosition);
+            }
+            for (int i = 0; i < slot.replyCount; i++) {
+                try {
+                    slot.targets[i].send(slot.replies[i]);
+                } catch (JMSException e) {
+                    logger.log(Level.WARNING, "Could not send reply to " + slot.targets[i].getClientName(), e);
+                }
+            }
+            if (metrics != null) {
+                metrics.recordRequest(slot.request.getType(), System.nanoTime() - slot.receivedNanos,
+                        slot.processingNanos);
+            }
+            slot.clear();
+            sent = next++;
+        }
+    }
+
+    private static int idle(int idle) {
+        if (idle < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return idle < SPIN_TRIES ? idle + 1 : idle;
+    }
+
+    private static final class Slot {
+        Client client;
+        BrokerMessage request;
+        Client[] targets = new Client[4];
+        BrokerMessage[] replies = new BrokerMessage[4];
+        int replyCount;
+        long receivedNanos;
+        long processingNanos;
+        long journalPosition;
+
+        void addReply(Client target, BrokerMessage reply) {
+            if (replyCount == targets.length) {
+                targets = Arrays.copyOf(targets, replyCount * 2);
+                replies = Arrays.copyOf(replies, replyCount * 2);
+            }
+            targets[replyCount] = target;
+            replies[replyCount++] = reply;
+        }
+
+        void clear() {
+            for (int i = 0; i < replyCount; i++) {
+                targets[i] = null;
+                replies[i] = null;
+            }
+            replyCount = 0;
+            journalPosition = 0;
+            client = null;
+            request = null;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+/**
+ * Table of historical prices, one row per trading day and one column per symbol.
+ */
+interface DailyPrices {
+    int getSymbolCount();
+
+    String getSymbol(int column);
+
+    int getRowCount();
+
+    /**
+     * @return epoch seconds of the row, ascending
+     */
+    long getTimestamp(int row);
+
+    /**
+     * @return the FixedPoint price, or Stock.NO_PRICE if the symbol had none on that row
+     */
+    long getPrice(int column, int row);
+
+    /**
+     * Binary search on the row timestamps.
+     *
+     * @return the first row whose timestamp is at or after the given epoch second, getRowCount() if none is
+     */
+    default int findRow(long epochSecond) {
+        int low = 0;
+        int high = getRowCount();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getTimestamp(mid) < epochSecond) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,86 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.LoggingUtils;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.policy.ConstantPendingMessageLimitStrategy;
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ActiveMQ broker running inside the exchange JVM, configured like the container from
+ * ActiveMQ/activemq.xml (same destination policies, no advisories) but without persistence.
+ *
+ * Components in the same JVM connect through {@link #VM_URL}, which hands messages over without
+ * a socket or wire marshalling. Remote clients still reach it through the OpenWire TCP connector
+ * given by --listen.
+ */
+public class EmbeddedBroker {
+    private static final Logger logger = LoggingUtils.getLogger(EmbeddedBroker.class);
+
+    public static final String NAME = "exchange";
+    // create=false: fail instead of silently starting a second, empty broker if this one is down
+    public static final String VM_URL = "vm://" + NAME + "?create=false";
+    public static final String NO_LISTENER = "none";
+
+    private final BrokerService service;
+
+    /**
+     * @param listenUrl TCP connector for remote clients, or {@link #NO_LISTENER} for in-VM access only
+     */
+    public EmbeddedBroker(String listenUrl, boolean useJmx) throws Exception {
+        service = new BrokerService();
+        service.setBrokerName(NAME);
+        service.setPersistent(false);
+        service.setUseJmx(useJmx);
+        service.setAdvisorySupport(false);
+        service.setSchedulePeriodForDestinationPurge(100000);
+        service.setUseShutdownHook(false);
+        service.setDestinationPolicy(destinationPolicy());
+        service.getSystemUsage().getMemoryUsage().setPercentOfJvmHeap(70);
+        if (!listenUrl.equals(NO_LISTENER)) {
+            service.addConnector(listenUrl);
+        }
+        service.start();
+        service.waitUntilStarted();
+        logger.log(Level.INFO, "Embedded ActiveMQ started, in-VM at " + VM_URL
+                + (listenUrl.equals(NO_LISTENER) ? "" : ", remote at " + listenUrl));
+    }
+
+    public EmbeddedBroker(BrokerOptions options) throws Exception {
+        this(options.getListenUrl(), false);
+    }
+
+    // mirrors the policyEntries of ActiveMQ/activemq.xml
+    private static PolicyMap destinationPolicy() {
+        PolicyEntry toBroker = clientQueuePolicy("*ToBroker");
+        PolicyEntry fromBroker = clientQueuePolicy("*FromBroker");
+
+        PolicyEntry topics = new PolicyEntry();
+        topics.setTopic(">");
+        ConstantPendingMessageLimitStrategy limit = new ConstantPendingMessageLimitStrategy();
+        limit.setLimit(1000);
+        topics.setPendingMessageLimitStrategy(limit);
+
+        PolicyMap policyMap = new PolicyMap();
+        policyMap.setPolicyEntries(List.of(toBroker, fromBroker, topics));
+        return policyMap;
+    }
+
+    private static PolicyEntry clientQueuePolicy(String queue) {
+        PolicyEntry entry = new PolicyEntry();
+        entry.setQueue(queue);
+        entry.setGcInactiveDestinations(true);
+        entry.setInactiveTimeoutBeforeGC(3000000);
+        entry.setOptimizedDispatch(true);
+        return entry;
+    }
+
+    public void stop() throws Exception {
+        service.stop();
+        service.waitUntilStopped();
+    }
+}
@@ -0,0 +1,11 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+/**
+ * How client requests reach the trading state.
+ */
+public enum EngineMode {
+    // each client's JMS listener thread trades directly, guarded by per-symbol locks
+    LOCKING,
+    // listeners only decode and enqueue, one business thread trades and a publisher thread replies
+    SEQUENCED
+}
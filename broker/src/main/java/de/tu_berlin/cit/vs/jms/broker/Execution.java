@@ -0,0 +1,63 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.Side;
+
+/**
+ * Outcome of a buy or sell against the exchange: what was traded, at which price and against
+ * which version of the quote board, and what the client had left afterwards.
+ */
+public final class Execution {
+    private final long orderId;
+    private final String stockName;
+    private final Side side;
+    private final int quantity;
+    private final long price;
+    private final long funds;
+    private final long quoteVersion;
+
+    public Execution(long orderId, String stockName, Side side, int quantity, long price, long funds,
+                     long quoteVersion) {
+        this.orderId = orderId;
+        this.stockName = stockName;
+        this.side = side;
+        this.quantity = quantity;
+        this.price = price;
+        this.funds = funds;
+        this.quoteVersion = quoteVersion;
+    }
+
+    // from the same sequence as limit order ids
+    public long getOrderId() {
+        return orderId;
+    }
+
+    public String getStockName() {
+        return stockName;
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * @return the price per share in FixedPoint micro-units
+     */
+    public long getPrice() {
+        return price;
+    }
+
+    /**
+     * @return the client's funds right after the trade in FixedPoint micro-units
+     */
+    public long getFunds() {
+        return funds;
+    }
+
+    public long getQuoteVersion() {
+        return quoteVersion;
+    }
+}
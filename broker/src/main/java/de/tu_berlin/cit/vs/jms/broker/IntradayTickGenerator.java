@@ -0,0 +1,126 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.Stock;
+
+import java.util.SplittableRandom;
+
+/**
+ * Synthetic intraday prices between consecutive daily closes.
+ *
+ * Every symbol follows a Brownian bridge in log price that starts at one day's close and is
+ * pinned to the next day's close, so the historical closes are still hit exactly and the path in
+ * between has the configured daily volatility. The bridge is built step by step, each step only
+ * needs the current value, the target and the number of steps left, so nothing is allocated per
+ * tick. Each day and symbol is seeded from (seed, row, column): the same seed always gives the
+ * same ticks, also when the replay starts at a later date or loops.
+ */
+public class IntradayTickGenerator {
+    private final int ticksPerDay;
+    private final long seed;
+    private final double dailyVolatility;
+
+    private DailyPrices days;
+    private SplittableRandom[] randoms;
+    private double[] logPrices;
+    private double[] logTargets;
+    private boolean[] active;
+    private int row;
+    private long dayStartMillis;
+    private long dayLengthMillis;
+    private int step;
+
+    public IntradayTickGenerator(int ticksPerDay, long seed, double dailyVolatility) {
+        if (ticksPerDay < 1) {
+            throw new IllegalArgumentException("Ticks per day must be positive: " + ticksPerDay);
+        }
+        this.ticksPerDay = ticksPerDay;
+        this.seed = seed;
+        this.dailyVolatility = dailyVolatility;
+    }
+
+    /**
+     * @return the generator configured by --intraday-ticks, --seed and --volatility, or null if
+     * intraday ticks are off
+     */
+    public static IntradayTickGenerator of(BrokerOptions options) {
+        if (options.getIntradayTicks() <= 0) {
+            return null;
+        }
+        return new IntradayTickGenerator(options.getIntradayTicks(), options.getSeed(), options.getVolatility());
+    }
+
+    void attach(DailyPrices days) {
+        this.days = days;
+        int symbols = days.getSymbolCount();
+        this.randoms = new SplittableRandom[symbols];
+        this.logPrices = new double[symbols];
+        this.logTargets = new double[symbols];
+        this.active = new boolean[symbols];
+    }
+
+    /**
+     * @return the number of ticks the row expands to; the last row has no next close and stays a single tick
+     */
+    int beginDay(int row) {
+        boolean last = row + 1 >= days.getRowCount();
+        for (int column = 0; column < active.length; column++) {
+            long close = days.getPrice(column, row);
+            long next = last ? Stock.NO_PRICE : days.getPrice(column, row + 1);
+            active[column] = close != Stock.NO_PRICE && close > 0;
+            if (active[column]) {
+                logPrices[column] = Math.log(close);
+                logTargets[column] = next != Stock.NO_PRICE && next > 0 ? Math.log(next) : logPrices[column];
+                randoms[column] = new SplittableRandom(mix(seed, row, column));
+            }
+        }
+        this.row = row;
+        dayStartMillis = days.getTimestamp(row) * 1000;
+        dayLengthMillis = last ? 0 : (days.getTimestamp(row + 1) - days.getTimestamp(row)) * 1000;
+        step = 0;
+        return last ? 1 : ticksPerDay;
+    }
+
+    /**
+     * @return epoch millis of the next tick of the current day, ticks are spread evenly up to the next close
+     */
+    long nextTickTime() {
+        return dayStartMillis + dayLengthMillis * step / ticksPerDay;
+    }
+
+    /**
+     * Advances every symbol one step and stages the prices on the board. The first tick of a day is
+     * its close.
+     *
+     * @param columns quote board index per column, -1 for symbols the exchange does not list
+     */
+    void nextTick(int[] columns, QuoteBoard quoteBoard) {
+        // steps left until the next close, which is the next day's first tick
+        int remaining = ticksPerDay - step + 1;
+        double scale = step == 0 ? 0 : dailyVolatility * Math.sqrt((remaining - 1) / ((double) remaining * ticksPerDay));
+        for (int column = 0; column < columns.length; column++) {
+            if (!active[column]) {
+                continue;
+            }
+            // log of the FixedPoint value, so exp() yields micro-units directly
+            double logPrice = logPrices[column];
+            if (step > 0) {
+                logPrice += (logTargets[column] - logPrice) / remaining + scale * randoms[column].nextGaussian();
+                logPrices[column] = logPrice;
+            }
+            if (columns[column] >= 0) {
+                quoteBoard.stage(columns[column], step == 0 ? days.getPrice(column, row)
+                        : Math.round(Math.exp(logPrice)));
+            }
+        }
+        step++;
+    }
+
+    private static long mix(long seed, int row, int column) {
+        return seed * 0x9E3779B97F4A7C15L + ((long) row << 20) + column;
+    }
+
+    @Override
+    public String toString() {
+        return ticksPerDay + " ticks/day, seed " + seed + ", volatility " + dailyVolatility;
+    }
+}
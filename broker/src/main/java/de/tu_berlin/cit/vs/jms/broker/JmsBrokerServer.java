@@ -2,7 +2,6 @@ package de.tu_berlin.cit.vs.jms.broker;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -31,12 +30,19 @@ public class JmsBrokerServer {
                 logger.log(Level.FINE, stock);
             }
             try {
+                BrokerOptions options = BrokerOptions.fromArgs(args);
+                EmbeddedBroker embeddedBroker = options.isEmbedded() ? new EmbeddedBroker(options) : null;
                 StockExchange stockExchange = new StockExchange(stocks,
-                        "historical-prices/stock_prices_5yr.csv",
-                        Optional.of(30000));
-                SimpleBroker broker = new SimpleBroker(stockExchange);
+                        options.getPriceFile(),
+                        ReplayClock.of(options),
+                        IntradayTickGenerator.of(options));
+                SimpleBroker broker = new SimpleBroker(stockExchange, options);
+                stockExchange.start();
                 System.in.read();
                 broker.stop();
+                if (embeddedBroker != null) {
+                    embeddedBroker.stop();
+                }
             } catch (Exception e) {
                 throw new Exception("Exception: " + e);
             }
@@ -0,0 +1,13 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+/**
+ * When a journaled trade counts as done, see TradeJournal.
+ */
+public enum JournalDurability {
+    // written to the mapped file only: survives a broker crash, not an OS crash or power loss
+    NONE,
+    // additionally forced to disk every flush interval; an OS crash loses at most that window
+    BATCH,
+    // the reply waits until the trade is forced; concurrent trades share one force (group commit)
+    SYNC
+}
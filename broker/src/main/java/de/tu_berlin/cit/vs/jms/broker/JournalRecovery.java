@@ -0,0 +1,122 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.LoggingUtils;
+import de.tu_berlin.cit.vs.jms.common.Stock;
+
+import javax.jms.JMSException;
+import javax.jms.Queue;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Rebuilds accounts and stock availability from the latest snapshot and the trade journal at
+ * start-up. Accounts come back as Clients without JMS channels; SimpleBroker hands one over when
+ * its owner registers again.
+ *
+ * Order books are not journaled, resting limit orders do not survive a restart. Neither is their
+ * escrow: a fill replays as the buy and the sell it settles, so whatever an order still had in
+ * escrow is back with its owner, as if the order had been cancelled.
+ *
+ * Records of one symbol are in trading order, but an account's trades on different symbols are
+ * not: a buy may be journaled before the fill on another symbol whose proceeds paid for it. Buys
+ * therefore replay without a funds check, they were checked when they were live.
+ */
+class JournalRecovery implements TradeJournal.Handler {
+    private static final Logger logger = LoggingUtils.getLogger(JournalRecovery.class);
+
+    private final SimpleBroker broker;
+    private final Map<String, Stock> stocks;
+    private final Map<String, Client> accounts = new HashMap<>();
+
+    JournalRecovery(SimpleBroker broker, Map<String, Stock> stocks) {
+        this.broker = broker;
+        this.stocks = stocks;
+    }
+
+    Map<String, Client> getAccounts() {
+        return accounts;
+    }
+
+    Map<String, Stock> getStocks() {
+        return stocks;
+    }
+
+    @Override
+    public void onRegister(String clientName, long funds) {
+        accounts.put(clientName, new Client(broker, clientName, (Queue) null, (Queue) null, funds));
+    }
+
+    @Override
+    public void onDeregister(String clientName) {
+        accounts.remove(clientName);
+    }
+
+    @Override
+    public void onBuy(String clientName, String symbol, int quantity, long price) {
+        Client account = accounts.get(clientName);
+        Stock stock = stocks.get(symbol);
+        if (account == null || stock == null) {
+            logger.log(Level.WARNING, "Skipping journaled buy of " + symbol + " by unknown " + clientName);
+            return;
+        }
+        account.replayBuy(symbol, quantity, price);
+        stock.setAvailableCount(stock.getAvailableCount() - quantity);
+    }
+
+    @Override
+    public void onSell(String clientName, String symbol, int quantity, long price) {
+        Client account = accounts.get(clientName);
+        Stock stock = stocks.get(symbol);
+        if (account == null || stock == null) {
+            logger.log(Level.WARNING, "Skipping journaled sell of " + symbol + " by unknown " + clientName);
+            return;
+        }
+        try {
+            account.settleSell(symbol, quantity, price);
+        } catch (JMSException e) {
+            logger.log(Level.WARNING, "Journaled sell of " + symbol + " by " + clientName + " does not replay", e);
+            return;
+        }
+        stock.setAvailableCount(stock.getAvailableCount() + quantity);
+    }
+
+    @Override
+    public void onFill(String buyer, String seller, String symbol, int quantity, long price) {
+        // both sides trade with each other, the exchange's availability stays as it is
+        Client buying = accounts.get(buyer);
+        Client selling = accounts.get(seller);
+        try {
+            if (buying != null) {
+                buying.replayBuy(symbol, quantity, price);
+            }
+            if (selling != null) {
+                selling.settleSell(symbol, quantity, price);
+            }
+        } catch (JMSException e) {
+            logger.log(Level.WARNING, "Journaled fill of " + symbol + " between " + buyer + " and " + seller
+                    + " does not replay", e);
+        }
+    }
+
+    @Override
+    public void onAvailable(String symbol, int available) {
+        Stock stock = stocks.get(symbol);
+        if (stock == null) {
+            logger.log(Level.WARNING, "Skipping snapshot availability of unknown " + symbol);
+            return;
+        }
+        stock.setAvailableCount(available);
+    }
+
+    @Override
+    public void onPosition(String clientName, String symbol, int quantity, long price) {
+        Client account = accounts.get(clientName);
+        try {
+            account.addStock(symbol, quantity, price);
+        } catch (JMSException e) {
+            logger.log(Level.WARNING, "Snapshot position in " + symbol + " of " + clientName + " does not load", e);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.BrokerMessage;
+import de.tu_berlin.cit.vs.jms.common.ConcurrentHistogram;
+
+public class MessageTypeMetrics implements MessageTypeMetricsMBean {
+    private final BrokerMessage.Type type;
+    final ConcurrentHistogram latency = new ConcurrentHistogram();
+    final ConcurrentHistogram processing = new ConcurrentHistogram();
+    final ConcurrentHistogram queueMillis = new ConcurrentHistogram();
+
+    MessageTypeMetrics(BrokerMessage.Type type) {
+        this.type = type;
+    }
+
+    BrokerMessage.Type getType() {
+        return type;
+    }
+
+    @Override
+    public long getCount() {
+        return latency.snapshot().getCount();
+    }
+
+    @Override
+    public double getLatencyMeanMicros() {
+        return latency.snapshot().getMean() / 1000;
+    }
+
+    @Override
+    public double getLatencyP50Micros() {
+        return latency.snapshot().getValueAtPercentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getLatencyP99Micros() {
+        return latency.snapshot().getValueAtPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getLatencyP999Micros() {
+        return latency.snapshot().getValueAtPercentile(99.9) / 1000.0;
+    }
+
+    @Override
+    public double getLatencyMaxMicros() {
+        return latency.snapshot().getMax() / 1000.0;
+    }
+
+    @Override
+    public double getProcessingMeanMicros() {
+        return processing.snapshot().getMean() / 1000;
+    }
+
+    @Override
+    public double getProcessingP99Micros() {
+        return processing.snapshot().getValueAtPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getQueueP50Millis() {
+        return queueMillis.snapshot().getValueAtPercentile(50);
+    }
+
+    @Override
+    public double getQueueP99Millis() {
+        return queueMillis.snapshot().getValueAtPercentile(99);
+    }
+}
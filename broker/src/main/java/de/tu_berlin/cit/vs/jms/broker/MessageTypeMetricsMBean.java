@@ -0,0 +1,28 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+/**
+ * Metrics of one request type under de.tu_berlin.cit.vs.jms:type=MessageType,name=&lt;type&gt;.
+ * Latency runs from receiving the request to sending its reply, processing is the part spent
+ * executing it; queue time is taken from the sender's JMSTimestamp and has millisecond resolution.
+ */
+public interface MessageTypeMetricsMBean {
+    long getCount();
+
+    double getLatencyMeanMicros();
+
+    double getLatencyP50Micros();
+
+    double getLatencyP99Micros();
+
+    double getLatencyP999Micros();
+
+    double getLatencyMaxMicros();
+
+    double getProcessingMeanMicros();
+
+    double getProcessingP99Micros();
+
+    double getQueueP50Millis();
+
+    double getQueueP99Millis();
+}
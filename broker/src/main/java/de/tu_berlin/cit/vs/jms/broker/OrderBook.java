@@ -0,0 +1,309 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.Side;
+
+/**
+ * Central limit order book of one symbol with price-time priority.
+ *
+ * Price levels are looked up by their long FixedPoint price and kept in one binary heap per side,
+ * so the best level is O(1) and adding or dropping a level is O(log levels). Orders are linked
+ * intrusively into their level's FIFO queue and indexed by id, which makes cancel O(1).
+ * Order and level objects are pooled and reused. The book is not thread-safe, SimpleBroker only
+ * touches it while holding the symbol's lock.
+ */
+class OrderBook {
+    private final String symbol;
+    private final LevelHeap bids = new LevelHeap(true);
+    private final LevelHeap asks = new LevelHeap(false);
+    private final LongHashMap<PriceLevel> bidLevels = new LongHashMap<>(256);
+    private final LongHashMap<PriceLevel> askLevels = new LongHashMap<>(256);
+    private final LongHashMap<Order> orders = new LongHashMap<>(1024);
+
+    private Order freeOrders;
+    private PriceLevel freeLevels;
+
+    interface FillListener {
+        /**
+         * Called once per match, before a fully filled resting order is recycled.
+         *
+         * @param resting the order that was on the book, its remaining quantity is already reduced
+         */
+        void onFill(Order resting, int quantity, long price);
+    }
+
+    OrderBook(String symbol) {
+        this.symbol = symbol;
+    }
+
+    String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * Matches an incoming limit order against the opposite side and rests whatever is left.
+     *
+     * @return the quantity that was not filled immediately and now rests on the book
+     */
+    int submit(long orderId, Client owner, Side side, int quantity, long limitPrice, FillListener listener) {
+        boolean buy = side == Side.BUY;
+        LevelHeap opposite = buy ? asks : bids;
+        int remaining = quantity;
+
+        while (remaining > 0 && opposite.size > 0) {
+            PriceLevel best = opposite.peek();
+            if (buy ? best.price > limitPrice : best.price < limitPrice) {
+                break;
+            }
+            Order resting = best.head;
+            int fill = Math.min(remaining, resting.remaining);
+            resting.remaining -= fill;
+            best.totalQuantity -= fill;
+            remaining -= fill;
+            listener.onFill(resting, fill, best.price);
+            if (resting.remaining == 0) {
+                removeFromLevel(resting, best, buy ? askLevels : bidLevels, opposite);
+                orders.remove(resting.id);
+                recycle(resting);
+            }
+        }
+
+        if (remaining > 0) {
+            rest(orderId, owner, side, remaining, limitPrice);
+        }
+        return remaining;
+    }
+
+    Order find(long orderId) {
+        return orders.get(orderId);
+    }
+
+    /**
+     * Takes a resting order off the book. The caller reads what it needs and then hands the
+     * order back via {@link #recycle(Order)}.
+     */
+    Order cancel(long orderId) {
+        Order order = orders.remove(orderId);
+        if (order == null) {
+            return null;
+        }
+        PriceLevel level = order.level;
+        level.totalQuantity -= order.remaining;
+        if (order.side == Side.BUY) {
+            removeFromLevel(order, level, bidLevels, bids);
+        } else {
+            removeFromLevel(order, level, askLevels, asks);
+        }
+        return order;
+    }
+
+    void recycle(Order order) {
+        order.owner = null;
+        order.level = null;
+        order.prev = null;
+        order.next = freeOrders;
+        freeOrders = order;
+    }
+
+    int restingOrderCount() {
+        return orders.size();
+    }
+
+    long bestBid() {
+        return bids.size > 0 ? bids.peek().price : 0L;
+    }
+
+    long bestAsk() {
+        return asks.size > 0 ? asks.peek().price : 0L;
+    }
+
+    private void rest(long orderId, Client owner, Side side, int quantity, long price) {
+        boolean buy = side == Side.BUY;
+        LongHashMap<PriceLevel> levels = buy ? bidLevels : askLevels;
+        PriceLevel level = levels.get(price);
+        if (level == null) {
+            level = newLevel(price);
+            levels.put(price, level);
+            (buy ? bids : asks).add(level);
+        }
+
+        Order order = freeOrders;
+        if (order != null) {
+            freeOrders = order.next;
+            order.next = null;
+        } else {
+            order = new Order();
+        }
+        order.id = orderId;
+        order.owner = owner;
+        order.side = side;
+        order.price = price;
+        order.remaining = quantity;
+        order.level = level;
+
+        order.prev = level.tail;
+        if (level.tail != null) {
+            level.tail.next = order;
+        } else {
+            level.head = order;
+        }
+        level.tail = order;
+        level.totalQuantity += quantity;
+        orders.put(orderId, order);
+    }
+
+    private void removeFromLevel(Order order, PriceLevel level, LongHashMap<PriceLevel> levels, LevelHeap heap) {
+        if (order.prev != null) {
+            order.prev.next = order.next;
+        } else {
+            level.head = order.next;
+        }
+        if (order.next != null) {
+            order.next.prev = order.prev;
+        } else {
+            level.tail = order.prev;
+        }
+        order.prev = null;
+        order.next = null;
+
+        if (level.head == null) {
+            levels.remove(level.price);
+            heap.remove(level);
+            level.next = freeLevels;
+            freeLevels = level;
+        }
+    }
+
+    private PriceLevel newLevel(long price) {
+        PriceLevel level = freeLevels;
+        if (level != null) {
+            freeLevels = level.next;
+            level.next = null;
+        } else {
+            level = new PriceLevel();
+        }
+        level.price = price;
+        level.totalQuantity = 0;
+        return level;
+    }
+
+    static final class Order {
+        long id;
+        Client owner;
+        Side side;
+        long price;
+        int remaining;
+        PriceLevel level;
+        Order prev;
+        Order next;
+
+        long getId() {
+            return id;
+        }
+
+        Client getOwner() {
+            return owner;
+        }
+
+        Side getSide() {
+            return side;
+        }
+
+        long getPrice() {
+            return price;
+        }
+
+        int getRemaining() {
+            return remaining;
+        }
+    }
+
+    static final class PriceLevel {
+        long price;
+        long totalQuantity;
+        Order head;
+        Order tail;
+        int heapIndex;
+        PriceLevel next; // free list link only
+    }
+
+    /**
+     * Binary heap of price levels with each level remembering its own slot, so an emptied level
+     * can be removed in O(log n) without searching.
+     */
+    private static final class LevelHeap {
+        private final boolean max;
+        private PriceLevel[] heap = new PriceLevel[64];
+        private int size;
+
+        LevelHeap(boolean max) {
+            this.max = max;
+        }
+
+        PriceLevel peek() {
+            return heap[0];
+        }
+
+        void add(PriceLevel level) {
+            if (size == heap.length) {
+                heap = java.util.Arrays.copyOf(heap, size * 2);
+            }
+            heap[size] = level;
+            level.heapIndex = size;
+            siftUp(size++);
+        }
+
+        void remove(PriceLevel level) {
+            int i = level.heapIndex;
+            PriceLevel last = heap[--size];
+            heap[size] = null;
+            if (i == size) {
+                return;
+            }
+            heap[i] = last;
+            last.heapIndex = i;
+            siftDown(i);
+            if (heap[i] == last) {
+                siftUp(i);
+            }
+        }
+
+        private boolean better(PriceLevel a, PriceLevel b) {
+            return max ? a.price > b.price : a.price < b.price;
+        }
+
+        private void siftUp(int i) {
+            PriceLevel level = heap[i];
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!better(level, heap[parent])) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                heap[i].heapIndex = i;
+                i = parent;
+            }
+            heap[i] = level;
+            level.heapIndex = i;
+        }
+
+        private void siftDown(int i) {
+            PriceLevel level = heap[i];
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                int right = child + 1;
+                if (right < size && better(heap[right], heap[child])) {
+                    child = right;
+                }
+                if (!better(heap[child], level)) {
+                    break;
+                }
+                heap[i] = heap[child];
+                heap[i].heapIndex = i;
+                i = child;
+            }
+            heap[i] = level;
+            level.heapIndex = i;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.RejectReason;
+
+import javax.jms.JMSException;
+
+/**
+ * A market order, limit order or cancel refused for a reason the client can act on. Refusals are ordinary outcomes of
+ * trading, so this skips the stack trace and only words its message when asked for one, e.g. for
+ * the leg report of a batch; the execution report to a single order just carries the reason.
+ */
+public class OrderRejectedException extends JMSException {
+    private final RejectReason reason;
+    private final String stockName;
+    private final int quantity;
+    // shares the exchange has left (NOT_AVAILABLE) or the client holds (INSUFFICIENT_HOLDINGS)
+    private final int shares;
+
+    public OrderRejectedException(RejectReason reason, String stockName, int quantity, int shares) {
+        super(null, reason.name());
+        this.reason = reason;
+        this.stockName = stockName;
+        this.quantity = quantity;
+        this.shares = shares;
+    }
+
+    public RejectReason getReason() {
+        return reason;
+    }
+
+    @Override
+    public String getMessage() {
+        return switch (reason) {
+            case UNKNOWN_STOCK -> "Stock " + stockName + " does not exist";
+            case INVALID_QUANTITY -> "Invalid requested stock amount: " + quantity;
+            case NOT_AVAILABLE -> "Requested stock quantity for " + stockName + " is not available. (Available: "
+                    + shares + ")";
+            case INSUFFICIENT_FUNDS -> "Not enough funds to buy " + quantity + " stocks of " + stockName;
+            case INSUFFICIENT_HOLDINGS -> shares == 0
+                    ? "Client has no stocks of this type"
+                    : "Client has not enough stocks of this type";
+            case INTERNAL_ERROR -> "Order for " + quantity + " stocks of " + stockName + " could not be executed";
+            case NO_QUOTE -> "Stock " + stockName + " has no price yet";
+            case BATCH_ABORTED -> "Batch not executed, another leg was refused";
+            case INVALID_PRICE -> "Invalid limit price for " + quantity + " stocks of " + stockName;
+            case UNKNOWN_ORDER -> "Unknown order for " + stockName;
+        };
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,79 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.BinaryCodec;
+import de.tu_berlin.cit.vs.jms.common.BrokerMessage;
+import de.tu_berlin.cit.vs.jms.common.TraceStamps;
+import de.tu_berlin.cit.vs.jms.common.WireFormat;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+/**
+ * A reply shared by many sends, see ResponseCache. The binary body is encoded once, on the first
+ * send to a BINARY client; OBJECT clients get the same message object, which the JMS provider
+ * still serializes per send.
+ *
+ * Only this wrapper is ever handed a trace or correlation id, the shared message is never modified.
+ */
+final class PreparedReply extends BrokerMessage {
+    private final BrokerMessage message;
+    private volatile byte[] binary;
+
+    PreparedReply(BrokerMessage message) {
+        super(message.getType());
+        this.message = message;
+    }
+
+    private PreparedReply(PreparedReply shared) {
+        super(shared.getType());
+        this.message = shared.message;
+        this.binary = shared.binary;
+    }
+
+    BrokerMessage getMessage() {
+        return message;
+    }
+
+    /**
+     * @return a wrapper of the same message and encoding for the reply to one traced or correlated request
+     */
+    PreparedReply forRequest(TraceStamps trace, String correlationId) {
+        PreparedReply reply = new PreparedReply(this);
+        reply.setTrace(trace);
+        reply.setCorrelationId(correlationId);
+        return reply;
+    }
+
+    private byte[] binary() throws JMSException {
+        byte[] encoded = binary;
+        if (encoded == null) {
+            // a race only encodes the same bytes twice
+            encoded = BinaryCodec.encode(message);
+            binary = encoded;
+        }
+        return encoded;
+    }
+
+    /**
+     * Builds the JMS message of a reply in the client's wire format, from the prepared encoding if
+     * there is one, echoing the request's correlation id.
+     */
+    static Message toJms(Session session, BrokerMessage message, WireFormat wireFormat) throws JMSException {
+        Message reply;
+        if (message instanceof PreparedReply prepared) {
+            reply = wireFormat == WireFormat.BINARY
+                    ? BinaryCodec.toBytesMessage(session, prepared.binary())
+                    : session.createObjectMessage(prepared.message);
+        } else {
+            reply = wireFormat == WireFormat.BINARY
+                    ? BinaryCodec.toBytesMessage(session, message)
+                    : session.createObjectMessage(message);
+        }
+        if (message.getCorrelationId() != null) {
+            reply.setJMSCorrelationID(message.getCorrelationId());
+        }
+        TraceStamps.stampReply(reply, message);
+        return reply;
+    }
+}
@@ -0,0 +1,178 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.FixedPoint;
+import de.tu_berlin.cit.vs.jms.common.LoggingUtils;
+import de.tu_berlin.cit.vs.jms.common.Stock;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One-time conversion of the historical CSV into the columnar {@link PriceFeedFile} format.
+ *
+ * Usage: PriceFeedConverter historical-prices/stock_prices_5yr.csv [historical-prices/stock_prices_5yr.prices]
+ */
+public class PriceFeedConverter {
+    private static final Logger logger = LoggingUtils.getLogger(PriceFeedConverter.class);
+    private static final DateTimeFormatter CSV_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ssXXX");
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: PriceFeedConverter <prices.csv> [<output" + PriceFeedFile.EXTENSION + ">]");
+            return;
+        }
+        String csvPath = args[0];
+        String outPath = args.length > 1 ? args[1] : defaultOutput(csvPath);
+        int rows = convert(Path.of(csvPath), Path.of(outPath));
+        logger.log(Level.INFO, "Wrote " + rows + " rows to " + outPath);
+    }
+
+    static String defaultOutput(String csvPath) {
+        int dot = csvPath.lastIndexOf('.');
+        return (dot > 0 ? csvPath.substring(0, dot) : csvPath) + PriceFeedFile.EXTENSION;
+    }
+
+    /**
+     * @return the number of rows written
+     */
+    public static int convert(Path csvPath, Path outPath) throws IOException {
+        DailyPrices prices = load(csvPath);
+        write(prices, outPath);
+        return prices.getRowCount();
+    }
+
+    /**
+     * Parses the whole CSV into memory, for sources that need random access to the daily rows.
+     */
+    static DailyPrices load(Path csvPath) throws IOException {
+        List<String> symbols;
+        List<Long> timestamps = new ArrayList<>();
+        List<long[]> rows = new ArrayList<>();
+        try (Reader reader = new FileReader(csvPath.toFile())) {
+            CSVParser parser = CSVFormat.DEFAULT.builder()
+                    .setHeader()
+                    .setIgnoreHeaderCase(true)
+                    .setTrim(false)
+                    .build()
+                    .parse(reader);
+            symbols = new ArrayList<>(parser.getHeaderMap().keySet());
+            symbols.remove("Date");
+            for (CSVRecord record : parser) {
+                timestamps.add(parseTimestamp(record.get("Date")));
+                long[] prices = new long[symbols.size()];
+                for (int i = 0; i < prices.length; i++) {
+                    String cell = record.get(symbols.get(i));
+                    prices[i] = cell == null || cell.trim().isEmpty() ? Stock.NO_PRICE : FixedPoint.parse(cell);
+                }
+                rows.add(prices);
+            }
+        }
+        for (int i = 1; i < timestamps.size(); i++) {
+            if (timestamps.get(i) < timestamps.get(i - 1)) {
+                throw new IOException("Rows are not in date order at row " + i + " of " + csvPath);
+            }
+        }
+        return new LoadedPrices(symbols.toArray(new String[0]),
+                timestamps.stream().mapToLong(Long::longValue).toArray(), rows.toArray(new long[0][]));
+    }
+
+    static void write(DailyPrices prices, Path outPath) throws IOException {
+        int symbolCount = prices.getSymbolCount();
+        int rowCount = prices.getRowCount();
+        int headerSize = 16;
+        for (int column = 0; column < symbolCount; column++) {
+            headerSize += 2 + prices.getSymbol(column).getBytes(StandardCharsets.UTF_8).length;
+        }
+        long size = PriceFeedFile.align(headerSize) + (long) (symbolCount + 1) * rowCount * Long.BYTES;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Price file would exceed 2 GiB: " + size + " bytes");
+        }
+
+        ByteBuffer out = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(PriceFeedFile.MAGIC).putInt(PriceFeedFile.VERSION).putInt(symbolCount).putInt(rowCount);
+        for (int column = 0; column < symbolCount; column++) {
+            byte[] name = prices.getSymbol(column).getBytes(StandardCharsets.UTF_8);
+            out.putShort((short) name.length).put(name);
+        }
+        out.position(PriceFeedFile.align(out.position()));
+        for (int row = 0; row < rowCount; row++) {
+            out.putLong(prices.getTimestamp(row));
+        }
+        for (int column = 0; column < symbolCount; column++) {
+            for (int row = 0; row < rowCount; row++) {
+                out.putLong(prices.getPrice(column, row));
+            }
+        }
+        out.flip();
+        try (FileChannel channel = FileChannel.open(outPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+    }
+
+    // "2020-06-23 00:00:00-04:00", plain dates are taken as UTC midnight
+    static long parseTimestamp(String date) {
+        String trimmed = date.trim();
+        if (trimmed.length() == 10) {
+            return LocalDate.parse(trimmed).atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+        }
+        return OffsetDateTime.parse(trimmed, CSV_DATE).toEpochSecond();
+    }
+
+    private static final class LoadedPrices implements DailyPrices {
+        private final String[] symbols;
+        private final long[] timestamps;
+        private final long[][] rows;
+
+        LoadedPrices(String[] symbols, long[] timestamps, long[][] rows) {
+            this.symbols = symbols;
+            this.timestamps = timestamps;
+            this.rows = rows;
+        }
+
+        @Override
+        public int getSymbolCount() {
+            return symbols.length;
+        }
+
+        @Override
+        public String getSymbol(int column) {
+            return symbols[column];
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.length;
+        }
+
+        @Override
+        public long getTimestamp(int row) {
+            return timestamps[row];
+        }
+
+        @Override
+        public long getPrice(int column, int row) {
+            return rows[row][column];
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only, memory-mapped view of a price file written by {@link PriceFeedConverter}.
+ *
+ * Layout (little endian, data sections 8-byte aligned):
+ * <pre>
+ * int magic, int version, int symbolCount, int rowCount
+ * symbolCount x (short length, UTF-8 bytes)       symbol names
+ * rowCount x long                                 row timestamps, epoch seconds, ascending
+ * symbolCount x rowCount x long                   one column of FixedPoint prices per symbol,
+ *                                                 Stock.NO_PRICE where the CSV cell was empty
+ * </pre>
+ * All accessors read straight from the mapping and allocate nothing. A single mapping limits the
+ * file to 2 GiB, about 268M prices.
+ */
+class PriceFeedFile implements DailyPrices, AutoCloseable {
+    static final int MAGIC = 0x50464431; // "PFD1"
+    static final int VERSION = 1;
+    static final String EXTENSION = ".prices";
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final String[] symbols;
+    private final int rowCount;
+    private final int timestampOffset;
+    private final int columnsOffset;
+
+    PriceFeedFile(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException("Not a version " + VERSION + " price file: " + path);
+        }
+        int symbolCount = buffer.getInt(8);
+        this.rowCount = buffer.getInt(12);
+        this.symbols = new String[symbolCount];
+        int position = 16;
+        for (int i = 0; i < symbolCount; i++) {
+            byte[] name = new byte[buffer.getShort(position)];
+            buffer.get(position + 2, name);
+            symbols[i] = new String(name, StandardCharsets.UTF_8);
+            position += 2 + name.length;
+        }
+        this.timestampOffset = align(position);
+        this.columnsOffset = timestampOffset + rowCount * Long.BYTES;
+    }
+
+    static int align(int position) {
+        return (position + 7) & ~7;
+    }
+
+    static boolean isPriceFile(String filePath) {
+        return filePath.endsWith(EXTENSION);
+    }
+
+    @Override
+    public int getSymbolCount() {
+        return symbols.length;
+    }
+
+    @Override
+    public String getSymbol(int column) {
+        return symbols[column];
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public long getTimestamp(int row) {
+        return buffer.getLong(timestampOffset + row * Long.BYTES);
+    }
+
+    @Override
+    public long getPrice(int column, int row) {
+        return buffer.getLong(columnsOffset + (column * rowCount + row) * Long.BYTES);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
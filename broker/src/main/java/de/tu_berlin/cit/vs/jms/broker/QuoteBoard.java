@@ -0,0 +1,128 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.Stock;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Prices of all listed symbols, published as one immutable {@link Quotes} per exchange tick.
+ *
+ * The ticker stages the prices of a tick and then publishes them together with a single volatile
+ * write; readers take {@link #current()} once and see every price of that tick and its version,
+ * without locking and without ever holding up the ticker. Each publish copies the staged prices,
+ * one small array per tick.
+ */
+public final class QuoteBoard {
+    private final String[] symbols;
+    private final Map<String, Integer> indexes = new HashMap<>();
+    // prices of the tick in progress, only touched by the ticker
+    private final long[] staged;
+    private volatile Quotes current;
+
+    /**
+     * Starts at version 0 with the prices the stocks were listed with.
+     */
+    public QuoteBoard(Collection<Stock> stocks) {
+        symbols = new String[stocks.size()];
+        staged = new long[stocks.size()];
+        int index = 0;
+        for (Stock stock : stocks) {
+            symbols[index] = stock.getName();
+            staged[index] = stock.getPriceMicros();
+            indexes.put(stock.getName(), index++);
+        }
+        current = new Quotes(0, StockExchange.NO_TIME, staged.clone());
+    }
+
+    public Quotes current() {
+        return current;
+    }
+
+    /**
+     * @return the position of the symbol in every Quotes of this board, -1 if it is not listed
+     */
+    public int indexOf(String symbol) {
+        Integer index = indexes.get(symbol);
+        return index == null ? -1 : index;
+    }
+
+    void stage(int index, long price) {
+        staged[index] = price;
+    }
+
+    void stage(String symbol, long price) {
+        int index = indexOf(symbol);
+        if (index >= 0) {
+            staged[index] = price;
+        }
+    }
+
+    /**
+     * Makes the staged prices the current quotes under the next version.
+     */
+    Quotes publish(long simulatedTime) {
+        Quotes next = new Quotes(current.version + 1, simulatedTime, staged.clone());
+        current = next;
+        return next;
+    }
+
+    /**
+     * The prices of one tick. Never changes after it is published.
+     */
+    public final class Quotes {
+        private final long version;
+        private final long simulatedTime;
+        private final long[] prices;
+
+        private Quotes(long version, long simulatedTime, long[] prices) {
+            this.version = version;
+            this.simulatedTime = simulatedTime;
+            this.prices = prices;
+        }
+
+        /**
+         * @return 0 for the listing prices, then one more per tick
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return epoch millis of the replayed row or tick these prices come from, NO_TIME before the first tick
+         */
+        public long getSimulatedTime() {
+            return simulatedTime;
+        }
+
+        public int size() {
+            return prices.length;
+        }
+
+        public String getSymbol(int index) {
+            return symbols[index];
+        }
+
+        public long getPrice(int index) {
+            return prices[index];
+        }
+
+        /**
+         * @return the price in micro-units, Stock.NO_PRICE if the symbol has none yet or is not listed
+         */
+        public long getPrice(String symbol) {
+            int index = indexOf(symbol);
+            return index < 0 ? Stock.NO_PRICE : prices[index];
+        }
+
+        public boolean hasAllPrices() {
+            for (long price : prices) {
+                if (price == Stock.NO_PRICE) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces the StockExchange replay of historical rows or synthetic intraday ticks.
+ *
+ * INTERVAL emits one tick every fixed wall-clock interval (the original behaviour), SCALED maps
+ * the gap between tick timestamps onto wall-clock time divided by a speed factor (1 is real time),
+ * UNTHROTTLED does not wait at all. Every wait targets an absolute deadline measured from the
+ * first tick of the pass, so processing time and oversleeping never accumulate into drift.
+ *
+ * The clock also carries the replay window: rows before {@code from} or after {@code to} (both
+ * inclusive, UTC dates) are skipped, and with {@code loop} the replay starts over at the end.
+ */
+public class ReplayClock {
+    enum Mode { INTERVAL, SCALED, UNTHROTTLED }
+
+    private final Mode mode;
+    private final long intervalNanos;
+    private final double speed;
+    private long fromMillis = Long.MIN_VALUE;
+    private long untilMillis = Long.MAX_VALUE; // exclusive
+    private boolean loop;
+
+    private boolean anchored;
+    private long startNanos;
+    private long firstTimestamp;
+    private long ticks;
+
+    private ReplayClock(Mode mode, long intervalNanos, double speed) {
+        this.mode = mode;
+        this.intervalNanos = intervalNanos;
+        this.speed = speed;
+    }
+
+    public static ReplayClock interval(long millis) {
+        return new ReplayClock(Mode.INTERVAL, TimeUnit.MILLISECONDS.toNanos(millis), 0);
+    }
+
+    public static ReplayClock scaled(double speed) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Replay speed must be positive: " + speed);
+        }
+        return new ReplayClock(Mode.SCALED, 0, speed);
+    }
+
+    public static ReplayClock unthrottled() {
+        return new ReplayClock(Mode.UNTHROTTLED, 0, 0);
+    }
+
+    /**
+     * Builds the clock from "--replay interval|realtime|&lt;N&gt;x|max" and the related options.
+     */
+    public static ReplayClock of(BrokerOptions options) {
+        String replay = options.getReplay().toLowerCase();
+        ReplayClock clock;
+        if (replay.equals("interval")) {
+            clock = interval(options.getTickIntervalMillis());
+        } else if (replay.equals("realtime")) {
+            clock = scaled(1);
+        } else if (replay.equals("max")) {
+            clock = unthrottled();
+        } else if (replay.endsWith("x")) {
+            clock = scaled(Double.parseDouble(replay.substring(0, replay.length() - 1)));
+        } else {
+            throw new IllegalArgumentException("Unknown replay mode: " + options.getReplay());
+        }
+        return clock.window(options.getFrom(), options.getTo()).loop(options.isLoop());
+    }
+
+    public ReplayClock window(LocalDate from, LocalDate to) {
+        this.fromMillis = from == null ? Long.MIN_VALUE : from.atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+        this.untilMillis = to == null ? Long.MAX_VALUE : to.plusDays(1).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+        return this;
+    }
+
+    public ReplayClock loop(boolean loop) {
+        this.loop = loop;
+        return this;
+    }
+
+    long getFromMillis() {
+        return fromMillis;
+    }
+
+    long getUntilMillis() {
+        return untilMillis;
+    }
+
+    boolean isLoop() {
+        return loop;
+    }
+
+    boolean includes(long timestamp) {
+        return timestamp >= fromMillis && timestamp < untilMillis;
+    }
+
+    // begins a pass, the next tick is emitted immediately and anchors all later deadlines
+    void start() {
+        anchored = false;
+    }
+
+    /**
+     * Blocks until the tick with the given timestamp (epoch millis) is due.
+     */
+    void awaitTick(long timestamp) throws InterruptedException {
+        if (!anchored) {
+            anchored = true;
+            startNanos = System.nanoTime();
+            firstTimestamp = timestamp;
+            ticks = 0;
+            return;
+        }
+        ticks++;
+        long deadline;
+        switch (mode) {
+            case INTERVAL:
+                deadline = startNanos + ticks * intervalNanos;
+                break;
+            case SCALED:
+                deadline = startNanos + (long) (TimeUnit.MILLISECONDS.toNanos(timestamp - firstTimestamp) / speed);
+                break;
+            default:
+                return;
+        }
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+        }
+    }
+
+    @Override
+    public String toString() {
+        String pace = mode == Mode.INTERVAL ? TimeUnit.NANOSECONDS.toMillis(intervalNanos) + "ms"
+                : mode == Mode.SCALED ? speed + "x" : "max";
+        return pace + (loop ? ", loop" : "");
+    }
+}
@@ -0,0 +1,88 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.InfoMessage;
+import de.tu_berlin.cit.vs.jms.common.ListMessage;
+import de.tu_berlin.cit.vs.jms.common.Stock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * STOCK_LIST and STOCK_INFO replies, built once and shared by every request until the data behind
+ * them changes: the list per quote version and inventory version, the info of a symbol per price
+ * and available count. Between ticks and trades, polling clients get the same prepared reply.
+ *
+ * A reply is keyed by the versions read before building it, so a trade racing with a rebuild can
+ * only make the entry look older than it is and never keeps stale data in the cache.
+ */
+class ResponseCache {
+    private final StockExchange stockExchange;
+    // bumped after every change of a stock's available count
+    private final AtomicLong inventoryVersion = new AtomicLong();
+    private volatile Entry list;
+    private final Map<String, Entry> infos = new ConcurrentHashMap<>();
+
+    private static final class Entry {
+        final long first;   // quote version or price
+        final long second;  // inventory version or available count
+        final PreparedReply reply;
+
+        Entry(long first, long second, PreparedReply reply) {
+            this.first = first;
+            this.second = second;
+            this.reply = reply;
+        }
+    }
+
+    ResponseCache(StockExchange stockExchange) {
+        this.stockExchange = stockExchange;
+    }
+
+    void inventoryChanged() {
+        inventoryVersion.incrementAndGet();
+    }
+
+    PreparedReply list() {
+        long inventory = inventoryVersion.get();
+        QuoteBoard.Quotes quotes = stockExchange.getQuotes();
+        Entry cached = list;
+        if (cached != null && cached.first == quotes.getVersion() && cached.second == inventory) {
+            return cached.reply;
+        }
+        List<Stock> stocks = new ArrayList<>(stockExchange.getStockMap().size());
+        for (Stock stock : stockExchange.getStockMap().values()) {
+            stocks.add(copy(stock, quotes.getPrice(stock.getName()), stock.getAvailableCount()));
+        }
+        PreparedReply reply = new PreparedReply(new ListMessage(stocks));
+        list = new Entry(quotes.getVersion(), inventory, reply);
+        return reply;
+    }
+
+    /**
+     * @return null if the symbol is not listed
+     */
+    PreparedReply info(String stockName) {
+        Stock stock = stockExchange.getStock(stockName);
+        if (stock == null) {
+            return null;
+        }
+        long price = stockExchange.getQuotes().getPrice(stockName);
+        int available = stock.getAvailableCount();
+        Entry cached = infos.get(stockName);
+        if (cached != null && cached.first == price && cached.second == available) {
+            return cached.reply;
+        }
+        PreparedReply reply = new PreparedReply(new InfoMessage(copy(stock, price, available)));
+        infos.put(stockName, new Entry(price, available, reply));
+        return reply;
+    }
+
+    private static Stock copy(Stock stock, long price, int available) {
+        Stock copy = new Stock(stock.getName(), stock.getMaxStockCount(), price);
+        copy.setAvailableCount(available);
+        return copy;
+    }
+}
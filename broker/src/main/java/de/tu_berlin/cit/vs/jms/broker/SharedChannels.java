@@ -0,0 +1,113 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.BrokerMessage;
+import de.tu_berlin.cit.vs.jms.common.LoggingUtils;
+import de.tu_berlin.cit.vs.jms.common.MessageHeaders;
+import de.tu_berlin.cit.vs.jms.common.WireFormat;
+
+import javax.jms.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * JMS plumbing for ChannelMode.SHARED: a fixed number of sessions serves any number of clients.
+ *
+ * Clients send to one inbound queue and stamp their name in MessageHeaders.CLIENT_ID; a small
+ * pool of competing consumers drains it and routes each request to its Client. Clients also set
+ * the JMSXGroupID to their name, so ActiveMQ keeps all of one client's requests on one consumer
+ * and in order. Replies go through a pool of anonymous producers, a client always uses the same
+ * one so its replies stay ordered too.
+ */
+class SharedChannels {
+    private static final Logger logger = LoggingUtils.getLogger(SharedChannels.class);
+
+    static final String INBOUND_QUEUE = "broker-inbound";
+
+    private final SimpleBroker broker;
+    private final Queue inboundQueue;
+    private final List<Session> consumerSessions = new ArrayList<>();
+    private final List<MessageConsumer> consumers = new ArrayList<>();
+    private final ReplySlot[] replySlots;
+
+    SharedChannels(SimpleBroker broker, Connection connection, int consumerCount, int producerCount) throws JMSException {
+        this.broker = broker;
+        for (int i = 0; i < consumerCount; i++) {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer consumer = session.createConsumer(session.createQueue(INBOUND_QUEUE));
+            consumer.setMessageListener(this::route);
+            consumerSessions.add(session);
+            consumers.add(consumer);
+        }
+        this.inboundQueue = consumerSessions.get(0).createQueue(INBOUND_QUEUE);
+
+        this.replySlots = new ReplySlot[producerCount];
+        for (int i = 0; i < producerCount; i++) {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            replySlots[i] = new ReplySlot(session, session.createProducer(null));
+        }
+    }
+
+    Queue getInboundQueue() {
+        return inboundQueue;
+    }
+
+    // queue objects are plain names, any session can create them
+    Queue createQueue(String name) throws JMSException {
+        ReplySlot slot = replySlots[0];
+        synchronized (slot) {
+            return slot.session.createQueue(name);
+        }
+    }
+
+    void send(Client client, BrokerMessage message, WireFormat wireFormat) throws JMSException {
+        ReplySlot slot = replySlots[(client.hashCode() & 0x7fffffff) % replySlots.length];
+        synchronized (slot) {
+            slot.producer.send(client.getOutgoingQueue(), PreparedReply.toJms(slot.session, message, wireFormat));
+        }
+    }
+
+    private void route(Message message) {
+        try {
+            String clientName = message.getStringProperty(MessageHeaders.CLIENT_ID);
+            Client client = clientName == null ? null : broker.getClient(clientName);
+            if (client == null) {
+                logger.log(Level.WARNING, "Dropping request from unknown client: " + clientName);
+                return;
+            }
+            client.handleClientMessage(client, message);
+        } catch (JMSException e) {
+            logger.log(Level.SEVERE, "Error routing shared inbound message", e);
+        }
+    }
+
+    void close() {
+        try {
+            for (MessageConsumer consumer : consumers) {
+                consumer.close();
+            }
+            for (Session session : consumerSessions) {
+                session.close();
+            }
+            for (ReplySlot slot : replySlots) {
+                synchronized (slot) {
+                    slot.producer.close();
+                    slot.session.close();
+                }
+            }
+        } catch (JMSException e) {
+            logger.log(Level.SEVERE, "Error closing shared channels", e);
+        }
+    }
+
+    private static final class ReplySlot {
+        final Session session;
+        final MessageProducer producer;
+
+        ReplySlot(Session session, MessageProducer producer) {
+            this.session = session;
+            this.producer = producer;
+        }
+    }
+}
@@ -1,12 +1,18 @@
 package de.tu_berlin.cit.vs.jms.broker;
 
-import java.math.BigDecimal;
+import java.io.IOException;
 import java.math.RoundingMode;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.jms.*;
 import javax.jms.Queue;
+import javax.management.JMException;
 
 import de.tu_berlin.cit.vs.jms.common.*;
 import org.apache.activemq.ActiveMQConnectionFactory;
@@ -15,7 +21,8 @@ import org.apache.activemq.ActiveMQConnectionFactory;
 public class SimpleBroker {
     private static final Logger logger = LoggingUtils.getLogger(SimpleBroker.class);
 
-    private Map<String, Client> clients = new HashMap<>();
+    // concurrent so shared inbound consumers can route without taking the broker monitor
+    private Map<String, Client> clients = new ConcurrentHashMap<>();
     protected Connection con;
     protected Session session;
     private Queue registrationQueue;
@@ -24,11 +31,52 @@ public class SimpleBroker {
     protected StockExchange stockExchange;
     protected Map<String, Topic> topicMap = new HashMap<>();
     protected Map<String, MessageProducer> topicProducers = new HashMap<>();
+    // one lock per symbol so trades on different stocks do not serialize behind each other
+    private final Map<String, Lock> stockLocks = new HashMap<>();
+    // client-to-client limit order books, guarded by the same per-symbol locks
+    private final Map<String, OrderBook> orderBooks = new HashMap<>();
+    private final AtomicLong nextOrderId = new AtomicLong();
+
+    private final BrokerOptions options;
+    private final ResponseCache responseCache;
+    private CommandSequencer sequencer; // only in EngineMode.SEQUENCED
+    private SharedChannels sharedChannels; // only in ChannelMode.SHARED
+    private BrokerMetrics metrics; // only with BrokerOptions.isMetrics()
+    private TradeJournal journal; // only with BrokerOptions.getJournalDir()
+    private Snapshotter snapshotter; // only with a journal and a snapshot interval
+    // accounts recovered from the journal whose owner has not registered again yet
+    private final Map<String, Client> dormantAccounts = new HashMap<>();
+
+    // batched market data, only with BrokerOptions.isTickBatch(); touched by the ticker thread only
+    private MessageProducer tickBatchProducer;
+    private String[] tickSymbols;
+    private long[] lastBatchedPrices;
+    private String[] changedSymbols;
+    private long[] changedPrices;
 
     public SimpleBroker(StockExchange stockExchange) throws JMSException {
+        this(stockExchange, new BrokerOptions());
+    }
+
+    public SimpleBroker(StockExchange stockExchange, BrokerOptions options) throws JMSException {
         this.stockExchange = stockExchange;
-        this.stockExchange.registerBroker(this);
-        ActiveMQConnectionFactory conFactory = new ActiveMQConnectionFactory("tcp://localhost:61616");
+        this.options = options;
+        this.responseCache = new ResponseCache(stockExchange);
+        if (options.isMetrics()) {
+            this.metrics = new BrokerMetrics(clients::size);
+            try {
+                metrics.registerMBeans();
+            } catch (JMException e) {
+                logger.log(Level.WARNING, "Could not register metrics MBeans", e);
+            }
+            if (options.getMetricsDumpSeconds() > 0) {
+                metrics.startDump(options.getMetricsDumpSeconds(), options.isMetricsJson());
+            }
+        }
+        if (options.getJournalDir() != null) {
+            openJournal();
+        }
+        ActiveMQConnectionFactory conFactory = new ActiveMQConnectionFactory(options.getBrokerUrl());
         conFactory.setTrustedPackages(Arrays.asList(
                 "de.tu_berlin.cit.vs.jms.common",
                 "java.math",
@@ -53,7 +101,11 @@ public class SimpleBroker {
                 replySession = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
 
                 logger.log(Level.FINE, "Received JMS Message ");
+                long started = System.nanoTime();
                 processRegistration(message, this.con, replySession);
+                if (metrics != null) {
+                    metrics.recordRegistration(System.nanoTime() - started);
+                }
             } catch (JMSException e) {
                 logger.log(Level.SEVERE, "Error processing registration", e);
             } finally {
@@ -73,17 +125,171 @@ public class SimpleBroker {
             Topic topic = session.createTopic(stockName);
             topicMap.put(stockName, topic);
             topicProducers.put(stockName, session.createProducer(topic));
+            stockLocks.put(stockName, new ReentrantLock());
+            orderBooks.put(stockName, new OrderBook(stockName));
+        }
+
+        if (options.isTickBatch()) {
+            this.tickBatchProducer = session.createProducer(session.createTopic(PriceTickBatch.TOPIC));
+            this.tickSymbols = stockExchange.getStockMap().keySet().toArray(new String[0]);
+            this.lastBatchedPrices = new long[tickSymbols.length];
+            Arrays.fill(lastBatchedPrices, Stock.NO_PRICE);
+            this.changedSymbols = new String[tickSymbols.length];
+            this.changedPrices = new long[tickSymbols.length];
+        }
+
+        if (options.getEngineMode() == EngineMode.SEQUENCED) {
+            this.sequencer = new CommandSequencer(CommandSequencer.DEFAULT_CAPACITY, metrics, journal);
+            this.sequencer.start();
+        }
+        if (options.getChannelMode() == ChannelMode.SHARED) {
+            this.sharedChannels = new SharedChannels(this, con, options.getChannelPoolSize(), options.getChannelPoolSize());
+        }
+        // last, the exchange's ticker publishes through the session and producers set up above
+        this.stockExchange.registerBroker(this);
+        logger.log(Level.INFO, "Broker options: " + options);
+    }
+
+    private void openJournal() throws JMSException {
+        // the snapshotter rebuilds its own copy of the state, starting from the configured stocks
+        Map<String, Stock> initialStocks = new HashMap<>();
+        stockExchange.getStockMap().forEach((symbol, stock) ->
+                initialStocks.put(symbol, new Stock(symbol, stock.getAvailableCount())));
+        JournalRecovery recovery = new JournalRecovery(this, stockExchange.getStockMap());
+        try {
+            journal = TradeJournal.open(Path.of(options.getJournalDir()), options.getJournalSegmentBytes(),
+                    options.getJournalDurability(), options.getJournalFlushMillis(), recovery);
+        } catch (IOException e) {
+            JMSException failure = new JMSException("Could not open trade journal: " + e.getMessage());
+            failure.setLinkedException(e);
+            throw failure;
+        }
+        dormantAccounts.putAll(recovery.getAccounts());
+        logger.log(Level.INFO, "Recovered " + dormantAccounts.size() + " accounts from the journal");
+        if (options.getSnapshotIntervalSeconds() > 0) {
+            snapshotter = new Snapshotter(journal, initialStocks, options.getSnapshotIntervalSeconds());
+        }
+    }
+
+    ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    protected SharedChannels getSharedChannels() {
+        return sharedChannels;
+    }
+
+    protected Client getClient(String clientName) {
+        return clients.get(clientName);
+    }
+
+    public BrokerOptions getOptions() {
+        return options;
+    }
+
+    protected BrokerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Entry point for every decoded client request. Runs it on the calling listener thread in
+     * LOCKING mode, or hands it to the sequencer in SEQUENCED mode.
+     *
+     * @param receivedNanos System.nanoTime() when the request was received, only read with metrics on
+     */
+    protected void dispatch(Client client, BrokerMessage message, long receivedNanos) throws JMSException {
+        if (sequencer != null) {
+            sequencer.publish(client, message, receivedNanos);
+        } else if (metrics == null) {
+            client.processMessage(message);
+        } else {
+            long started = System.nanoTime();
+            client.processMessage(message);
+            long done = System.nanoTime();
+            // replies went out synchronously inside processMessage
+            metrics.recordRequest(message.getType(), done - receivedNanos, done - started);
+        }
+    }
+
+    /**
+     * Sends a reply to a client. On the sequencer's business thread the reply is only staged and
+     * goes out from the publisher stage, everywhere else it is sent right away.
+     */
+    protected void deliver(Client client, BrokerMessage message) throws JMSException {
+        // pushed position changes go out ahead of the reply or report about the trade behind them
+        client.flushPortfolio();
+        sendOrStage(client, message);
+    }
+
+    // deliver without the portfolio flush, for the pushed messages themselves
+    void sendOrStage(Client client, BrokerMessage message) throws JMSException {
+        if (sequencer != null && sequencer.isBusinessThread()) {
+            sequencer.stageReply(client, message);
+        } else {
+            client.send(message);
+        }
+    }
+
+    /**
+     * Makes the journal records up to the position as durable as configured before the caller
+     * replies. The sequencer's business thread does not wait for the disk itself: its replies are
+     * held back by the publisher until the position is durable.
+     */
+    private void commitJournal(long position) {
+        if (sequencer != null && sequencer.isBusinessThread()) {
+            sequencer.stageCommit(position);
+        } else {
+            journal.commit(position);
+        }
+    }
+
+    // in SEQUENCED mode one thread owns all trading state, so symbol locks are skipped altogether
+    private Lock lockSymbol(String stockName) {
+        if (sequencer != null) {
+            return null;
+        }
+        Lock lock = stockLocks.get(stockName);
+        if (metrics == null) {
+            lock.lock();
+        } else if (lock.tryLock()) {
+            metrics.recordLockWait(0);
+        } else {
+            // only contended acquisitions pay for the clock reads
+            long start = System.nanoTime();
+            lock.lock();
+            metrics.recordLockWait(System.nanoTime() - start);
+        }
+        return lock;
+    }
 
+    private static void unlock(Lock lock) {
+        if (lock != null) {
+            lock.unlock();
         }
     }
 
     private void updateStockTopic(Stock stock, StockEvent stockEvent) throws JMSException {
         if (this.session == null) return;
+        String payload = topicPayload(stock, stockEvent);
+        if (!payload.isEmpty()) {
+            publishToTopic(stock.getName(), stockEvent, payload);
+        }
+    }
+
+
+    private void updateStockTopic(String stockName, StockEvent stockEvent) throws JMSException {
+        if (this.session == null) return;
+        String payload = topicPayload(stockName, stockEvent);
+        if (!payload.isEmpty()) {
+            publishToTopic(stockName, stockEvent, payload);
+        }
+    }
+
+    String topicPayload(Stock stock, StockEvent stockEvent) {
         String payload = "";
         switch(stockEvent) {
             case STOCK_PRICE_CHANGED:
-                payload = "Price Update for " + stock.getName() + ". Current price: " +
-                        stock.getPrice().setScale(2, RoundingMode.DOWN);
+                payload = priceUpdate(stock.getName(), stock.getPriceMicros());
                 break;
             case STOCK_SOLD:
                 payload = stock.getAvailableCount() + " " + stock.getName() + " stock has been sold by a client. Available: " +
@@ -96,23 +302,15 @@ public class SimpleBroker {
             default:
                 break;
         }
-        if (!payload.isEmpty()) {
-            Message message = session.createTextMessage(payload);
-            if (topicProducers.containsKey(stock.getName())) {
-                topicProducers.get(stock.getName()).send(message);
-            }
-        }
+        return payload;
     }
 
-
-    private void updateStockTopic(String stockName, StockEvent stockEvent) throws JMSException {
-        if (this.session == null) return;
+    String topicPayload(String stockName, StockEvent stockEvent) {
         String payload = "";
         switch(stockEvent) {
             case STOCK_PRICE_CHANGED:
                 if (stockExchange.getStockMap().containsKey(stockName)) {
-                    payload = "Price Update for " + stockName + ". Current price: " +
-                            stockExchange.getStockMap().get(stockName).getPrice().setScale(2, RoundingMode.DOWN);
+                    payload = priceUpdate(stockName, stockExchange.getQuotes().getPrice(stockName));
                 }
                 break;
             case STOCK_SOLD:
@@ -126,11 +324,38 @@ public class SimpleBroker {
             default:
                 break;
         }
-        if (!payload.isEmpty()) {
-            Message message = this.session.createTextMessage(payload);
-            if (topicProducers.containsKey(stockName)) {
-                topicProducers.get(stockName).send(message);
-            }
+        return payload;
+    }
+
+    private static String priceUpdate(String stockName, long price) {
+        return "Price Update for " + stockName + ". Current price: " +
+                FixedPoint.toBigDecimal(price).setScale(2, RoundingMode.DOWN);
+    }
+
+    private void publishToTopic(String stockName, StockEvent stockEvent, String payload) throws JMSException {
+        publishToTopic(stockName, stockEvent, payload, stockExchange.getSimulatedTime());
+    }
+
+    private void publishToTopic(String stockName, StockEvent stockEvent, String payload, long simulatedTime)
+            throws JMSException {
+        MessageProducer producer = topicProducers.get(stockName);
+        if (producer == null) return;
+        // the broker session is shared by all trading threads and the ticker, JMS sessions are single-threaded
+        synchronized (this.session) {
+            TextMessage update = this.session.createTextMessage(payload);
+            update.setStringProperty(MessageHeaders.SYMBOL, stockName);
+            update.setStringProperty(MessageHeaders.EVENT, stockEvent.name());
+            stampSimulatedTime(update, simulatedTime);
+            producer.send(update);
+        }
+        if (metrics != null) {
+            metrics.topicPublished();
+        }
+    }
+
+    private static void stampSimulatedTime(Message message, long simulatedTime) throws JMSException {
+        if (simulatedTime != StockExchange.NO_TIME) {
+            message.setLongProperty(MessageHeaders.SIMULATED_TIME, simulatedTime);
         }
     }
 
@@ -146,20 +371,24 @@ public class SimpleBroker {
         }
         RegisterMessage registerMessage = (RegisterMessage) obj;
         Destination replyTo = objMsg.getJMSReplyTo();
-        if (registerClient(registerMessage.getClientName(), connection, registerMessage.getInitialAmount()) == 0) {
+        long initialFunds = FixedPoint.fromBigDecimal(registerMessage.getInitialAmount());
+        if (registerClient(registerMessage.getClientName(), connection, initialFunds) == 0) {
 
-            logger.log(Level.FINE, "ReplyTo: " + replyTo.toString());
+            logger.log(Level.FINE, "ReplyTo: " + replyTo);
             if (replyTo != null) {
                 Client newClient = clients.get(registerMessage.getClientName());
-                logger.log(Level.FINE, "Registering client: " + newClient.getClientName());
-                logger.log(Level.FINE, "Incoming Queue: " + newClient.getIncomingQueue());
-                logger.log(Level.FINE, "Outgoing Queue: " + newClient.getOutgoingQueue());
                 if (newClient != null) {
+                    // both encodings are supported here, so the client's preference always wins
+                    newClient.setWireFormat(registerMessage.getWireFormat());
+                    logger.log(Level.FINE, "Registering client: " + newClient.getClientName());
+                    logger.log(Level.FINE, "Incoming Queue: " + newClient.getIncomingQueue());
+                    logger.log(Level.FINE, "Outgoing Queue: " + newClient.getOutgoingQueue());
                     // reversing incoming to outgoing and vise versa:
                     RegisterAcknowledgementMessage replyMessage =
                             new RegisterAcknowledgementMessage(registerMessage.getClientName(),
                                                                 newClient.getOutgoingQueue(),
-                                                                newClient.getIncomingQueue());
+                                                                newClient.getIncomingQueue(),
+                                                                newClient.getWireFormat());
                     ObjectMessage reply = replySession.createObjectMessage(replyMessage);
                     reply.setJMSCorrelationID(objMsg.getJMSCorrelationID());
                     reply.setJMSDeliveryMode(DeliveryMode.NON_PERSISTENT);
@@ -201,15 +430,35 @@ public class SimpleBroker {
     }
 
     public void stop() throws JMSException {
+        stockExchange.unregisterBroker(this);
+        if (metrics != null) {
+            metrics.close();
+        }
+        if (sequencer != null) {
+            sequencer.stop();
+        }
+        if (sharedChannels != null) {
+            sharedChannels.close();
+        }
         for(Client client : clients.values()) {
             client.cleanup();
         }
         clients.clear();
         if (this.session != null) this.session.close();
         if (this.con != null) this.con.close();
+        if (journal != null) {
+            try {
+                journal.close();
+                if (snapshotter != null) {
+                    snapshotter.close();
+                }
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error closing trade journal", e);
+            }
+        }
     }
 
-    public synchronized int registerClient(String clientName, Connection connection, BigDecimal funds) throws JMSException {
+    public synchronized int registerClient(String clientName, Connection connection, long funds) throws JMSException {
         // check if client exists
         if (this.clients.containsKey(clientName)) {
             logger.log(Level.WARNING, "Client " + clientName + " already registered");
@@ -217,64 +466,429 @@ public class SimpleBroker {
         }
 
 
-        Client newClient = new Client(this, clientName, connection, funds);
-        newClient.setMessageListener(msg -> newClient.handleClientMessage(newClient, msg));
+        // a returning client gets its recovered account instead of fresh funds
+        Client account = dormantAccounts.remove(clientName);
+        long openingFunds = account != null ? account.getFunds() : funds;
+        Client newClient;
+        if (sharedChannels != null) {
+            // the client sends to the shared inbound queue, its own queue only carries replies
+            newClient = new Client(this, clientName, sharedChannels.getInboundQueue(),
+                    sharedChannels.createQueue(clientName + "FromBroker"), openingFunds);
+        } else {
+            newClient = new Client(this, clientName, connection, openingFunds);
+        }
+        if (account != null) {
+            for (Stock stock : account.getClientStocks().values()) {
+                newClient.addStock(stock.getName(), stock.getMaxStockCount(), stock.getPriceMicros());
+            }
+        } else if (journal != null) {
+            commitJournal(journal.register(clientName, funds));
+        }
+        if (sharedChannels == null) {
+            newClient.setMessageListener(msg -> newClient.handleClientMessage(newClient, msg));
+        }
         this.clients.put(clientName, newClient);
 
         return 0;
     }
 
-    public synchronized BigDecimal sellStock(Client client, String stockName, Integer quantity) throws JMSException {
+    public Execution sellStock(Client client, String stockName, int quantity) throws JMSException {
+        Stock stock = checkOrder(stockName, quantity);
+        QuoteBoard.Quotes quotes;
+        long price;
+        long funds;
+        long journaled = 0;
+        Lock lock = lockSymbol(stockName);
+        client.traceLockAcquired();
         try {
-            if (stockExchange.getStockMap().containsKey(stockName)) {
-                client.removeStock(stockName, quantity);
-                Stock stock = stockExchange.getStockMap().get(stockName);
-                Integer newQuantity = quantity + stock.getAvailableCount();
-                stock.setAvailableCount(newQuantity);
-            }
-            updateStockTopic(stockName, StockEvent.STOCK_SOLD);
-            BigDecimal price = this.getCurrentStockPrice(stockName);
-            client.addFunds(price.multiply(BigDecimal.valueOf(quantity))
-            );
-            return price;
-        } catch (JMSException e) {
-            logger.log(Level.SEVERE, "Error processing sell stock", e);
-            throw e;
+            quotes = stockExchange.getQuotes();
+            price = checkQuote(stockName, quantity, quotes.getPrice(stockName));
+            journaled = executeSell(client, stock, quantity, price);
+            funds = client.getFunds();
+        } finally {
+            unlock(lock);
+        }
+        if (journal != null) {
+            commitJournal(journaled);
         }
+        updateStockTopic(stockName, StockEvent.STOCK_SOLD);
+        return new Execution(nextOrderId.incrementAndGet(), stockName, Side.SELL, quantity, price, funds,
+                quotes.getVersion());
     }
 
-    public synchronized Stock buyStock(Client client, String stockName, Integer quantity) throws JMSException, InsufficientFundsException {
-        if (stockExchange.getStockMap().containsKey(stockName)) {
-            Stock stock = stockExchange.getStockMap().get(stockName);
-            if (quantity <= stock.getAvailableCount()) {
-                BigDecimal cost = BigDecimal.valueOf(quantity).multiply(this.getCurrentStockPrice(stockName));
-                if (client.getFunds().compareTo(cost) >= 0) { // check if enough funds with client
-                    try {
-                        client.removeFunds(cost);
-                        Integer newQuantity = stock.getAvailableCount() - quantity;
-                        stock.setAvailableCount(newQuantity);
-                        Stock boughtStock = new Stock(stockName, quantity, this.getCurrentStockPrice(stockName));
-                        updateStockTopic(boughtStock, StockEvent.STOCK_BOUGHT);
-                        return boughtStock;
-                    } catch (InsufficientFundsException e) {
-                        throw new InsufficientFundsException("Not enough funds to buy " + quantity + " stocks of " + stockName);
+    public Execution buyStock(Client client, String stockName, int quantity) throws JMSException {
+        Stock stock = checkOrder(stockName, quantity);
+        long price;
+        long funds;
+        long quoteVersion;
+        long journaled = 0;
+        Lock lock = lockSymbol(stockName);
+        client.traceLockAcquired();
+        try {
+            QuoteBoard.Quotes quotes = stockExchange.getQuotes();
+            price = checkQuote(stockName, quantity, quotes.getPrice(stockName));
+            quoteVersion = quotes.getVersion();
+            journaled = executeBuy(client, stock, quantity, price);
+            funds = client.getFunds();
+        } finally {
+            unlock(lock);
+        }
+        if (journal != null) {
+            commitJournal(journaled);
+        }
+        updateStockTopic(new Stock(stockName, quantity, price), StockEvent.STOCK_BOUGHT);
+        return new Execution(nextOrderId.incrementAndGet(), stockName, Side.BUY, quantity, price, funds, quoteVersion);
+    }
+
+    private Stock checkOrder(String stockName, int quantity) throws OrderRejectedException {
+        Stock stock = stockExchange.getStock(stockName);
+        if (stock == null) {
+            throw new OrderRejectedException(RejectReason.UNKNOWN_STOCK, stockName, quantity, 0);
+        }
+        if (quantity <= 0) {
+            throw new OrderRejectedException(RejectReason.INVALID_QUANTITY, stockName, quantity, 0);
+        }
+        return stock;
+    }
+
+    // stocks have no price until the first tick, or the first row of --from, has been replayed
+    private static long checkQuote(String stockName, int quantity, long price) throws OrderRejectedException {
+        if (price == Stock.NO_PRICE || price <= 0) {
+            throw new OrderRejectedException(RejectReason.NO_QUOTE, stockName, quantity, 0);
+        }
+        return price;
+    }
+
+    // the part of a buy that runs under the symbol lock, returns the journal position to commit
+    private long executeBuy(Client client, Stock stock, int quantity, long price) throws JMSException {
+        String stockName = stock.getName();
+        if (quantity > stock.getAvailableCount()) {
+            throw new OrderRejectedException(RejectReason.NOT_AVAILABLE, stockName, quantity, stock.getAvailableCount());
+        }
+        // checked up front so a refusal does not word an InsufficientFundsException; a client's requests run one
+        // at a time, so its funds can only grow until the settlement
+        if (client.getFunds() < cost(price, quantity)) {
+            throw new OrderRejectedException(RejectReason.INSUFFICIENT_FUNDS, stockName, quantity, 0);
+        }
+        try {
+            // funds and position change together under the client's own monitor
+            client.settleBuy(stockName, quantity, price);
+        } catch (InsufficientFundsException e) {
+            throw new OrderRejectedException(RejectReason.INSUFFICIENT_FUNDS, stockName, quantity, 0);
+        }
+        stock.setAvailableCount(stock.getAvailableCount() - quantity);
+        responseCache.inventoryChanged();
+        // appended under the symbol lock so the journal has this symbol's trades in order
+        return journal != null ? journal.buy(client.getClientName(), stockName, quantity, price) : 0;
+    }
+
+    // a cost too large for a long is more than any client's funds
+    private static long cost(long price, int quantity) {
+        try {
+            return FixedPoint.multiply(price, quantity);
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    // the part of a sell that runs under the symbol lock, returns the journal position to commit
+    private long executeSell(Client client, Stock stock, int quantity, long price) throws JMSException {
+        // the client's holdings of this symbol only change under its lock
+        int held = client.getQuantity(stock.getName());
+        if (quantity > held) {
+            throw new OrderRejectedException(RejectReason.INSUFFICIENT_HOLDINGS, stock.getName(), quantity, held);
+        }
+        client.settleSell(stock.getName(), quantity, price);
+        stock.setAvailableCount(stock.getAvailableCount() + quantity);
+        responseCache.inventoryChanged();
+        return journal != null ? journal.sell(client.getClientName(), stock.getName(), quantity, price) : 0;
+    }
+
+    /**
+     * Executes the legs of a batch in their order against one quote version. The lock of every symbol
+     * involved is taken once for the whole batch, in name order so that batches cannot deadlock each
+     * other, and the journal is committed once at the end.
+     *
+     * ALL_OR_NOTHING first checks every leg against availability, funds and holdings as the legs
+     * before it leave them and executes nothing if one would be refused. Funds and holdings of the
+     * client can only grow meanwhile (fills of its resting limit orders), so the checked legs cannot
+     * fail when they are executed.
+     */
+    public BatchExecutionReportMessage executeBatch(Client client, BatchOrderMessage batch) throws JMSException {
+        List<BatchOrderMessage.Leg> legs = batch.getLegs();
+        TreeSet<String> symbols = new TreeSet<>();
+        for (BatchOrderMessage.Leg leg : legs) {
+            if (stockExchange.getStock(leg.getStockName()) != null) {
+                symbols.add(leg.getStockName());
+            }
+        }
+        RejectReason[] reasons = new RejectReason[legs.size()];
+        long[] prices = new long[legs.size()];
+        // topic update per traded symbol, after the locks are released
+        Map<String, StockEvent> traded = new LinkedHashMap<>();
+        QuoteBoard.Quotes quotes;
+        long journaled = 0;
+        List<Lock> locks = new ArrayList<>(symbols.size());
+        try {
+            for (String symbol : symbols) {
+                locks.add(lockSymbol(symbol));
+            }
+            client.traceLockAcquired();
+            quotes = stockExchange.getQuotes();
+            if (batch.getMode() == BatchOrderMessage.Mode.ALL_OR_NOTHING) {
+                int refused = firstRefusal(client, legs, quotes, reasons);
+                if (refused >= 0) {
+                    for (int i = 0; i < reasons.length; i++) {
+                        if (i != refused) {
+                            reasons[i] = RejectReason.BATCH_ABORTED;
+                        }
                     }
                 }
-                throw new InsufficientFundsException("Not enough funds to buy " + quantity + " stocks of " + stockName);
             }
-            throw new IllegalArgumentException("Requested stock quantity for " + stockName + " is not available. (Available: " + stock.getAvailableCount() + ")");
+            for (int i = 0; i < legs.size(); i++) {
+                if (reasons[i] != null) {
+                    continue;
+                }
+                BatchOrderMessage.Leg leg = legs.get(i);
+                try {
+                    Stock stock = checkOrder(leg.getStockName(), leg.getAmount());
+                    long price = checkQuote(stock.getName(), leg.getAmount(), quotes.getPrice(stock.getName()));
+                    journaled = Math.max(journaled, leg.getSide() == Side.BUY
+                            ? executeBuy(client, stock, leg.getAmount(), price)
+                            : executeSell(client, stock, leg.getAmount(), price));
+                    prices[i] = price;
+                    traded.put(stock.getName(), leg.getSide() == Side.BUY ? StockEvent.STOCK_BOUGHT : StockEvent.STOCK_SOLD);
+                } catch (OrderRejectedException e) {
+                    reasons[i] = e.getReason();
+                } catch (JMSException | RuntimeException e) {
+                    // refuse this leg only, the legs before it are executed and still get journaled and reported
+                    logger.log(Level.SEVERE, "Error executing batch leg " + leg.getStockName(), e);
+                    reasons[i] = RejectReason.INTERNAL_ERROR;
+                }
+            }
+        } finally {
+            for (Lock lock : locks) {
+                unlock(lock);
+            }
+        }
+        if (journal != null && journaled > 0) {
+            commitJournal(journaled);
+        }
+        for (Map.Entry<String, StockEvent> update : traded.entrySet()) {
+            updateStockTopic(update.getKey(), update.getValue());
+        }
+        List<BatchExecutionReportMessage.LegReport> reports = new ArrayList<>(legs.size());
+        for (int i = 0; i < legs.size(); i++) {
+            BatchOrderMessage.Leg leg = legs.get(i);
+            reports.add(new BatchExecutionReportMessage.LegReport(leg.getStockName(), leg.getSide(), leg.getAmount(),
+                    prices[i], reasons[i]));
+        }
+        return new BatchExecutionReportMessage(batch.getMode(), quotes.getVersion(), client.getFunds(), reports);
+    }
+
+    /**
+     * Checks the legs in order against the state the legs before them leave behind, without changing anything.
+     * The counts are checked before the price, which needs the quote and may overflow.
+     *
+     * @return the index of the first leg that would be refused, its reason stored in reasons; -1 if none
+     */
+    private int firstRefusal(Client client, List<BatchOrderMessage.Leg> legs, QuoteBoard.Quotes quotes,
+                             RejectReason[] reasons) {
+        long funds = client.getFunds();
+        Map<String, Integer> available = new HashMap<>();
+        Map<String, Integer> held = new HashMap<>();
+        for (int i = 0; i < legs.size(); i++) {
+            BatchOrderMessage.Leg leg = legs.get(i);
+            String stockName = leg.getStockName();
+            int amount = leg.getAmount();
+            Stock stock = stockExchange.getStock(stockName);
+            if (stock == null) {
+                reasons[i] = RejectReason.UNKNOWN_STOCK;
+                return i;
+            }
+            if (amount <= 0) {
+                reasons[i] = RejectReason.INVALID_QUANTITY;
+                return i;
+            }
+            int inStock = available.computeIfAbsent(stockName, name -> stock.getAvailableCount());
+            int holding = held.computeIfAbsent(stockName, client::getQuantity);
+            if (leg.getSide() == Side.BUY ? amount > inStock : amount > holding) {
+                reasons[i] = leg.getSide() == Side.BUY ? RejectReason.NOT_AVAILABLE : RejectReason.INSUFFICIENT_HOLDINGS;
+                return i;
+            }
+            long price = quotes.getPrice(stockName);
+            if (price == Stock.NO_PRICE || price <= 0) {
+                reasons[i] = RejectReason.NO_QUOTE;
+                return i;
+            }
+            if (leg.getSide() == Side.BUY) {
+                long value = cost(price, amount);
+                if (value > funds) {
+                    reasons[i] = RejectReason.INSUFFICIENT_FUNDS;
+                    return i;
+                }
+                funds -= value;
+                available.put(stockName, inStock - amount);
+                held.put(stockName, holding + amount);
+            } else {
+                try {
+                    funds = FixedPoint.add(funds, FixedPoint.multiply(price, amount));
+                } catch (ArithmeticException e) {
+                    reasons[i] = RejectReason.INTERNAL_ERROR;
+                    return i;
+                }
+                available.put(stockName, inStock + amount);
+                held.put(stockName, holding - amount);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Places a limit order on the symbol's book. Funds (buy) or shares (sell) for the full order
+     * are escrowed up front, so fills never need to check or lock the counterparty's balance.
+     * Reports go to both sides of every fill once the symbol lock is released.
+     */
+    public long placeLimitOrder(Client client, String stockName, Side side, int quantity, long limitPrice)
+            throws JMSException {
+        OrderBook book = orderBooks.get(stockName);
+        if (book == null) {
+            throw new OrderRejectedException(RejectReason.UNKNOWN_STOCK, stockName, quantity, 0);
+        }
+        if (quantity <= 0) {
+            throw new OrderRejectedException(RejectReason.INVALID_QUANTITY, stockName, quantity, 0);
+        }
+        if (limitPrice <= 0) {
+            throw new OrderRejectedException(RejectReason.INVALID_PRICE, stockName, quantity, 0);
+        }
+
+        long orderId = nextOrderId.incrementAndGet();
+        List<Map.Entry<Client, OrderReportMessage>> reports = new ArrayList<>();
+        long[] journaled = {0};
+        Lock lock = lockSymbol(stockName);
+        client.traceLockAcquired();
+        try {
+            if (side == Side.BUY) {
+                long escrow = cost(limitPrice, quantity);
+                if (client.getFunds() < escrow) {
+                    throw new OrderRejectedException(RejectReason.INSUFFICIENT_FUNDS, stockName, quantity, 0);
+                }
+                try {
+                    client.removeFunds(escrow);
+                } catch (InsufficientFundsException e) {
+                    throw new OrderRejectedException(RejectReason.INSUFFICIENT_FUNDS, stockName, quantity, 0);
+                }
+            } else {
+                int held = client.getQuantity(stockName);
+                if (quantity > held) {
+                    throw new OrderRejectedException(RejectReason.INSUFFICIENT_HOLDINGS, stockName, quantity, held);
+                }
+                client.removeStock(stockName, quantity);
+            }
+
+            int[] incomingRemaining = {quantity};
+            int remaining = book.submit(orderId, client, side, quantity, limitPrice, (resting, fill, price) -> {
+                incomingRemaining[0] -= fill;
+                Client buyer = side == Side.BUY ? client : resting.getOwner();
+                Client seller = side == Side.BUY ? resting.getOwner() : client;
+                long buyerLimit = side == Side.BUY ? limitPrice : resting.getPrice();
+                settleFill(stockName, buyer, seller, fill, price, buyerLimit);
+                if (journal != null) {
+                    journaled[0] = journal.fill(journalName(buyer), journalName(seller), stockName, fill, price);
+                }
+                reports.add(Map.entry(resting.getOwner(), fillReport(resting.getId(), stockName, resting.getSide(),
+                        fill, price, resting.getRemaining())));
+                reports.add(Map.entry(client, fillReport(orderId, stockName, side, fill, price, incomingRemaining[0])));
+            });
+            if (remaining > 0) {
+                reports.add(Map.entry(client, new OrderReportMessage(orderId, stockName, side,
+                        OrderReportMessage.Status.ACCEPTED, 0, 0L, remaining, null)));
+            }
+        } finally {
+            unlock(lock);
+        }
+        if (journaled[0] > 0) {
+            commitJournal(journaled[0]);
+        }
+
+        for (Map.Entry<Client, OrderReportMessage> report : reports) {
+            try {
+                deliver(report.getKey(), report.getValue());
+            } catch (JMSException e) {
+                logger.log(Level.WARNING, "Could not deliver order report to " + report.getKey().getClientName(), e);
+            }
         }
-        throw new IllegalArgumentException("Stock " + stockName + " does not exist");
+        return orderId;
     }
 
-    public BigDecimal getCurrentStockPrice(String stockName) {
-        return stockExchange.getStockMap().get(stockName).getPrice();
+    public OrderReportMessage cancelOrder(Client client, String stockName, long orderId) throws JMSException {
+        OrderBook book = orderBooks.get(stockName);
+        if (book == null) {
+            return new OrderReportMessage(orderId, stockName, null, OrderReportMessage.Status.REJECTED,
+                    0, 0L, 0, RejectReason.UNKNOWN_STOCK);
+        }
+        Lock lock = lockSymbol(stockName);
+        client.traceLockAcquired();
+        try {
+            OrderBook.Order order = book.find(orderId);
+            if (order == null || order.getOwner() != client) {
+                return new OrderReportMessage(orderId, stockName, null, OrderReportMessage.Status.REJECTED,
+                        0, 0L, 0, RejectReason.UNKNOWN_ORDER);
+            }
+            book.cancel(orderId);
+            Side side = order.getSide();
+            int remaining = order.getRemaining();
+            // release whatever is still escrowed for the unfilled part
+            if (side == Side.BUY) {
+                client.addFunds(FixedPoint.multiply(order.getPrice(), remaining));
+            } else {
+                client.addStock(stockName, remaining, order.getPrice());
+            }
+            book.recycle(order);
+            return new OrderReportMessage(orderId, stockName, side, OrderReportMessage.Status.CANCELLED,
+                    0, 0L, 0, null);
+        } finally {
+            unlock(lock);
+        }
+    }
+
+    // a resting order can outlive its owner's registration, its fills must not credit a new account of that name
+    private String journalName(Client client) {
+        return clients.get(client.getClientName()) == client ? client.getClientName() : "";
+    }
+
+    private void settleFill(String stockName, Client buyer, Client seller, int quantity, long price, long buyerLimit) {
+        try {
+            buyer.addStock(stockName, quantity, price);
+            if (buyerLimit > price) {
+                // the buyer escrowed at its limit, hand back the price improvement
+                buyer.addFunds(FixedPoint.multiply(buyerLimit - price, quantity));
+            }
+            seller.addFunds(FixedPoint.multiply(price, quantity));
+        } catch (JMSException e) {
+            logger.log(Level.SEVERE, "Error settling fill of " + quantity + " " + stockName, e);
+        }
+    }
+
+    private static OrderReportMessage fillReport(long orderId, String stockName, Side side, int quantity, long price,
+                                                 int remaining) {
+        OrderReportMessage.Status status = remaining == 0
+                ? OrderReportMessage.Status.FILLED
+                : OrderReportMessage.Status.PARTIALLY_FILLED;
+        return new OrderReportMessage(orderId, stockName, side, status, quantity, price, remaining, null);
+    }
+
+    public long getCurrentStockPrice(String stockName) {
+        return stockExchange.getQuotes().getPrice(stockName);
     }
 
     public synchronized int deregisterClient(String clientName) throws JMSException {
         if( this.clients.containsKey(clientName) ) {
             this.clients.get(clientName).cleanup();
             this.clients.remove(clientName);
+            if (journal != null) {
+                commitJournal(journal.deregister(clientName));
+            }
             return 0;
         }
         return -1;
@@ -283,27 +897,68 @@ public class SimpleBroker {
     public synchronized String getInfoOnSingleStock(Stock stock) throws JMSException {
         return stock.toString();
     }
-    public synchronized List<Stock> getStockExchangeMap() {
-        return new ArrayList<>(this.stockExchange.getStockMap().values());
+    /**
+     * @return copies of all listed stocks priced from one tick, safe to serialize while trading goes on
+     */
+    public List<Stock> getStockExchangeMap() {
+        QuoteBoard.Quotes quotes = stockExchange.getQuotes();
+        List<Stock> stocks = new ArrayList<>(stockExchange.getStockMap().size());
+        for (Stock stock : stockExchange.getStockMap().values()) {
+            stocks.add(quote(stock, quotes));
+        }
+        return stocks;
+    }
+
+    private static Stock quote(Stock stock, QuoteBoard.Quotes quotes) {
+        Stock copy = new Stock(stock.getName(), stock.getMaxStockCount(), quotes.getPrice(stock.getName()));
+        copy.setAvailableCount(stock.getAvailableCount());
+        return copy;
     }
 
-    public synchronized Map<String, Stock> getStocks() {
+    public Map<String, Stock> getStocks() {
         return this.stockExchange.getStockMap();
     }
 
     public void notifyPriceUpdate() throws JMSException {
-        stockExchange.getStockMap().forEach((stockName, stock) -> {
-                    try {
-                        if (stock.getPrice() != null) {
-                            updateStockTopic(stock, StockEvent.STOCK_PRICE_CHANGED);
-                        }
-
-                    } catch (JMSException e) {
-                        throw new RuntimeException(e);
-                    }
+        // one tick for all topics, even if the ticker publishes the next one meanwhile
+        QuoteBoard.Quotes quotes = stockExchange.getQuotes();
+        if (this.session != null) {
+            for (int i = 0; i < quotes.size(); i++) {
+                long price = quotes.getPrice(i);
+                if (price != Stock.NO_PRICE) {
+                    publishToTopic(quotes.getSymbol(i), StockEvent.STOCK_PRICE_CHANGED,
+                            priceUpdate(quotes.getSymbol(i), price), quotes.getSimulatedTime());
                 }
+            }
+        }
+        if (tickBatchProducer != null) {
+            publishTickBatch(quotes);
+        }
+    }
 
-        );
+    // one message for all symbols whose price moved since the previous tick
+    private void publishTickBatch(QuoteBoard.Quotes quotes) throws JMSException {
+        int count = 0;
+        for (int i = 0; i < tickSymbols.length; i++) {
+            long price = quotes.getPrice(tickSymbols[i]);
+            if (price != Stock.NO_PRICE && price != lastBatchedPrices[i]) {
+                lastBatchedPrices[i] = price;
+                changedSymbols[count] = tickSymbols[i];
+                changedPrices[count++] = price;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        synchronized (this.session) {
+            BytesMessage batch = this.session.createBytesMessage();
+            PriceTickBatch.write(batch, quotes.getVersion(), changedSymbols, changedPrices, count);
+            stampSimulatedTime(batch, quotes.getSimulatedTime());
+            tickBatchProducer.send(batch);
+        }
+        if (metrics != null) {
+            metrics.tickBatchPublished();
+        }
     }
 
 
@@ -0,0 +1,117 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.LoggingUtils;
+import de.tu_berlin.cit.vs.jms.common.Stock;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes a {@link StateSnapshot} of the journaled state every interval without touching the live
+ * accounts. It keeps a shadow copy of the state that only the journal feeds: each round replays
+ * the records appended since the last one into it and writes it out as of exactly that journal
+ * position, so trading never waits for a snapshot. The shadow starts from the latest snapshot on
+ * the snapshot thread, after start-up.
+ *
+ * The newest {@link #KEEP} snapshots are kept, segments before the older of them are deleted.
+ */
+class Snapshotter implements AutoCloseable {
+    private static final Logger logger = LoggingUtils.getLogger(Snapshotter.class);
+
+    static final int KEEP = 2;
+
+    private final TradeJournal journal;
+    private final JournalRecovery shadow;
+    private final ScheduledExecutorService scheduler;
+    private long position = -1; // journal position of the shadow, -1 until it is loaded
+    private long snapshotPosition;
+
+    /**
+     * @param initialStocks the stocks as configured, before any recovery changed their availability
+     */
+    Snapshotter(TradeJournal journal, Map<String, Stock> initialStocks, long intervalSeconds) {
+        this.journal = journal;
+        this.shadow = new JournalRecovery(null, initialStocks);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "JournalSnapshotter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.SEVERE, "Could not write snapshot", e);
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Brings the shadow up to the end of the journal and writes it unless nothing changed since the
+     * last snapshot.
+     *
+     * @return the journal position the latest snapshot covers
+     */
+    synchronized long snapshot() throws IOException {
+        Path directory = journal.getDirectory();
+        if (position < 0) {
+            position = StateSnapshot.loadLatest(directory, shadow);
+            snapshotPosition = position;
+        }
+        long target = journal.getWritten();
+        position = journal.read(position, target, shadow);
+        if (position < target) {
+            logger.log(Level.WARNING, "Journal ends at " + position + " instead of " + target);
+        }
+        if (position == snapshotPosition) {
+            return snapshotPosition;
+        }
+        // a snapshot must not get ahead of what a crash leaves of the journal
+        journal.force(position);
+        long start = System.nanoTime();
+        Path file = StateSnapshot.write(directory, position, shadow.getStocks().values(), shadow.getAccounts().values());
+        snapshotPosition = position;
+        logger.log(Level.INFO, "Wrote snapshot " + file + " of " + shadow.getAccounts().size() + " accounts in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        prune(directory);
+        return snapshotPosition;
+    }
+
+    private void prune(Path directory) throws IOException {
+        List<Path> snapshots = StateSnapshot.list(directory);
+        if (snapshots.size() < KEEP) {
+            return;
+        }
+        for (int i = 0; i < snapshots.size() - KEEP; i++) {
+            Files.deleteIfExists(snapshots.get(i));
+        }
+        long oldestKept = StateSnapshot.positionOf(snapshots.get(snapshots.size() - KEEP));
+        int deleted = journal.deleteSegmentsBefore(oldestKept);
+        if (deleted > 0) {
+            logger.log(Level.INFO, "Deleted " + deleted + " journal segments before position " + oldestKept);
+        }
+    }
+
+    /**
+     * Stops the schedule and writes a last snapshot, so the next start has nothing to replay.
+     * Call it after the journal is closed.
+     */
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        snapshot();
+    }
+}
@@ -0,0 +1,150 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.LoggingUtils;
+import de.tu_berlin.cit.vs.jms.common.Stock;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary image of the account state as of a journal position: the available count of every stock
+ * and the funds and positions of every account. Files sit next to the journal segments and are
+ * named after that position.
+ *
+ * Layout (big endian): int magic, int version, long position, int stock count, then per stock
+ * (UTF symbol, int available), int account count, then per account (UTF name, long funds,
+ * int position count, per position (UTF symbol, int quantity, long price)), and a trailing
+ * CRC32C of everything before it. A file is written under a temporary name and renamed once
+ * forced, so a crash never leaves a half snapshot behind.
+ */
+final class StateSnapshot {
+    private static final Logger logger = LoggingUtils.getLogger(StateSnapshot.class);
+
+    static final String EXTENSION = ".snapshot";
+    private static final int MAGIC = 0x534E4150;
+    private static final int VERSION = 1;
+
+    private StateSnapshot() {
+    }
+
+    static Path write(Path directory, long position, Collection<Stock> stocks, Collection<Client> accounts)
+            throws IOException {
+        Path file = directory.resolve(String.format("%020d%s", position, EXTENSION));
+        Path temporary = directory.resolve(file.getFileName() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(temporary.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(fileOut, 1 << 16), new CRC32C());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(position);
+            out.writeInt(stocks.size());
+            for (Stock stock : stocks) {
+                out.writeUTF(stock.getName());
+                out.writeInt(stock.getAvailableCount());
+            }
+            out.writeInt(accounts.size());
+            for (Client account : accounts) {
+                Map<String, Stock> positions = account.getClientStocks();
+                out.writeUTF(account.getClientName());
+                out.writeLong(account.getFunds());
+                out.writeInt(positions.size());
+                for (Stock stock : positions.values()) {
+                    out.writeUTF(stock.getName());
+                    out.writeInt(stock.getMaxStockCount());
+                    out.writeLong(stock.getPriceMicros());
+                }
+            }
+            out.writeInt((int) checked.getChecksum().getValue());
+            out.flush();
+            fileOut.getChannel().force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return file;
+    }
+
+    /**
+     * Loads the newest snapshot whose checksum holds into the handler, older ones are the fallback
+     * for a damaged file.
+     *
+     * @return the journal position the loaded snapshot covers, 0 without one
+     */
+    static long loadLatest(Path directory, TradeJournal.Handler handler) throws IOException {
+        List<Path> snapshots = list(directory);
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            Path file = snapshots.get(i);
+            if (!intact(file)) {
+                logger.log(Level.WARNING, "Snapshot " + file + " is damaged, trying an older one");
+                continue;
+            }
+            return load(file, handler);
+        }
+        return 0;
+    }
+
+    static List<Path> list(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(EXTENSION)).sorted().toList();
+        }
+    }
+
+    static long positionOf(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - EXTENSION.length()));
+    }
+
+    // checked before loading, a handler cannot take back half a snapshot
+    private static boolean intact(Path file) throws IOException {
+        long size = Files.size(file);
+        if (size < 4) {
+            return false;
+        }
+        try (InputStream fileIn = Files.newInputStream(file)) {
+            CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(fileIn, 1 << 16), new CRC32C());
+            DataInputStream in = new DataInputStream(checked);
+            in.skipNBytes(size - 4);
+            int expected = (int) checked.getChecksum().getValue();
+            return in.readInt() == expected;
+        }
+    }
+
+    private static long load(Path file, TradeJournal.Handler handler) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a snapshot of this version");
+            }
+            long position = in.readLong();
+            int stocks = in.readInt();
+            for (int i = 0; i < stocks; i++) {
+                handler.onAvailable(in.readUTF(), in.readInt());
+            }
+            int accounts = in.readInt();
+            for (int i = 0; i < accounts; i++) {
+                String clientName = in.readUTF();
+                handler.onRegister(clientName, in.readLong());
+                int positions = in.readInt();
+                for (int j = 0; j < positions; j++) {
+                    handler.onPosition(clientName, in.readUTF(), in.readInt(), in.readLong());
+                }
+            }
+            logger.log(Level.INFO, "Loaded snapshot " + file + ": " + accounts + " accounts");
+            return position;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package de.tu_berlin.cit.vs.jms.broker;
 
+import de.tu_berlin.cit.vs.jms.common.FixedPoint;
 import de.tu_berlin.cit.vs.jms.common.LoggingUtils;
 import de.tu_berlin.cit.vs.jms.common.Stock;
 import org.apache.commons.csv.*;
@@ -8,29 +9,67 @@ import javax.jms.JMSException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
-import java.math.BigDecimal;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 /**
- * This class holds broker's stocks as well as generates stock prices every X seconds
+ * This class holds broker's stocks as well as generates stock prices every X seconds.
+ * Prices are not written into the Stock objects, every tick is published on the QuoteBoard.
+ * The replay only begins with {@link #start()}, once the brokers it notifies are constructed.
  */
 public class StockExchange {
     private static final Logger logger = LoggingUtils.getLogger(StockExchange.class);
     private Map<String, Stock> stockMap;
     private List<String> stockSymbols = new ArrayList<>();
-    private List<SimpleBroker> brokers = new ArrayList<>();
+    // read by the ticker on every tick
+    private final List<SimpleBroker> brokers = new CopyOnWriteArrayList<>();
+    private final QuoteBoard quoteBoard;
+    private final Thread priceThread; // null without a price replay
+    public static final long NO_TIME = Long.MIN_VALUE;
+
     public StockExchange(Map<String, Stock> stockMap, String filePath) {
         this(stockMap, filePath, Optional.of(5000));
     }
 
     public StockExchange(Map<String, Stock> stockMap, String filePath, Optional<Integer> sleepMillis) {
+        this(stockMap, filePath, ReplayClock.interval(sleepMillis.orElse(30000)));
+    }
+
+    public StockExchange(Map<String, Stock> stockMap, String filePath, ReplayClock clock) {
+        this(stockMap, filePath, clock, null);
+    }
+
+    /**
+     * @param intraday expands every day of the history into synthetic ticks, null replays the daily rows as they are
+     */
+    public StockExchange(Map<String, Stock> stockMap, String filePath, ReplayClock clock, IntradayTickGenerator intraday) {
         this.stockMap = stockMap;
-        Thread priceThread = new Thread(() -> priceTickerGenerator(filePath, sleepMillis));
+        this.quoteBoard = new QuoteBoard(stockMap.values());
+        this.priceThread = new Thread(() -> priceTickerGenerator(filePath, clock, intraday));
         priceThread.setDaemon(true);
         priceThread.setName("StockPriceGenerator");
-        priceThread.start();
     }
+
+    // exchange without a price replay, prices are only set from outside (benchmarks, tools)
+    StockExchange(Map<String, Stock> stockMap) {
+        this.stockMap = stockMap;
+        this.quoteBoard = new QuoteBoard(stockMap.values());
+        this.priceThread = null;
+    }
+
+    /**
+     * Starts the price replay. Call it after the brokers are constructed, with a fast replay the
+     * first ticks would otherwise go out before a broker is registered, or to a broker still
+     * setting up its topics.
+     */
+    public void start() {
+        if (priceThread != null) {
+            priceThread.start();
+        }
+    }
+
     public Stock getStock(String symbol) {
         return stockMap.get(symbol);
     }
@@ -38,16 +77,42 @@ public class StockExchange {
     public Map<String, Stock> getStockMap() {
         return stockMap;
     }
-    private void processStockRecord(CSVRecord record) {
+
+    /**
+     * @return the prices of the latest tick, consistent across all symbols
+     */
+    public QuoteBoard.Quotes getQuotes() {
+        return quoteBoard.current();
+    }
+
+    QuoteBoard getQuoteBoard() {
+        return quoteBoard;
+    }
+
+    /**
+     * @return epoch millis of the replayed row or tick behind the current prices, NO_TIME before the first tick
+     */
+    public long getSimulatedTime() {
+        return quoteBoard.current().getSimulatedTime();
+    }
+
+    // makes the staged prices of a tick visible to the brokers, then lets them publish it
+    private void publishTick(long timestamp) {
+        quoteBoard.publish(timestamp);
+        notifyBrokers();
+    }
+    void processStockRecord(CSVRecord record, List<String> symbols) {
 
         // Process each stock price
-        for (String symbol : stockSymbols) {
+        for (String symbol : symbols) {
             try {
                 String priceStr = record.get(symbol);
                 if (priceStr != null && !priceStr.trim().isEmpty()) {
-                    BigDecimal price = new BigDecimal(priceStr.trim());
-                    stockMap.get(symbol).setPrice(price);
-                    logger.log(Level.FINEST, symbol + ": " + price);
+                    long price = FixedPoint.parse(priceStr);
+                    quoteBoard.stage(symbol, price);
+                    if (logger.isLoggable(Level.FINEST)) {
+                        logger.log(Level.FINEST, symbol + ": " + FixedPoint.toBigDecimal(price));
+                    }
                 }
             } catch (Exception e) {
                 System.err.printf("Error parsing %s price '%s': %s%n",
@@ -57,6 +122,111 @@ public class StockExchange {
     }
 
     public void priceTickerGenerator(String filePath, Optional<Integer> sleepMillis) {
+        priceTickerGenerator(filePath, ReplayClock.interval(sleepMillis.orElse(30000)));
+    }
+
+    public void priceTickerGenerator(String filePath, ReplayClock clock) {
+        priceTickerGenerator(filePath, clock, null);
+    }
+
+    public void priceTickerGenerator(String filePath, ReplayClock clock, IntradayTickGenerator intraday) {
+        logger.log(Level.INFO, "Replaying " + filePath + " at " + clock + (intraday != null ? ", " + intraday : ""));
+        try {
+            boolean ticked;
+            do {
+                clock.start();
+                if (intraday != null) {
+                    ticked = replayIntraday(filePath, clock, intraday);
+                } else if (PriceFeedFile.isPriceFile(filePath)) {
+                    ticked = replayPriceFile(filePath, clock);
+                } else {
+                    ticked = replayCsv(filePath, clock);
+                }
+            } while (clock.isLoop() && ticked);
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Sleep interrupted: " + e.getMessage());
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Price replay of " + filePath + " stopped", e);
+        }
+    }
+
+    // pre-converted feed, see PriceFeedConverter; no parsing and no allocation per row
+    boolean replayPriceFile(String filePath, ReplayClock clock) throws IOException, InterruptedException {
+        try (PriceFeedFile feed = new PriceFeedFile(Path.of(filePath))) {
+            int[] columns = columnsOf(feed);
+            int first = firstRow(feed, clock);
+            int end = endRow(feed, clock);
+            for (int row = first; row < end; row++) {
+                long timestamp = feed.getTimestamp(row) * 1000;
+                clock.awaitTick(timestamp);
+                processPriceRow(feed, columns, quoteBoard, row);
+                publishTick(timestamp);
+            }
+            return first < end;
+        }
+    }
+
+    // random access to the closes is needed, so a CSV is loaded into memory first
+    private boolean replayIntraday(String filePath, ReplayClock clock, IntradayTickGenerator intraday)
+            throws IOException, InterruptedException {
+        DailyPrices days = PriceFeedFile.isPriceFile(filePath)
+                ? new PriceFeedFile(Path.of(filePath))
+                : PriceFeedConverter.load(Path.of(filePath));
+        try {
+            int[] columns = columnsOf(days);
+            intraday.attach(days);
+            int first = firstRow(days, clock);
+            int end = endRow(days, clock);
+            for (int row = first; row < end; row++) {
+                int ticks = intraday.beginDay(row);
+                for (int tick = 0; tick < ticks; tick++) {
+                    long timestamp = intraday.nextTickTime();
+                    clock.awaitTick(timestamp);
+                    intraday.nextTick(columns, quoteBoard);
+                    publishTick(timestamp);
+                }
+            }
+            return first < end;
+        } finally {
+            if (days instanceof PriceFeedFile) {
+                ((PriceFeedFile) days).close();
+            }
+        }
+    }
+
+    // quote board index per column of the feed, -1 for symbols this exchange does not list
+    private int[] columnsOf(DailyPrices days) {
+        int[] columns = new int[days.getSymbolCount()];
+        stockSymbols = new ArrayList<>();
+        for (int column = 0; column < columns.length; column++) {
+            stockSymbols.add(days.getSymbol(column));
+            columns[column] = quoteBoard.indexOf(days.getSymbol(column));
+        }
+        return columns;
+    }
+
+    private static int firstRow(DailyPrices days, ReplayClock clock) {
+        return days.findRow(Math.floorDiv(clock.getFromMillis(), 1000));
+    }
+
+    private static int endRow(DailyPrices days, ReplayClock clock) {
+        return clock.getUntilMillis() == Long.MAX_VALUE ? days.getRowCount() : days.findRow(clock.getUntilMillis() / 1000);
+    }
+
+    static void processPriceRow(DailyPrices feed, int[] columns, QuoteBoard quoteBoard, int row) {
+        for (int column = 0; column < columns.length; column++) {
+            long price = feed.getPrice(column, row);
+            if (columns[column] >= 0 && price != Stock.NO_PRICE) {
+                quoteBoard.stage(columns[column], price);
+            }
+        }
+    }
+
+    boolean replayCsv(String filePath, ReplayClock clock) throws IOException, InterruptedException {
+        boolean ticked = false;
         try (Reader reader = new FileReader(filePath)) {
             CSVFormat format = CSVFormat.DEFAULT.builder()
                     .setHeader()
@@ -71,30 +241,31 @@ public class StockExchange {
             stockSymbols.remove("Date");
 
             for (CSVRecord record : parser) {
-                processStockRecord(record);
-                notifyBrokers();
-                Thread.sleep(sleepMillis.orElse(30000)); // default: update price every 30 seconds
+                long timestamp = PriceFeedConverter.parseTimestamp(record.get("Date")) * 1000;
+                if (timestamp >= clock.getUntilMillis()) {
+                    break;
+                }
+                if (!clock.includes(timestamp)) {
+                    continue;
+                }
+                clock.awaitTick(timestamp);
+                processStockRecord(record, stockSymbols);
+                publishTick(timestamp);
+                ticked = true;
             }
-
-
-        } catch (IOException e) {
-            System.err.println("Error reading file: " + e.getMessage());
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            System.err.println("Sleep interrupted: " + e.getMessage());
         }
+        return ticked;
     }
 
+    // a broker that fails to publish a tick must not stop the price feed of the others, or its own next tick
     private void notifyBrokers() {
-
-        this.brokers.forEach(SimpleBroker -> {
+        for (SimpleBroker broker : brokers) {
             try {
-                SimpleBroker.notifyPriceUpdate();
-            } catch (JMSException e) {
-                throw new RuntimeException(e);
+                broker.notifyPriceUpdate();
+            } catch (JMSException | RuntimeException e) {
+                logger.log(Level.SEVERE, "Could not publish price tick", e);
             }
-        });
-
+        }
     }
     public void registerBroker(SimpleBroker broker) {
         brokers.add(broker);
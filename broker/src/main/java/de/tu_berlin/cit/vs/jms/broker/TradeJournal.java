@@ -0,0 +1,442 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.LoggingUtils;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of every accepted registration, deregistration, buy, sell and limit order fill,
+ * so account state survives a broker restart.
+ *
+ * The log is a directory of fixed-size, memory-mapped segments named after the journal position
+ * they start at. Each record is (int length, int CRC32C, payload) with the payload
+ * (byte type, short+UTF-8 client, short+UTF-8 symbol, int quantity, long amount), little endian;
+ * a fill names the buyer as client and appends the seller as another short+UTF-8 string.
+ * The length is written last, so a record cut short by a crash reads as end of log, and the
+ * checksum catches pages the OS only partly wrote back.
+ *
+ * Appending is a copy into the mapping under a short lock. Forcing the mapping to disk is done by
+ * a flusher thread according to the {@link JournalDurability}; only in SYNC mode does a trading
+ * thread wait for it, after releasing its symbol lock, and every force covers all records
+ * appended up to then.
+ *
+ * With a {@link StateSnapshot} in the directory, start-up loads it and replays only the records
+ * after the position it covers; older segments can then be deleted.
+ */
+class TradeJournal implements AutoCloseable {
+    private static final Logger logger = LoggingUtils.getLogger(TradeJournal.class);
+
+    static final int DEFAULT_SEGMENT_BYTES = 64 << 20;
+    static final String EXTENSION = ".journal";
+    private static final int HEADER_BYTES = 8;
+
+    static final byte REGISTER = 1;
+    static final byte DEREGISTER = 2;
+    static final byte BUY = 3;
+    static final byte SELL = 4;
+    static final byte FILL = 5;
+
+    interface Handler {
+        void onRegister(String clientName, long funds);
+
+        void onDeregister(String clientName);
+
+        void onBuy(String clientName, String symbol, int quantity, long price);
+
+        void onSell(String clientName, String symbol, int quantity, long price);
+
+        /**
+         * A limit order fill, settled as a buy by the buyer and a sell by the seller. Either name is
+         * empty when that side's account was no longer registered.
+         */
+        void onFill(String buyer, String seller, String symbol, int quantity, long price);
+
+        /** From a snapshot: the absolute available count of a stock. */
+        void onAvailable(String symbol, int available);
+
+        /** From a snapshot: a position of an account restored by {@link #onRegister}, funds untouched. */
+        void onPosition(String clientName, String symbol, int quantity, long price);
+    }
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final JournalDurability durability;
+    private final long flushNanos;
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final CRC32C crc = new CRC32C();
+    private FileChannel channel;
+    private volatile MappedByteBuffer segment;
+    private long segmentStart;
+    private int offset;
+    // full segments not forced yet, the flusher drains them before forcing the current one
+    private final Queue<MappedByteBuffer> retired = new ConcurrentLinkedQueue<>();
+
+    private volatile long written;
+    private volatile long durable;
+    private final Object durableMonitor = new Object();
+    private final Thread flusher;
+    private volatile boolean running = true;
+    private long recoveredEvents;
+    private boolean opened;
+
+    private TradeJournal(Path directory, int segmentBytes, JournalDurability durability, long flushMillis) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.durability = durability;
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushMillis));
+        this.flusher = new Thread(this::runFlusher, "JournalFlusher");
+        this.flusher.setDaemon(true);
+    }
+
+    /**
+     * Loads the newest intact snapshot, replays every record after it into the handler and opens the
+     * journal for appending right after the last intact record.
+     */
+    static TradeJournal open(Path directory, int segmentBytes, JournalDurability durability, long flushMillis,
+                             Handler handler) throws IOException {
+        Files.createDirectories(directory);
+        TradeJournal journal = new TradeJournal(directory, segmentBytes, durability, flushMillis);
+        long from = StateSnapshot.loadLatest(directory, handler);
+        List<Path> segments = segments(directory);
+        if (segments.isEmpty()) {
+            journal.map(from);
+        } else {
+            for (int i = 0; i < segments.size() - 1; i++) {
+                if (startOf(segments.get(i + 1)) <= from) {
+                    continue;
+                }
+                try (FileChannel readChannel = FileChannel.open(segments.get(i), StandardOpenOption.READ)) {
+                    MappedByteBuffer buffer = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+                    journal.scan(buffer, segments.get(i), offsetIn(segments.get(i), from), Integer.MAX_VALUE, false,
+                            handler);
+                }
+            }
+            Path last = segments.get(segments.size() - 1);
+            journal.map(startOf(last));
+            journal.offset = journal.scan(journal.segment, last, offsetIn(last, from), Integer.MAX_VALUE, true,
+                    handler);
+        }
+        journal.written = journal.segmentStart + journal.offset;
+        journal.durable = journal.written;
+        journal.opened = true;
+        if (durability != JournalDurability.NONE) {
+            journal.flusher.start();
+        }
+        logger.log(Level.INFO, "Journal " + directory + ": replayed " + journal.recoveredEvents + " events after position "
+                + from + ", " + durability + " durability");
+        return journal;
+    }
+
+    long getRecoveredEvents() {
+        return recoveredEvents;
+    }
+
+    Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the position after the last appended record
+     */
+    long getWritten() {
+        return written;
+    }
+
+    /**
+     * Hands the records from one position up to another to the handler while appending goes on.
+     * Both must be record boundaries at or below {@link #getWritten()}.
+     *
+     * @return the position reached, the end position unless a segment went missing
+     */
+    long read(long from, long to, Handler handler) throws IOException {
+        long position = from;
+        List<Path> segments = segments(directory);
+        for (int i = 0; i < segments.size() && position < to; i++) {
+            Path path = segments.get(i);
+            long start = startOf(path);
+            long end = i + 1 < segments.size() ? startOf(segments.get(i + 1)) : Long.MAX_VALUE;
+            if (end <= position) {
+                continue;
+            }
+            try (FileChannel readChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+                int limit = (int) Math.min(to - start, buffer.capacity());
+                position = start + scan(buffer, path, offsetIn(path, position), limit, false, handler);
+            }
+            if (position < to && end != Long.MAX_VALUE) {
+                // the rest of this segment is padding, the next record starts the next one
+                position = end;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Returns once every record up to the position is forced to disk, whatever the durability.
+     */
+    void force(long position) {
+        if (durable < position) {
+            flush();
+        }
+    }
+
+    /**
+     * Deletes the segments that only hold records before the position, never the one being appended to.
+     */
+    int deleteSegmentsBefore(long position) throws IOException {
+        List<Path> segments = segments(directory);
+        int deleted = 0;
+        for (int i = 0; i < segments.size() - 1 && startOf(segments.get(i + 1)) <= position; i++) {
+            Files.deleteIfExists(segments.get(i));
+            deleted++;
+        }
+        return deleted;
+    }
+
+    long register(String clientName, long funds) {
+        return append(REGISTER, clientName, "", 0, funds, null);
+    }
+
+    long deregister(String clientName) {
+        return append(DEREGISTER, clientName, "", 0, 0L, null);
+    }
+
+    long buy(String clientName, String symbol, int quantity, long price) {
+        return append(BUY, clientName, symbol, quantity, price, null);
+    }
+
+    long sell(String clientName, String symbol, int quantity, long price) {
+        return append(SELL, clientName, symbol, quantity, price, null);
+    }
+
+    long fill(String buyer, String seller, String symbol, int quantity, long price) {
+        return append(FILL, buyer, symbol, quantity, price, seller);
+    }
+
+    /**
+     * Returns once the record ending at the given position is as durable as configured: right away
+     * except in SYNC mode, where it waits for the flusher. Call it without holding trading locks.
+     */
+    void commit(long position) {
+        if (durability != JournalDurability.SYNC || durable >= position) {
+            return;
+        }
+        LockSupport.unpark(flusher);
+        synchronized (durableMonitor) {
+            while (durable < position) {
+                try {
+                    durableMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the journal position after the record, for {@link #commit(long)}
+     */
+    private long append(byte type, String clientName, String symbol, int quantity, long amount, String counterparty) {
+        byte[] client = clientName.getBytes(StandardCharsets.UTF_8);
+        byte[] stock = symbol.getBytes(StandardCharsets.UTF_8);
+        byte[] other = counterparty != null ? counterparty.getBytes(StandardCharsets.UTF_8) : null;
+        int length = 1 + 2 + client.length + 2 + stock.length + 4 + 8 + (other != null ? 2 + other.length : 0);
+        appendLock.lock();
+        try {
+            if (offset + HEADER_BYTES + length > segment.capacity()) {
+                roll();
+            }
+            MappedByteBuffer buffer = segment;
+            int payload = offset + HEADER_BYTES;
+            buffer.put(payload, type);
+            buffer.putShort(payload + 1, (short) client.length);
+            buffer.put(payload + 3, client);
+            int next = payload + 3 + client.length;
+            buffer.putShort(next, (short) stock.length);
+            buffer.put(next + 2, stock);
+            next += 2 + stock.length;
+            buffer.putInt(next, quantity);
+            buffer.putLong(next + 4, amount);
+            if (other != null) {
+                buffer.putShort(next + 12, (short) other.length);
+                buffer.put(next + 14, other);
+            }
+            crc.reset();
+            crc.update(buffer.slice(payload, length));
+            buffer.putInt(offset + 4, (int) crc.getValue());
+            buffer.putInt(offset, length);
+            offset += HEADER_BYTES + length;
+            long position = segmentStart + offset;
+            written = position;
+            return position;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not extend journal " + directory, e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void roll() throws IOException {
+        // zeros after the last record tell the reader to move on to the next segment
+        retired.add(segment);
+        channel.close();
+        map(segmentStart + segment.capacity());
+    }
+
+    private void map(long start) throws IOException {
+        Path path = directory.resolve(String.format("%020d%s", start, EXTENSION));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = Math.max(channel.size(), segmentBytes);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        segment = buffer;
+        segmentStart = start;
+        offset = 0;
+    }
+
+    /**
+     * Hands the intact records of one segment from an offset up to a limit to the handler and
+     * returns the offset after the last of them. In the last segment at start-up a torn or corrupt
+     * record ends the log and whatever follows it is wiped; anywhere else it would silently drop
+     * later history, so it is an error.
+     */
+    private int scan(MappedByteBuffer buffer, Path path, int from, int limit, boolean last, Handler handler)
+            throws IOException {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        CRC32C check = new CRC32C();
+        int end = Math.min(limit, buffer.capacity());
+        int position = from;
+        while (position + HEADER_BYTES <= end) {
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            int payload = position + HEADER_BYTES;
+            boolean intact = length > 0 && payload + length <= buffer.capacity();
+            if (intact) {
+                check.reset();
+                check.update(buffer.slice(payload, length));
+                intact = (int) check.getValue() == buffer.getInt(position + 4);
+            }
+            if (!intact && !last) {
+                throw new IOException("Journal segment " + path + " is corrupt at offset " + position);
+            }
+            if (!intact) {
+                logger.log(Level.WARNING, "Journal " + path + " ends in a torn record at offset " + position
+                        + ", dropping it");
+                for (int i = position; i < buffer.capacity(); i++) {
+                    buffer.put(i, (byte) 0);
+                }
+                break;
+            }
+            dispatch(buffer, payload, handler);
+            if (!opened) {
+                recoveredEvents++;
+            }
+            position = payload + length;
+        }
+        return position;
+    }
+
+    private static void dispatch(MappedByteBuffer buffer, int payload, Handler handler) {
+        byte type = buffer.get(payload);
+        String clientName = readString(buffer, payload + 1);
+        int next = payload + 3 + buffer.getShort(payload + 1);
+        String symbol = readString(buffer, next);
+        next += 2 + buffer.getShort(next);
+        int quantity = buffer.getInt(next);
+        long amount = buffer.getLong(next + 4);
+        switch (type) {
+            case REGISTER -> handler.onRegister(clientName, amount);
+            case DEREGISTER -> handler.onDeregister(clientName);
+            case BUY -> handler.onBuy(clientName, symbol, quantity, amount);
+            case SELL -> handler.onSell(clientName, symbol, quantity, amount);
+            case FILL -> handler.onFill(clientName, readString(buffer, next + 12), symbol, quantity, amount);
+            default -> logger.log(Level.WARNING, "Skipping journal record of unknown type " + type);
+        }
+    }
+
+    private static String readString(MappedByteBuffer buffer, int position) {
+        byte[] bytes = new byte[buffer.getShort(position)];
+        buffer.get(position + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(EXTENSION)).sorted().toList();
+        }
+    }
+
+    private static int offsetIn(Path segment, long position) {
+        return (int) Math.max(0, position - startOf(segment));
+    }
+
+    private static long startOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - EXTENSION.length()));
+    }
+
+    private void runFlusher() {
+        while (running) {
+            if (written > durable) {
+                flush();
+            }
+            if (durability == JournalDurability.SYNC) {
+                // woken by commit(), the timeout only bounds a missed wake-up
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            } else {
+                LockSupport.parkNanos(flushNanos);
+            }
+        }
+    }
+
+    private synchronized void flush() {
+        // everything up to target is either in a retired segment or in the one mapped after them
+        long target = written;
+        MappedByteBuffer current = segment;
+        MappedByteBuffer full;
+        while ((full = retired.poll()) != null) {
+            full.force();
+        }
+        current.force();
+        durable = Math.max(durable, target);
+        if (durability == JournalDurability.SYNC) {
+            synchronized (durableMonitor) {
+                durableMonitor.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        LockSupport.unpark(flusher);
+        appendLock.lock();
+        try {
+            flush();
+            channel.close();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.BatchExecutionReportMessage;
+import de.tu_berlin.cit.vs.jms.common.BatchOrderMessage;
+import de.tu_berlin.cit.vs.jms.common.FixedPoint;
+import de.tu_berlin.cit.vs.jms.common.RejectReason;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchOrderTest {
+    // expensive enough that buying every share overflows the cost
+    private static final long PRICE = FixedPoint.fromUnits(10_000);
+    private static final long FUNDS = FixedPoint.fromUnits(100_000);
+
+    private SimpleBroker broker;
+    private Client client;
+
+    @BeforeEach
+    void startBroker() throws Exception {
+        broker = TestBrokers.start(TestBrokers.symbols(3), Integer.MAX_VALUE, PRICE, new BrokerOptions());
+        client = TestBrokers.register(broker, "batcher", FUNDS);
+    }
+
+    @AfterEach
+    void stopBroker() throws Exception {
+        broker.stop();
+    }
+
+    @Test
+    void bestEffortRefusesAnOverflowingLegAndExecutesTheOthers() throws Exception {
+        BatchExecutionReportMessage report = broker.executeBatch(client,
+                new BatchOrderMessage(BatchOrderMessage.Mode.BEST_EFFORT)
+                        .buy("SYM0", 1)
+                        .buy("SYM1", Integer.MAX_VALUE)
+                        .sell("SYM0", 2)
+                        .buy("NOPE", 1)
+                        .buy("SYM2", 1));
+
+        assertEquals(Arrays.asList(null, RejectReason.INSUFFICIENT_FUNDS, RejectReason.INSUFFICIENT_HOLDINGS,
+                RejectReason.UNKNOWN_STOCK, null), reasons(report));
+        assertEquals(PRICE, report.getLegs().get(0).getPrice());
+        assertEquals(FUNDS - 2 * PRICE, report.getFunds());
+        assertEquals(FUNDS - 2 * PRICE, client.getFunds());
+        assertEquals(1, client.getQuantity("SYM0"));
+        assertEquals(1, client.getQuantity("SYM2"));
+    }
+
+    @Test
+    void allOrNothingExecutesNoLegWhenOneWouldBeRefused() throws Exception {
+        BatchExecutionReportMessage report = broker.executeBatch(client,
+                new BatchOrderMessage(BatchOrderMessage.Mode.ALL_OR_NOTHING)
+                        .buy("SYM0", 1)
+                        .buy("SYM1", Integer.MAX_VALUE)
+                        .buy("SYM2", 1));
+
+        assertEquals(List.of(RejectReason.BATCH_ABORTED, RejectReason.INSUFFICIENT_FUNDS, RejectReason.BATCH_ABORTED),
+                reasons(report));
+        assertEquals(FUNDS, client.getFunds());
+        assertEquals(0, client.getQuantity("SYM0"));
+        assertEquals(Integer.MAX_VALUE, broker.getStocks().get("SYM0").getAvailableCount());
+
+        report = broker.executeBatch(client, new BatchOrderMessage(BatchOrderMessage.Mode.ALL_OR_NOTHING)
+                .buy("SYM0", 2)
+                .sell("SYM0", 2)
+                .buy("SYM1", 1));
+        assertEquals(3, report.getFilledCount());
+        assertEquals(FUNDS - PRICE, client.getFunds());
+    }
+
+    private static List<RejectReason> reasons(BatchExecutionReportMessage report) {
+        return report.getLegs().stream().map(BatchExecutionReportMessage.LegReport::getReason).toList();
+    }
+}
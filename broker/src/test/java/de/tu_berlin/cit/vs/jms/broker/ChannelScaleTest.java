@@ -0,0 +1,98 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.*;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import javax.jms.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Registers many clients in each channel mode, then sends profile requests from a sample of them
+ * and logs the broker's thread count, heap and the round-trip latency. SHARED mode has to answer
+ * every client with a fixed number of threads. The default run registers 1000 clients, the full
+ * scale run takes -Dtest.scale.clients=10000 and most of a minute.
+ */
+class ChannelScaleTest {
+    private static final Logger logger = LoggingUtils.getLogger(ChannelScaleTest.class);
+    private static final int CLIENTS = Integer.getInteger("test.scale.clients", 1000);
+    private static final int SAMPLED_CLIENTS = 100;
+    private static final int ROUND_TRIPS = 2000;
+    // SHARED adds its consumer and producer pool plus ActiveMQ's own threads, never one per client
+    private static final int SHARED_MAX_NEW_THREADS = 100;
+
+    private SimpleBroker broker;
+    private Connection connection;
+
+    @AfterEach
+    void stop() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        broker.stop();
+    }
+
+    @ParameterizedTest
+    @EnumSource(ChannelMode.class)
+    void registersAndServesManyClients(ChannelMode mode) throws Exception {
+        int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+        BrokerOptions options = new BrokerOptions();
+        options.setChannelMode(mode);
+        broker = TestBrokers.start(TestBrokers.symbols(10), 1000, FixedPoint.fromUnits(10), options);
+
+        long started = System.nanoTime();
+        List<Client> clients = new ArrayList<>(CLIENTS);
+        for (int i = 0; i < CLIENTS; i++) {
+            clients.add(TestBrokers.register(broker, "client" + i, FixedPoint.fromUnits(1000)));
+        }
+        long registrationMillis = (System.nanoTime() - started) / 1_000_000;
+
+        connection = new ActiveMQConnectionFactory(options.getBrokerUrl()).createConnection();
+        connection.start();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(null);
+        Client[] sampled = new Client[SAMPLED_CLIENTS];
+        MessageConsumer[] replies = new MessageConsumer[SAMPLED_CLIENTS];
+        for (int i = 0; i < SAMPLED_CLIENTS; i++) {
+            sampled[i] = clients.get(i * (CLIENTS / SAMPLED_CLIENTS));
+            sampled[i].setWireFormat(WireFormat.BINARY);
+            replies[i] = session.createConsumer(sampled[i].getOutgoingQueue());
+        }
+
+        long[] latencies = new long[ROUND_TRIPS];
+        for (int i = 0; i < ROUND_TRIPS; i++) {
+            Client client = sampled[i % SAMPLED_CLIENTS];
+            Message request = BinaryCodec.toBytesMessage(session, new RequestProfileMessage());
+            request.setStringProperty(MessageHeaders.CLIENT_ID, client.getClientName());
+            request.setStringProperty(MessageHeaders.GROUP_ID, client.getClientName());
+            long sent = System.nanoTime();
+            producer.send(client.getIncomingQueue(), request);
+            Message reply = replies[i % SAMPLED_CLIENTS].receive(10_000);
+            latencies[i] = System.nanoTime() - sent;
+            assertNotNull(reply, "no reply to " + client.getClientName());
+            ProfileMessage profile = (ProfileMessage) BinaryCodec.fromBytesMessage((BytesMessage) reply, session);
+            assertEquals(client.getClientName(), profile.getClientName());
+        }
+
+        int newThreads = ManagementFactory.getThreadMXBean().getThreadCount() - threadsBefore;
+        System.gc();
+        long heapMiB = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() >> 20;
+        Arrays.sort(latencies);
+        logger.log(Level.INFO, String.format("%s: %d clients registered in %d ms, %d new threads, %d MiB heap after GC, "
+                        + "round trip p50 %d us, p99 %d us", mode, CLIENTS, registrationMillis, newThreads, heapMiB,
+                latencies[ROUND_TRIPS / 2] / 1000, latencies[ROUND_TRIPS * 99 / 100] / 1000));
+
+        if (mode == ChannelMode.SHARED) {
+            assertTrue(newThreads < SHARED_MAX_NEW_THREADS, newThreads + " new threads for " + CLIENTS + " clients");
+        }
+    }
+}
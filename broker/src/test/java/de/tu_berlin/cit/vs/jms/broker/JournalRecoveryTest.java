@@ -0,0 +1,142 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.*;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.jms.*;
+import java.nio.file.Path;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournalRecoveryTest {
+    private static final long PRICE = FixedPoint.fromUnits(10);
+    private static final long FUNDS = FixedPoint.fromUnits(1000);
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Fills of limit orders are replayed as the buy and sell they settle; an order still resting at
+     * shutdown is gone after the restart and its escrow is back in the account.
+     */
+    @ParameterizedTest
+    @ValueSource(longs = {0, 3600})
+    void limitOrderFillsSurviveARestart(long snapshotIntervalSeconds) throws Exception {
+        SimpleBroker broker = TestBrokers.start(new String[]{"MSFT"}, 150, PRICE, options(snapshotIntervalSeconds));
+        Client seller = TestBrokers.register(broker, "seller", FUNDS);
+        Client buyer = TestBrokers.register(broker, "buyer", FUNDS);
+        broker.buyStock(seller, "MSFT", 10);
+        // rests, then 4 fill at the seller's 12 although the buyer would pay 15
+        broker.placeLimitOrder(seller, "MSFT", Side.SELL, 6, FixedPoint.fromUnits(12));
+        broker.placeLimitOrder(buyer, "MSFT", Side.BUY, 4, FixedPoint.fromUnits(15));
+        // still resting at shutdown
+        broker.placeLimitOrder(buyer, "MSFT", Side.BUY, 5, FixedPoint.fromUnits(11));
+        assertEquals(FUNDS - FixedPoint.fromUnits(48 + 55), buyer.getFunds());
+        assertEquals(4, seller.getQuantity("MSFT"));
+        broker.stop();
+
+        broker = TestBrokers.start(new String[]{"MSFT"}, 150, PRICE, options(snapshotIntervalSeconds));
+        try {
+            Client recoveredSeller = TestBrokers.register(broker, "seller", 0);
+            Client recoveredBuyer = TestBrokers.register(broker, "buyer", 0);
+            assertEquals(FUNDS - 10 * PRICE + FixedPoint.fromUnits(48), recoveredSeller.getFunds());
+            assertEquals(6, recoveredSeller.getQuantity("MSFT"));
+            assertEquals(FUNDS - FixedPoint.fromUnits(48), recoveredBuyer.getFunds());
+            assertEquals(4, recoveredBuyer.getQuantity("MSFT"));
+            assertEquals(140, broker.getStocks().get("MSFT").getAvailableCount());
+        } finally {
+            broker.stop();
+        }
+    }
+
+    /**
+     * A fill on one symbol credits a seller while the seller buys another symbol with the proceeds.
+     * The buy takes the other symbol's lock and can be journaled before the fill; replaying it must
+     * not refuse it for funds that only the fill brings. With a snapshot interval the snapshot
+     * written at shutdown has to keep it too.
+     */
+    @ParameterizedTest
+    @ValueSource(longs = {0, 3600})
+    void buyJournaledBeforeTheFillThatPaidForItReplays(long snapshotIntervalSeconds) throws Exception {
+        try (TradeJournal journal = TradeJournal.open(directory, 1 << 20, JournalDurability.SYNC, 10,
+                new JournalRecovery(null, new HashMap<>()))) {
+            journal.register("seller", FixedPoint.fromUnits(100));
+            journal.register("buyer", FUNDS);
+            journal.buy("seller", "AAPL", 10, PRICE);
+            // funds left: 0, the fill below brings 120
+            journal.buy("seller", "MSFT", 5, PRICE);
+            journal.fill("buyer", "seller", "AAPL", 10, FixedPoint.fromUnits(12));
+        }
+
+        for (int start = 0; start < 2; start++) {
+            SimpleBroker broker = TestBrokers.start(new String[]{"AAPL", "MSFT"}, 150, PRICE,
+                    options(snapshotIntervalSeconds));
+            try {
+                Client seller = TestBrokers.register(broker, "seller", 0);
+                Client buyer = TestBrokers.register(broker, "buyer", 0);
+                assertEquals(FixedPoint.fromUnits(70), seller.getFunds());
+                assertEquals(5, seller.getQuantity("MSFT"));
+                assertEquals(0, seller.getQuantity("AAPL"));
+                assertEquals(FUNDS - FixedPoint.fromUnits(120), buyer.getFunds());
+                assertEquals(10, buyer.getQuantity("AAPL"));
+                assertEquals(145, broker.getStocks().get("MSFT").getAvailableCount());
+                assertEquals(140, broker.getStocks().get("AAPL").getAvailableCount());
+            } finally {
+                broker.stop();
+            }
+        }
+    }
+
+    /**
+     * In SEQUENCED mode the trading thread only stages the journal position, the reply publisher
+     * waits for the flush: a reply still means the trade is on disk.
+     */
+    @Test
+    void sequencedTradesAreDurableWhenReplied() throws Exception {
+        BrokerOptions options = options(0);
+        options.setEngineMode(EngineMode.SEQUENCED);
+        SimpleBroker broker = TestBrokers.start(new String[]{"MSFT"}, 150, PRICE, options);
+        Client client = TestBrokers.register(broker, "client", FUNDS);
+        client.setWireFormat(WireFormat.BINARY);
+        Connection connection = new ActiveMQConnectionFactory(options.getBrokerUrl()).createConnection();
+        try {
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer replies = session.createConsumer(client.getOutgoingQueue());
+            Message request = BinaryCodec.toBytesMessage(session, new BuyMessage("MSFT", 7));
+            request.setStringProperty(MessageHeaders.CLIENT_ID, "client");
+            request.setStringProperty(MessageHeaders.GROUP_ID, "client");
+            session.createProducer(client.getIncomingQueue()).send(request);
+            Message reply = replies.receive(10_000);
+            assertNotNull(reply);
+            ExecutionReportMessage report = (ExecutionReportMessage) BinaryCodec.fromBytesMessage((BytesMessage) reply, session);
+            assertTrue(report.isFilled());
+        } finally {
+            connection.close();
+            broker.stop();
+        }
+
+        broker = TestBrokers.start(new String[]{"MSFT"}, 150, PRICE, options);
+        try {
+            Client recovered = TestBrokers.register(broker, "client", 0);
+            assertEquals(7, recovered.getQuantity("MSFT"));
+            assertEquals(FUNDS - 7 * PRICE, recovered.getFunds());
+        } finally {
+            broker.stop();
+        }
+    }
+
+    private BrokerOptions options(long snapshotIntervalSeconds) {
+        BrokerOptions options = new BrokerOptions();
+        options.setJournalDir(directory.toString());
+        options.setJournalSegmentBytes(1 << 20);
+        options.setJournalDurability(JournalDurability.SYNC);
+        options.setSnapshotIntervalSeconds(snapshotIntervalSeconds);
+        return options;
+    }
+}
@@ -0,0 +1,63 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.FixedPoint;
+import de.tu_berlin.cit.vs.jms.common.OrderReportMessage;
+import de.tu_berlin.cit.vs.jms.common.RejectReason;
+import de.tu_berlin.cit.vs.jms.common.Side;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LimitOrderTest {
+    private static final long PRICE = FixedPoint.fromUnits(10);
+    private static final long FUNDS = FixedPoint.fromUnits(1000);
+
+    private SimpleBroker broker;
+    private Client client;
+
+    @BeforeEach
+    void startBroker() throws Exception {
+        broker = TestBrokers.start(new String[]{"MSFT"}, 150, PRICE, new BrokerOptions());
+        client = TestBrokers.register(broker, "limit", FUNDS);
+    }
+
+    @AfterEach
+    void stopBroker() throws Exception {
+        broker.stop();
+    }
+
+    @Test
+    void refusedOrdersCarryAReasonAndEscrowNothing() {
+        assertReason(RejectReason.UNKNOWN_STOCK, "NOPE", Side.BUY, 1, PRICE);
+        assertReason(RejectReason.INVALID_QUANTITY, "MSFT", Side.BUY, 0, PRICE);
+        assertReason(RejectReason.INVALID_PRICE, "MSFT", Side.BUY, 1, 0);
+        assertReason(RejectReason.INSUFFICIENT_FUNDS, "MSFT", Side.BUY, 101, PRICE);
+        assertReason(RejectReason.INSUFFICIENT_FUNDS, "MSFT", Side.BUY, Integer.MAX_VALUE, Long.MAX_VALUE / 2);
+        assertReason(RejectReason.INSUFFICIENT_HOLDINGS, "MSFT", Side.SELL, 1, PRICE);
+        assertEquals(FUNDS, client.getFunds());
+    }
+
+    @Test
+    void cancelReleasesTheEscrowAndRejectsUnknownOrders() throws Exception {
+        long orderId = broker.placeLimitOrder(client, "MSFT", Side.BUY, 10, PRICE);
+        assertEquals(FUNDS - 10 * PRICE, client.getFunds());
+
+        OrderReportMessage unknown = broker.cancelOrder(client, "MSFT", orderId + 1);
+        assertEquals(OrderReportMessage.Status.REJECTED, unknown.getStatus());
+        assertEquals(RejectReason.UNKNOWN_ORDER, unknown.getReason());
+        assertEquals(RejectReason.UNKNOWN_STOCK, broker.cancelOrder(client, "NOPE", orderId).getReason());
+
+        OrderReportMessage cancelled = broker.cancelOrder(client, "MSFT", orderId);
+        assertEquals(OrderReportMessage.Status.CANCELLED, cancelled.getStatus());
+        assertNull(cancelled.getReason());
+        assertEquals(FUNDS, client.getFunds());
+    }
+
+    private void assertReason(RejectReason reason, String stockName, Side side, int quantity, long limitPrice) {
+        OrderRejectedException e = assertThrows(OrderRejectedException.class,
+                () -> broker.placeLimitOrder(client, stockName, side, quantity, limitPrice));
+        assertEquals(reason, e.getReason());
+    }
+}
@@ -0,0 +1,54 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.FixedPoint;
+import de.tu_berlin.cit.vs.jms.common.RejectReason;
+import de.tu_berlin.cit.vs.jms.common.Stock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.jms.JMSException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MarketOrderTest {
+    private static final long FUNDS = FixedPoint.fromUnits(1000);
+
+    private SimpleBroker broker;
+
+    @AfterEach
+    void stopBroker() throws Exception {
+        broker.stop();
+    }
+
+    @Test
+    void ordersAreRejectedUntilTheStockHasAPrice() throws Exception {
+        broker = TestBrokers.start(new String[]{"MSFT"}, 150, Stock.NO_PRICE, new BrokerOptions());
+        Client client = TestBrokers.register(broker, "early", FUNDS);
+        client.addStock("MSFT", 5, Stock.NO_PRICE);
+
+        OrderRejectedException buy = assertThrows(OrderRejectedException.class,
+                () -> broker.buyStock(client, "MSFT", 1));
+        assertEquals(RejectReason.NO_QUOTE, buy.getReason());
+        OrderRejectedException sell = assertThrows(OrderRejectedException.class,
+                () -> broker.sellStock(client, "MSFT", 5));
+        assertEquals(RejectReason.NO_QUOTE, sell.getReason());
+
+        assertEquals(5, client.getQuantity("MSFT"));
+        assertEquals(FUNDS, client.getFunds());
+        assertEquals(150, broker.getStocks().get("MSFT").getAvailableCount());
+    }
+
+    @Test
+    void failedSellLeavesTheAccountUnchanged() throws Exception {
+        broker = TestBrokers.start(new String[]{"MSFT"}, 150, FixedPoint.fromUnits(10), new BrokerOptions());
+        Client client = TestBrokers.register(broker, "seller", FUNDS);
+        client.addStock("MSFT", 5, FixedPoint.fromUnits(10));
+
+        assertThrows(JMSException.class, () -> client.settleSell("MSFT", 5, Stock.NO_PRICE));
+        assertThrows(ArithmeticException.class, () -> client.settleSell("MSFT", 5, Long.MAX_VALUE / 2));
+        assertThrows(JMSException.class, () -> client.settleSell("MSFT", 6, FixedPoint.fromUnits(10)));
+
+        assertEquals(5, client.getQuantity("MSFT"));
+        assertEquals(FUNDS, client.getFunds());
+    }
+}
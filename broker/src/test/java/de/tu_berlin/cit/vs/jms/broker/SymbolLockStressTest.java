@@ -0,0 +1,139 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.FixedPoint;
+import de.tu_berlin.cit.vs.jms.common.Stock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Many threads buying and selling few, scarce symbols at once under the per-symbol locks. The
+ * price never moves, so every share and every micro-unit of funds has to be accounted for when
+ * they are done, however the trades interleaved.
+ */
+class SymbolLockStressTest {
+    private static final int SYMBOLS = 4;
+    private static final int SHARES = 1000;
+    private static final long PRICE = FixedPoint.fromUnits(10);
+    private static final long FUNDS = FixedPoint.fromUnits(5000);
+    private static final int THREADS = 8;
+    private static final int CLIENTS_PER_THREAD = 4;
+    private static final int ORDERS_PER_THREAD = 20_000;
+
+    private SimpleBroker broker;
+    private String[] symbols;
+
+    @BeforeEach
+    void startBroker() throws Exception {
+        symbols = TestBrokers.symbols(SYMBOLS);
+        broker = TestBrokers.start(symbols, SHARES, PRICE, new BrokerOptions());
+    }
+
+    @AfterEach
+    void stopBroker() throws Exception {
+        broker.stop();
+    }
+
+    @Test
+    void sharesAndFundsAreConservedUnderContention() throws Exception {
+        List<List<Client>> clientsPerThread = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            List<Client> clients = new ArrayList<>();
+            for (int c = 0; c < CLIENTS_PER_THREAD; c++) {
+                clients.add(TestBrokers.register(broker, "trader" + t + "-" + c, FUNDS));
+            }
+            clientsPerThread.add(clients);
+        }
+
+        AtomicLong fills = new AtomicLong();
+        AtomicLong refusals = new AtomicLong();
+        AtomicBoolean trading = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS + 1);
+        try {
+            List<Future<?>> traders = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                // a client's requests are processed one at a time, so each client trades on one thread only
+                List<Client> clients = clientsPerThread.get(t);
+                long seed = t;
+                traders.add(pool.submit(() -> {
+                    Random random = new Random(seed);
+                    start.await();
+                    for (int i = 0; i < ORDERS_PER_THREAD; i++) {
+                        Client client = clients.get(random.nextInt(clients.size()));
+                        String symbol = symbols[random.nextInt(symbols.length)];
+                        int quantity = 1 + random.nextInt(20);
+                        try {
+                            if (random.nextBoolean()) {
+                                broker.buyStock(client, symbol, quantity);
+                            } else {
+                                broker.sellStock(client, symbol, quantity);
+                            }
+                            fills.incrementAndGet();
+                        } catch (OrderRejectedException e) {
+                            refusals.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            // lock-free readers must never see an oversold symbol
+            Future<?> reader = pool.submit(() -> {
+                start.await();
+                while (trading.get()) {
+                    for (Stock stock : broker.getStockExchangeMap()) {
+                        int available = stock.getAvailableCount();
+                        assertTrue(available >= 0 && available <= SHARES, stock.getName() + " available " + available);
+                    }
+                }
+                return null;
+            });
+
+            start.countDown();
+            for (Future<?> trader : traders) {
+                trader.get(2, TimeUnit.MINUTES);
+            }
+            trading.set(false);
+            reader.get(10, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertTrue(fills.get() > 0, "no order was filled");
+        assertTrue(refusals.get() > 0, "no order was refused, the symbols were not contended");
+        for (String symbol : symbols) {
+            int held = 0;
+            for (List<Client> clients : clientsPerThread) {
+                for (Client client : clients) {
+                    held += client.getQuantity(symbol);
+                }
+            }
+            int available = broker.getStocks().get(symbol).getAvailableCount();
+            assertTrue(available >= 0, symbol + " oversold: " + available);
+            assertEquals(SHARES, available + held, symbol + ": shares created or lost");
+        }
+        for (List<Client> clients : clientsPerThread) {
+            for (Client client : clients) {
+                long holdings = 0;
+                for (String symbol : symbols) {
+                    holdings += FixedPoint.multiply(PRICE, client.getQuantity(symbol));
+                }
+                assertTrue(client.getFunds() >= 0, client.getClientName() + " overdrawn");
+                assertEquals(FUNDS, client.getFunds() + holdings, client.getClientName() + ": funds created or lost");
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package de.tu_berlin.cit.vs.jms.broker;
+
+import de.tu_berlin.cit.vs.jms.common.Stock;
+
+import javax.jms.JMSException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SimpleBroker on its own in-VM, non-persistent ActiveMQ broker with an exchange that replays no
+ * prices, so tests need no external service and trade at a fixed price.
+ */
+final class TestBrokers {
+    private static final AtomicInteger nextBroker = new AtomicInteger();
+
+    private TestBrokers() {
+    }
+
+    static String[] symbols(int count) {
+        String[] symbols = new String[count];
+        for (int i = 0; i < count; i++) {
+            symbols[i] = "SYM" + i;
+        }
+        return symbols;
+    }
+
+    // a fresh in-VM broker per call, so tests do not see each other's queues
+    static String vmUrl() {
+        return "vm://test" + nextBroker.incrementAndGet() + "?broker.persistent=false&broker.useJmx=false";
+    }
+
+    static SimpleBroker start(String[] symbols, int sharesPerSymbol, long priceMicros, BrokerOptions options)
+            throws JMSException {
+        Map<String, Stock> stocks = new HashMap<>();
+        for (String symbol : symbols) {
+            stocks.put(symbol, new Stock(symbol, sharesPerSymbol, priceMicros));
+        }
+        options.setBrokerUrl(vmUrl());
+        return new SimpleBroker(new StockExchange(stocks), options);
+    }
+
+    static Client register(SimpleBroker broker, String clientName, long funds) throws JMSException {
+        if (broker.registerClient(clientName, broker.con, funds) != 0) {
+            throw new IllegalStateException("Could not register " + clientName);
+        }
+        return broker.getClient(clientName);
+    }
+}
@@ -0,0 +1,67 @@
+package de.tu_berlin.cit.vs.jms.client;
+
+import de.tu_berlin.cit.vs.jms.common.*;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Typed requests of one registered client, each answered through a CompletableFuture. Implemented by
+ * JmsBrokerClient for a client with its own connection and by MultiAccountClient.Account for
+ * clients sharing one.
+ *
+ * A refusal fails the future with RequestRefusedException, no free in-flight slot or no reply in
+ * time with a TimeoutException. Futures complete on a JMS listener thread, callbacks that block or
+ * do heavy work should use the *Async variants of CompletableFuture.
+ */
+public interface BrokerAccount {
+
+    String getClientName();
+
+    /**
+     * Sends a request under a fresh JMSCorrelationID, which the broker echoes on the reply.
+     *
+     * @param result maps a reply of the expected type to the future's value
+     */
+    <R extends BrokerMessage, T> CompletableFuture<T> request(BrokerMessage message, Class<R> replyType,
+                                                             Function<R, T> result);
+
+    default CompletableFuture<ProfileMessage> profileAsync() {
+        return request(new RequestProfileMessage(), ProfileMessage.class, profile -> profile);
+    }
+
+    default CompletableFuture<List<Stock>> listAsync() {
+        return request(new RequestListMessage(), ListMessage.class, ListMessage::getStocks);
+    }
+
+    /**
+     * Fails with RequestRefusedException if the stock is not listed.
+     */
+    default CompletableFuture<Stock> infoAsync(String stockName) {
+        return request(new RequestInfoMessage(stockName), InfoMessage.class, InfoMessage::getInfo);
+    }
+
+    /**
+     * Fails with RequestRefusedException if the broker rejected the order, e.g. for insufficient funds;
+     * its getRejectReason tells why.
+     */
+    default CompletableFuture<ExecutionReportMessage> buyAsync(String stockName, int amount) {
+        return request(new BuyMessage(stockName, amount), ExecutionReportMessage.class, report -> report);
+    }
+
+    /**
+     * Fails with RequestRefusedException if the broker rejected the order, e.g. for too few shares held.
+     */
+    default CompletableFuture<ExecutionReportMessage> sellAsync(String stockName, int amount) {
+        return request(new SellMessage(stockName, amount), ExecutionReportMessage.class, report -> report);
+    }
+
+    /**
+     * Sends all legs in one request, the report lists the fill or refusal of every leg. Fails only if
+     * the request itself could not be answered, refused legs are part of the report.
+     */
+    default CompletableFuture<BatchExecutionReportMessage> batchAsync(BatchOrderMessage batch) {
+        return request(batch, BatchExecutionReportMessage.class, report -> report);
+    }
+}
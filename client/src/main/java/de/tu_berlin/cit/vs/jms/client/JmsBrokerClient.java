@@ -14,16 +14,28 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 
-public class JmsBrokerClient {
+public class JmsBrokerClient implements BrokerAccount {
     private static final Logger logger = LoggingUtils.getLogger(JmsBrokerClient.class);
-    String registrationQueueName = "broker-registration";
+    static final String REGISTRATION_QUEUE = "broker-registration";
+    String registrationQueueName = REGISTRATION_QUEUE;
     String clientName;
     Connection con;
     Session session;
+    // a JMS session is single-threaded, but callers, BrokerAccount requests and the listener thread
+    // (resubscribing the portfolio after a gap) all send or create consumers through this one
+    private final Object sessionLock = new Object();
     Queue incomingQueue;
     Queue outgoingQueue;
 
@@ -32,16 +44,57 @@ public class JmsBrokerClient {
 
     Map<String, MessageConsumer> topicConsumer =new HashMap<>();
 
+    public interface WatchHandler {
+        void onUpdate(String stockName, String update);
+    }
+
+    // Price updates of watched topics are conflated per stock: the JMS listener only records the latest
+    // price and the delivery thread hands it to the handler, so a slow handler never builds a backlog in
+    // ActiveMQ. Trade events are queued in full, each one reports a different trade.
+    private record WatchKey(String stockName, String event) {
+    }
+    final ConflatingQueue<WatchKey, String> watchUpdates = new ConflatingQueue<>();
+    volatile WatchHandler watchHandler = (stockName, update) -> logger.log(Level.INFO, update);
+    private Thread watchDelivery;
+    private volatile boolean delivering;
+
+    // batched tick topic, demultiplexed per symbol on this side; "*" receives every symbol
+    static final String ALL_SYMBOLS = "*";
+    MessageConsumer tickBatchConsumer;
+    Map<String, List<PriceTickBatch.Handler>> tickHandlers = new ConcurrentHashMap<>();
+
+    // requested at registration, the broker's acknowledgement decides what is actually used
+    WireFormat wireFormat = WireFormat.BINARY;
+
+    public interface ReplyListener {
+        void onReply(BrokerMessage reply);
+    }
+
+    // when set, every decoded reply goes here instead of the log (load generation, scripting)
+    volatile ReplyListener replyListener;
+
+    // fraction of requests sent with trace stamps, -Dtrace.sample=0.01 traces one in a hundred
+    private volatile double traceSampleRate = Double.parseDouble(System.getProperty("trace.sample", "0"));
+    final TraceStats traceStats = new TraceStats();
+
+    // requests of the BrokerAccount methods awaiting their reply, -Dclient.max-in-flight=256 bounds them per client
+    public static final int DEFAULT_MAX_IN_FLIGHT = Integer.getInteger("client.max-in-flight", 256);
+    public static final long DEFAULT_REQUEST_TIMEOUT_MILLIS = Long.getLong("client.request-timeout", 5000);
+    final PendingRequests pendingRequests = new PendingRequests(DEFAULT_MAX_IN_FLIGHT);
+    // kept current from the broker's pushes once subscribePortfolio was called
+    final Portfolio portfolio = new Portfolio();
+    private volatile long requestTimeoutMillis = DEFAULT_REQUEST_TIMEOUT_MILLIS;
+
+    // -Dbroker.url=... points clients at another broker, vm://exchange?create=false for one embedded in this JVM
+    public static final String DEFAULT_BROKER_URL = System.getProperty("broker.url", "tcp://localhost:61616");
+
     public JmsBrokerClient(String clientName) throws JMSException {
+        this(clientName, DEFAULT_BROKER_URL);
+    }
+
+    public JmsBrokerClient(String clientName, String brokerUrl) throws JMSException {
         this.clientName = clientName;
-        ActiveMQConnectionFactory conFactory = new ActiveMQConnectionFactory("tcp://localhost:61616");
-        conFactory.setTrustedPackages(Arrays.asList(
-                "de.tu_berlin.cit.vs.jms.common",
-                "java.math",
-                "java.util",
-                "org.apache.activemq.command" ));
-        this.con = conFactory.createConnection();
-        this.con.start();
+        this.con = connect(brokerUrl);
         this.session = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
 
         try {
@@ -53,10 +106,12 @@ public class JmsBrokerClient {
                     // all further actions make sense if client gets registration
                     this.incomingQueue = response.getClientIncomingQueue();
                     this.outgoingQueue = response.getClientOutgoingQueue();
+                    this.wireFormat = response.getWireFormat();
                     this.messageConsumer = session.createConsumer(incomingQueue);
                     this.messageProducer = session.createProducer(outgoingQueue);
                     logger.log(Level.FINE, "Incoming Queue: " + incomingQueue);
                     logger.log(Level.FINE, "Outgoing Queue: " + outgoingQueue);
+                    logger.log(Level.FINE, "Wire format: " + wireFormat);
                     MessageListener messageListener = message -> {
                         try {
                             processMessages(message);
@@ -79,75 +134,62 @@ public class JmsBrokerClient {
         }
     }
 
+    static Connection connect(String brokerUrl) throws JMSException {
+        ActiveMQConnectionFactory conFactory = new ActiveMQConnectionFactory(brokerUrl);
+        conFactory.setTrustedPackages(Arrays.asList(
+                "de.tu_berlin.cit.vs.jms.common",
+                "java.math",
+                "java.util",
+                "org.apache.activemq.command" ));
+        Connection connection = conFactory.createConnection();
+        connection.start();
+        return connection;
+    }
+
     private void processMessages(Message message) throws JMSException {
-        if (message instanceof ObjectMessage) {
-            ObjectMessage objReply = (ObjectMessage) message;
-            Object responseData = objReply.getObject();
-            switch (responseData) {
-                case ListMessage listResponse -> {
-                    listResponse.getStocks().forEach(stock -> {
-                        logger.log(Level.INFO, "Stock: " + stock.toString());
-                    });
-                }
-                case InfoMessage infoResponse -> {
-                    logger.log(Level.INFO, "Stock: " + infoResponse.getInfo().getName() +
-                            ", max. Amount: " + infoResponse.getInfo().getMaxStockCount());
+        traceStats.record(message, TraceStamps.nowMicros());
+        if (message instanceof ObjectMessage || message instanceof BytesMessage) {
+            Object responseData = fromReply(message, session);
+            if (responseData instanceof PortfolioSnapshotMessage snapshot) {
+                portfolio.reset(snapshot);
+                return;
+            }
+            if (responseData instanceof PositionUpdateMessage update) {
+                if (!portfolio.apply(update)) {
+                    logger.log(Level.WARNING, "Portfolio update " + update.getSequence() + " out of sequence, resynchronizing");
+                    subscribePortfolio();
                 }
-                case ProfileMessage profileResponse -> {
-                    logger.log(Level.INFO, "Client Name: " + profileResponse.getClientName());
-                    logger.log(Level.INFO, "Funds: " + profileResponse.getFunds().setScale(2, RoundingMode.DOWN));
-                    logger.log(Level.INFO, "Owns stocks:");
-                    List<Stock> stocks = profileResponse.getStocks();
-                    if (!stocks.isEmpty()) {
-                        stocks.forEach(stock -> {
-                            logger.log(Level.INFO, "-- Stock: " + stock.getName() + ", Amount: " + stock.getMaxStockCount());
-                        });
-                    } else {
-                        logger.log(Level.INFO, "-- None --");
-                    }
+                return;
+            }
+            String correlationId = message.getJMSCorrelationID();
+            if (correlationId != null && responseData instanceof BrokerMessage) {
+                // answer to a BrokerAccount request, its caller consumes it through the future
+                if (!pendingRequests.complete(correlationId, (BrokerMessage) responseData)) {
+                    logger.log(Level.FINE, "Dropped late reply to request " + correlationId);
                 }
-                case TransactionConfirmationMessage transactionConfirmationResponse -> {
-                    logger.log(Level.INFO,transactionConfirmationResponse.getMessage());
+                return;
+            }
+            ReplyListener listener = replyListener;
+            if (listener != null && responseData instanceof BrokerMessage) {
+                listener.onReply((BrokerMessage) responseData);
+                if (responseData instanceof TopicMessage) {
+                    updateSubscription((TopicMessage) responseData);
                 }
+                return;
+            }
+            switch (responseData) {
+                case ListMessage listResponse -> logList(listResponse.getStocks());
+                case InfoMessage infoResponse -> logInfo(infoResponse.getInfo());
+                case ProfileMessage profileResponse -> logProfile(profileResponse);
+                case ExecutionReportMessage executionReport -> logger.log(Level.INFO, describe(executionReport));
                 case TransactionRefusalMessage transactionRefusalResponse -> {
                     logger.log(Level.INFO,transactionRefusalResponse.getMessage());
                 }
-                case TopicMessage topic -> {
-                    String topicName = topic.getTopic().getTopicName();
-                    boolean isSetSubscribing = ((TopicMessage) responseData).isSetSubscribing();
-
-                    if(isSetSubscribing) {
-                        if(!topicConsumer.containsKey(topicName)) {
-                            logger.log(Level.INFO, "Subscribing to " + topicName);
-                            MessageConsumer consumer = session.createConsumer(topic.getTopic());
-                            consumer.setMessageListener(topicMessage -> {
-                                if (topicMessage instanceof TextMessage) {
-                                    TextMessage textMessage = (TextMessage) topicMessage;
-                                    try {
-                                        logger.log(Level.INFO, textMessage.getText());
-                                    } catch (JMSException e) {
-                                        logger.log(Level.SEVERE, "Error processing TextMessage", e);
-                                    }
-                                } else {
-                                    logger.log(Level.SEVERE, "Topic Message is limited to text only. Actual type: " + topicMessage.toString());
-                                }
-                            });
-                            topicConsumer.put(topicName, consumer);
-                            logger.log(Level.FINE, "Subscribed to topic: " + topicName);
-                        } else {
-                            logger.log(Level.INFO, "Already subscribed to " + topicName);
-                        }
-                    } else {
-                        if(topicConsumer.containsKey(topicName)) {
-                            logger.log(Level.INFO, "Unsubscribing to " + topicName);
-                            topicConsumer.get(topicName).close();
-                            topicConsumer.remove(topicName);
-                            logger.log(Level.INFO, "Unsubscribed from topic: " + topicName);
-                        } else{
-                            logger.log(Level.INFO, "Client not subscribed to " + topicName);
-                        }
-                    }
+                case BatchExecutionReportMessage batchReport -> logBatch(batchReport);
+                case OrderReportMessage orderReport -> {
+                    logger.log(Level.INFO, orderReport.toString());
                 }
+                case TopicMessage topic -> updateSubscription(topic);
 
                 default -> throw new IllegalStateException("Unexpected value: " + responseData);
             }
@@ -159,10 +201,123 @@ public class JmsBrokerClient {
         }
     }
 
+    private static void logList(List<Stock> stocks) {
+        stocks.forEach(stock -> {
+            logger.log(Level.INFO, "Stock: " + stock.toString());
+        });
+    }
+
+    private static void logInfo(Stock stock) {
+        logger.log(Level.INFO, "Stock: " + stock.getName() + ", max. Amount: " + stock.getMaxStockCount());
+    }
+
+    private static void logExecution(ExecutionReportMessage report) {
+        logger.log(Level.INFO, describe(report));
+    }
+
+    // CLI only: execution reports carry plain fields, this is where they are put into words
+    static String describe(ExecutionReportMessage report) {
+        String order = report.getQuantity() + " stocks of " + report.getStockName();
+        if (report.isFilled()) {
+            return "Confirmation: " + order + (report.getSide() == Side.BUY ? " bought" : " sold") + ". Price: "
+                    + FixedPoint.toBigDecimal(report.getPrice()).setScale(2, RoundingMode.DOWN) + ", funds: "
+                    + FixedPoint.toBigDecimal(report.getFunds()).setScale(2, RoundingMode.DOWN)
+                    + " (order " + report.getOrderId() + ", quote " + report.getQuoteVersion() + ")";
+        }
+        return "Transaction Refusal: " + (report.getSide() == Side.BUY ? "buying " : "selling ") + order + ", "
+                + describe(report.getRejectReason(), report.getFunds());
+    }
+
+    static String describe(RejectReason reason, long funds) {
+        return switch (reason) {
+            case UNKNOWN_STOCK -> "no such stock";
+            case INVALID_QUANTITY -> "invalid amount";
+            case NOT_AVAILABLE -> "not enough stocks available";
+            case INSUFFICIENT_FUNDS -> "not enough funds, "
+                    + FixedPoint.toBigDecimal(funds).setScale(2, RoundingMode.DOWN) + " left";
+            case INSUFFICIENT_HOLDINGS -> "not enough stocks held";
+            case INTERNAL_ERROR -> "broker error";
+            case NO_QUOTE -> "no price yet";
+            case BATCH_ABORTED -> "another leg was refused";
+            case INVALID_PRICE -> "invalid limit price";
+            case UNKNOWN_ORDER -> "no such order";
+        };
+    }
+
+    private static void logBatch(BatchExecutionReportMessage report) {
+        logger.log(Level.INFO, report.toString());
+        for (BatchExecutionReportMessage.LegReport leg : report.getLegs()) {
+            logger.log(Level.INFO, "-- " + (leg.isFilled() ? leg.toString() : leg.getSide() + " " + leg.getQuantity()
+                    + " " + leg.getStockName() + " refused, " + describe(leg.getReason(), report.getFunds())));
+        }
+    }
+
+    private static void logProfile(ProfileMessage profileResponse) {
+        logger.log(Level.INFO, "Client Name: " + profileResponse.getClientName());
+        logger.log(Level.INFO, "Funds: " + profileResponse.getFunds().setScale(2, RoundingMode.DOWN));
+        logger.log(Level.INFO, "Owns stocks:");
+        List<Stock> stocks = profileResponse.getStocks();
+        if (!stocks.isEmpty()) {
+            stocks.forEach(stock -> {
+                logger.log(Level.INFO, "-- Stock: " + stock.getName() + ", Amount: " + stock.getMaxStockCount());
+            });
+        } else {
+            logger.log(Level.INFO, "-- None --");
+        }
+    }
+
+    private void updateSubscription(TopicMessage topic) throws JMSException {
+        String topicName = topic.getTopic().getTopicName();
+        boolean isSetSubscribing = topic.isSetSubscribing();
+
+        if(isSetSubscribing) {
+            if(!topicConsumer.containsKey(topicName)) {
+                logger.log(Level.INFO, "Subscribing to " + topicName);
+                MessageConsumer consumer;
+                synchronized (sessionLock) {
+                    consumer = session.createConsumer(topic.getTopic());
+                }
+                startWatchDelivery();
+                consumer.setMessageListener(topicMessage -> {
+                    if (topicMessage instanceof TextMessage) {
+                        TextMessage textMessage = (TextMessage) topicMessage;
+                        try {
+                            String event = textMessage.getStringProperty(MessageHeaders.EVENT);
+                            WatchKey key = new WatchKey(topicName, event == null ? "" : event);
+                            if (StockEvent.STOCK_PRICE_CHANGED.name().equals(event)) {
+                                watchUpdates.offer(key, textMessage.getText());
+                            } else {
+                                watchUpdates.append(key, textMessage.getText());
+                            }
+                        } catch (JMSException e) {
+                            logger.log(Level.SEVERE, "Error processing TextMessage", e);
+                        }
+                    } else {
+                        logger.log(Level.SEVERE, "Topic Message is limited to text only. Actual type: " + topicMessage.toString());
+                    }
+                });
+                topicConsumer.put(topicName, consumer);
+                logger.log(Level.FINE, "Subscribed to topic: " + topicName);
+            } else {
+                logger.log(Level.INFO, "Already subscribed to " + topicName);
+            }
+        } else {
+            if(topicConsumer.containsKey(topicName)) {
+                logger.log(Level.INFO, "Unsubscribing to " + topicName);
+                topicConsumer.get(topicName).close();
+                topicConsumer.remove(topicName);
+                watchUpdates.removeIf(key -> key.stockName().equals(topicName));
+                logger.log(Level.INFO, "Unsubscribed from topic: " + topicName);
+            } else{
+                logger.log(Level.INFO, "Client not subscribed to " + topicName);
+            }
+        }
+    }
+
     private RegisterAcknowledgementMessage registerWithBroker() throws JMSException {
         Integer timeout = 3000; // 3 seconds
         BigDecimal initialFunds = BigDecimal.valueOf(100000); // $100000
-        RegisterMessage registerMessage = new RegisterMessage(clientName, initialFunds);
+        RegisterMessage registerMessage = new RegisterMessage(clientName, initialFunds, wireFormat);
 
         Queue registrationQueue = session.createQueue(registrationQueueName);
         MessageProducer registrationProducer = session.createProducer(registrationQueue);
@@ -204,59 +359,232 @@ public class JmsBrokerClient {
 
     }
 
+    private void send(BrokerMessage message) throws JMSException {
+        synchronized (sessionLock) {
+            Message request = toRequest(session, message, wireFormat, clientName);
+            double sampleRate = traceSampleRate;
+            if (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+                request.setLongProperty(MessageHeaders.TRACE_CLIENT_SENT, TraceStamps.nowMicros());
+            }
+            messageProducer.send(request);
+        }
+    }
+
+    static Message toRequest(Session session, BrokerMessage message, WireFormat wireFormat, String clientName)
+            throws JMSException {
+        Message request = wireFormat == WireFormat.BINARY
+                ? BinaryCodec.toBytesMessage(session, message)
+                : session.createObjectMessage(message);
+        // lets a broker in shared channel mode route the request and keep this client's requests in order
+        request.setStringProperty(MessageHeaders.CLIENT_ID, clientName);
+        request.setStringProperty(MessageHeaders.GROUP_ID, clientName);
+        if (message.getCorrelationId() != null) {
+            request.setJMSCorrelationID(message.getCorrelationId());
+        }
+        return request;
+    }
+
+    // decodes a reply in either wire format, null for anything else (text messages)
+    static Object fromReply(Message message, Session session) throws JMSException {
+        if (message instanceof BytesMessage) {
+            return BinaryCodec.fromBytesMessage((BytesMessage) message, session);
+        }
+        return message instanceof ObjectMessage ? ((ObjectMessage) message).getObject() : null;
+    }
+
+    @Override
+    public String getClientName() {
+        return clientName;
+    }
+
+    /**
+     * @param sampleRate fraction of requests to trace, 0 turns tracing off and 1 traces every request
+     */
+    public void setTraceSampling(double sampleRate) {
+        this.traceSampleRate = sampleRate;
+    }
+
+    public TraceStats getTraceStats() {
+        return traceStats;
+    }
+
+    /**
+     * Time the BrokerAccount requests wait for a free in-flight slot and then for the reply before their
+     * future fails with a TimeoutException.
+     */
+    public void setRequestTimeout(long timeoutMillis) {
+        this.requestTimeoutMillis = timeoutMillis;
+    }
+
+    // number of BrokerAccount requests awaiting their reply
+    public int getInFlight() {
+        return pendingRequests.inFlight();
+    }
+
+    /**
+     * Completes the returned future on the JMS listener thread, instead of handing the reply to the
+     * reply listener or the log. Blocks while DEFAULT_MAX_IN_FLIGHT requests await their replies.
+     */
+    @Override
+    public <R extends BrokerMessage, T> CompletableFuture<T> request(BrokerMessage message, Class<R> replyType,
+                                                                     Function<R, T> result) {
+        return pendingRequests.submit(requestTimeoutMillis, correlationId -> {
+            message.setCorrelationId(correlationId);
+            send(message);
+        }, replyType, result);
+    }
+
+    /**
+     * Asks the broker for a snapshot of this client's funds and positions and for an update after
+     * every later change, see getPortfolio.
+     */
+    public void subscribePortfolio() throws JMSException {
+        send(new PortfolioSubscribeMessage());
+    }
+
+    // empty and not current until the snapshot requested by subscribePortfolio arrived
+    public Portfolio getPortfolio() {
+        return portfolio;
+    }
+
     public void profile() throws JMSException {
         RequestProfileMessage profileMessage = new RequestProfileMessage();
-        ObjectMessage request = session.createObjectMessage(profileMessage);
-        messageProducer.send(request);
+        send(profileMessage);
         logger.log(Level.FINE,"Requesting profile sent");
     }
 
     public void requestList() throws JMSException {
         RequestListMessage listMessage = new RequestListMessage();
-        ObjectMessage request = session.createObjectMessage(listMessage);
-        messageProducer.send(request);
+        send(listMessage);
         logger.log(Level.FINE,"Requesting list sent");
     }
 
     public void info(String stockName) throws JMSException {
         RequestInfoMessage infoMessage = new RequestInfoMessage(stockName);
-        ObjectMessage request = session.createObjectMessage(infoMessage);
-        messageProducer.send(request);
+        send(infoMessage);
         logger.log(Level.FINE,"Requesting info of " + stockName + " sent");
     }
 
     public void buy(String stockName, int amount) throws JMSException {
         BuyMessage buyMessage = new BuyMessage(stockName, amount);
-        ObjectMessage request = session.createObjectMessage(buyMessage);
-        messageProducer.send(request);
+        send(buyMessage);
         logger.log(Level.FINE,"Requesting buy sent: " + stockName + ", amount: " + amount);
     }
 
     public void sell(String stockName, int amount) throws JMSException {
         SellMessage sellMessage = new SellMessage(stockName, amount);
-        ObjectMessage request = session.createObjectMessage(sellMessage);
-        messageProducer.send(request);
+        send(sellMessage);
         logger.log(Level.FINE,"Requesting sell sent");
     }
 
+    public void limitOrder(String stockName, Side side, int amount, long limitPrice) throws JMSException {
+        LimitOrderMessage limitOrderMessage = new LimitOrderMessage(stockName, side, amount, limitPrice);
+        send(limitOrderMessage);
+        logger.log(Level.FINE,"Limit order sent: " + side + " " + amount + " " + stockName + " at " + FixedPoint.toBigDecimal(limitPrice));
+    }
+
+    public void cancelOrder(String stockName, long orderId) throws JMSException {
+        CancelOrderMessage cancelOrderMessage = new CancelOrderMessage(stockName, orderId);
+        send(cancelOrderMessage);
+        logger.log(Level.FINE,"Cancel of order " + orderId + " sent");
+    }
+
+    /**
+     * Subscribes to the broker's batched tick topic (broker started with --tick-batch true) on first use
+     * and routes the prices of the given symbol, or of all symbols for "*", to the handler.
+     */
+    public synchronized void addTickListener(String symbol, PriceTickBatch.Handler handler) throws JMSException {
+        tickHandlers.computeIfAbsent(symbol, s -> new CopyOnWriteArrayList<>()).add(handler);
+        if (tickBatchConsumer == null) {
+            synchronized (sessionLock) {
+                tickBatchConsumer = session.createConsumer(session.createTopic(PriceTickBatch.TOPIC));
+            }
+            tickBatchConsumer.setMessageListener(this::processTickBatch);
+            logger.log(Level.FINE, "Subscribed to " + PriceTickBatch.TOPIC);
+        }
+    }
+
+    public synchronized void removeTickListeners(String symbol) throws JMSException {
+        tickHandlers.remove(symbol);
+        if (tickHandlers.isEmpty() && tickBatchConsumer != null) {
+            tickBatchConsumer.close();
+            tickBatchConsumer = null;
+        }
+    }
+
+    private void processTickBatch(Message message) {
+        if (!(message instanceof BytesMessage)) {
+            logger.log(Level.SEVERE, "Unexpected message on " + PriceTickBatch.TOPIC + ": " + message);
+            return;
+        }
+        List<PriceTickBatch.Handler> allSymbols = tickHandlers.get(ALL_SYMBOLS);
+        try {
+            PriceTickBatch.read((BytesMessage) message, (symbol, price) -> {
+                List<PriceTickBatch.Handler> handlers = tickHandlers.get(symbol);
+                if (handlers != null) {
+                    handlers.forEach(handler -> handler.onPrice(symbol, price));
+                }
+                if (allSymbols != null) {
+                    allSymbols.forEach(handler -> handler.onPrice(symbol, price));
+                }
+            });
+        } catch (JMSException e) {
+            logger.log(Level.SEVERE, "Error processing tick batch", e);
+        }
+    }
+
+    public void setReplyListener(ReplyListener replyListener) {
+        this.replyListener = replyListener;
+    }
+
+    public void setWatchHandler(WatchHandler watchHandler) {
+        this.watchHandler = watchHandler;
+    }
+
+    // number of updates received but not yet handed to the watch handler
+    public int getWatchBacklog() {
+        return watchUpdates.size();
+    }
+
+    private synchronized void startWatchDelivery() {
+        if (watchDelivery != null) {
+            return;
+        }
+        delivering = true;
+        watchDelivery = new Thread(() -> {
+            while (delivering) {
+                try {
+                    Map.Entry<WatchKey, String> update = watchUpdates.poll(100, TimeUnit.MILLISECONDS);
+                    if (update != null) {
+                        watchHandler.onUpdate(update.getKey().stockName(), update.getValue());
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } catch (RuntimeException e) {
+                    logger.log(Level.SEVERE, "Error in watch handler", e);
+                }
+            }
+        }, "WatchDelivery-" + clientName);
+        watchDelivery.setDaemon(true);
+        watchDelivery.start();
+    }
+
     public void watch(String stockName) throws JMSException {
         WatchMessage watchMessage = new WatchMessage(stockName);
-        ObjectMessage request = session.createObjectMessage(watchMessage);
-        messageProducer.send(request);
+        send(watchMessage);
         logger.log(Level.FINE,"Requesting to watch " + stockName + " sent ");
     }
 
     public void unwatch(String stockName) throws JMSException {
         UnwatchMessage unwatchMessage = new UnwatchMessage(stockName);
-        ObjectMessage request = session.createObjectMessage(unwatchMessage);
-        messageProducer.send(request);
+        send(unwatchMessage);
         logger.log(Level.FINE,"Requesting to unwatch " + stockName + " sent ");
     }
 
     public void quit() throws JMSException {
         UnregisterMessage unregisterMessage = new UnregisterMessage(clientName);
-        ObjectMessage request = session.createObjectMessage(unregisterMessage);
-        messageProducer.send(request);
+        send(unregisterMessage);
+        pendingRequests.failAll(new JMSException("Client " + clientName + " quit"));
 
         // Close consumers and producers first
         if (messageConsumer != null) messageConsumer.close();
@@ -266,6 +594,11 @@ public class JmsBrokerClient {
             consumer.close();
         }
         topicConsumer.clear();
+        delivering = false;
+        if (watchDelivery != null) watchDelivery.interrupt();
+        watchUpdates.clear();
+        if (tickBatchConsumer != null) tickBatchConsumer.close();
+        tickHandlers.clear();
 
         if (session != null) session.close();
         if (con != null) con.close();
@@ -275,6 +608,51 @@ public class JmsBrokerClient {
 
     }
 
+    // CLI only: "batch all buy AAPL 10 sell MSFT 5", null if malformed
+    private static BatchOrderMessage parseBatch(String[] task) {
+        if (task.length < 5 || (task.length - 2) % 3 != 0) {
+            return null;
+        }
+        BatchOrderMessage batch;
+        switch (task[1].toLowerCase()) {
+            case "all" -> batch = new BatchOrderMessage(BatchOrderMessage.Mode.ALL_OR_NOTHING);
+            case "best" -> batch = new BatchOrderMessage(BatchOrderMessage.Mode.BEST_EFFORT);
+            default -> {
+                return null;
+            }
+        }
+        for (int i = 2; i < task.length; i += 3) {
+            int amount;
+            try {
+                amount = Integer.parseInt(task[i + 2]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            switch (task[i].toLowerCase()) {
+                case "buy" -> batch.buy(task[i + 1], amount);
+                case "sell" -> batch.sell(task[i + 1], amount);
+                default -> {
+                    return null;
+                }
+            }
+        }
+        return batch;
+    }
+
+    // CLI only: waits for the reply of a BrokerAccount request and logs it, or why there was none
+    private static <T> void await(CompletableFuture<T> future, Consumer<T> log) throws InterruptedException {
+        try {
+            log.accept(future.get());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RequestRefusedException refused) {
+                logger.log(Level.INFO, refused.getReport() != null ? describe(refused.getReport()) : refused.getMessage());
+            } else {
+                logger.log(Level.INFO, "Request failed: " + cause);
+            }
+        }
+    }
+
     /**
      * @param args the command line arguments
      */
@@ -286,23 +664,9 @@ public class JmsBrokerClient {
             int amount = Integer.parseInt(args[3]);
 
             JmsBrokerClient client = new JmsBrokerClient(clientName);
-            client.buy(stockName, amount);
-            try {
-                Thread.sleep(2000);
-            } catch (InterruptedException e) {
-                throw e;
-            }
-            client.profile();
-            try {
-                Thread.sleep(2000);
-            } catch (InterruptedException e) {
-                throw e;
-            }
+            await(client.buyAsync(stockName, amount), JmsBrokerClient::logExecution);
+            await(client.profileAsync(), JmsBrokerClient::logProfile);
             client.quit();
-             try {
-                Thread.sleep(2000);
-            } catch (InterruptedException e) {
-            }
             System.exit(0);
         }
 
@@ -313,6 +677,7 @@ public class JmsBrokerClient {
 
             JmsBrokerClient client = new JmsBrokerClient(clientName);
             logger.log(Level.INFO, "Client registration successful: " + clientName);
+            client.subscribePortfolio();
             boolean running = true;
             while(running) {
                 System.out.println("Enter command:");
@@ -326,12 +691,12 @@ public class JmsBrokerClient {
                             running = false;
                             break;
                         case "list":
-                            client.requestList();
+                            await(client.listAsync(), JmsBrokerClient::logList);
                             break;
                         case "buy":
                             if(task.length == 3) {
                                 try {
-                                    client.buy(task[1], Integer.parseInt(task[2]));
+                                    await(client.buyAsync(task[1], Integer.parseInt(task[2])), JmsBrokerClient::logExecution);
                                 } catch (NumberFormatException e) {
                                     System.out.println(task[2] + " is not a valid number.");
                                 }
@@ -342,7 +707,7 @@ public class JmsBrokerClient {
                         case "sell":
                             if(task.length == 3) {
                                 try {
-                                    client.sell(task[1], Integer.parseInt(task[2]));
+                                    await(client.sellAsync(task[1], Integer.parseInt(task[2])), JmsBrokerClient::logExecution);
                                 } catch (NumberFormatException e) {
                                     System.out.println(task[2] + " is not a valid number.");
                                 }
@@ -350,6 +715,37 @@ public class JmsBrokerClient {
                                 System.out.println("Correct usage: sell [stock] [amount]");
                             }
                             break;
+                        case "limit":
+                            if(task.length == 5 && (task[1].equalsIgnoreCase("buy") || task[1].equalsIgnoreCase("sell"))) {
+                                try {
+                                    client.limitOrder(task[2], Side.valueOf(task[1].toUpperCase()),
+                                            Integer.parseInt(task[3]), FixedPoint.parse(task[4]));
+                                } catch (NumberFormatException e) {
+                                    System.out.println(task[3] + " or " + task[4] + " is not a valid number.");
+                                }
+                            } else {
+                                System.out.println("Correct usage: limit [buy|sell] [stock] [amount] [price]");
+                            }
+                            break;
+                        case "cancel":
+                            if(task.length == 3) {
+                                try {
+                                    client.cancelOrder(task[1], Long.parseLong(task[2]));
+                                } catch (NumberFormatException e) {
+                                    System.out.println(task[2] + " is not a valid order id.");
+                                }
+                            } else {
+                                System.out.println("Correct usage: cancel [stock] [orderId]");
+                            }
+                            break;
+                        case "batch":
+                            BatchOrderMessage batch = parseBatch(task);
+                            if (batch != null) {
+                                await(client.batchAsync(batch), JmsBrokerClient::logBatch);
+                            } else {
+                                System.out.println("Correct usage: batch [all|best] [buy|sell] [stock] [amount] ...");
+                            }
+                            break;
                         case "watch":
                             if(task.length == 2) {
                                 client.watch(task[1]);
@@ -364,34 +760,66 @@ public class JmsBrokerClient {
                                 System.out.println("Correct usage: unwatch [stock]");
                             }
                             break;
+                        case "ticks":
+                            if(task.length <= 2) {
+                                String symbol = task.length == 2 ? task[1] : ALL_SYMBOLS;
+                                client.addTickListener(symbol, (stock, price) -> logger.log(Level.INFO,
+                                        "Tick " + stock + ": " + FixedPoint.toBigDecimal(price).setScale(2, RoundingMode.DOWN)));
+                            } else {
+                                System.out.println("Correct usage: ticks [stock]");
+                            }
+                            break;
+                        case "unticks":
+                            client.removeTickListeners(task.length == 2 ? task[1] : ALL_SYMBOLS);
+                            break;
+                        case "trace":
+                            if(task.length == 2) {
+                                try {
+                                    client.setTraceSampling(Double.parseDouble(task[1]));
+                                } catch (NumberFormatException e) {
+                                    System.out.println(task[1] + " is not a valid number.");
+                                }
+                            } else {
+                                System.out.println(client.getTraceStats());
+                            }
+                            break;
                         case "info":
                             if(task.length == 2) {
-                                client.info(task[1]);
+                                await(client.infoAsync(task[1]), JmsBrokerClient::logInfo);
                             } else {
                                 System.out.println("Correct usage: info [stock]");
                             }
                             break;
                         case "profile":
-                            client.profile();
+                            await(client.profileAsync(), JmsBrokerClient::logProfile);
+                            break;
+                        case "portfolio":
+                            System.out.println(client.getPortfolio());
                             break;
                         case "help":
                             System.out.println(String.join("\n",
                                                            "Available Commands:",
                                                            "help - Shows this overview of commands",
                                                            "profile - Shows the name, amount of money and stocks this client has",
+                                                           "portfolio - Shows the money and stocks this client has as pushed by the broker, without asking it",
                                                            "list - Shows all available stocks, their max amount and price",
                                                            "info [stock] - Shows the max amount available of [stock]",
                                                            "buy [stock] [amount] - Buys [amount] of [stock]",
                                                            "sell [stock] [amount] - Sells [amount] of [stock]",
+                                                           "limit [buy|sell] [stock] [amount] [price] - Places a limit order on the order book of [stock]",
+                                                           "cancel [stock] [orderId] - Cancels a resting limit order",
+                                                           "batch [all|best] [buy|sell] [stock] [amount] ... - Sends many buys and sells at once, all or nothing or each on its own",
                                                            "watch [stock] - Watches the changes to [stock]",
                                                            "unwatch [stock] - Unwatches [stock]",
+                                                           "ticks [stock] - Follows [stock] (or all stocks) on the batched tick topic",
+                                                           "unticks [stock] - Stops following [stock] (or all stocks) on the batched tick topic",
+                                                           "trace [rate] - Traces [rate] (0 to 1) of the requests, without [rate] shows the per-hop latency",
                                                            "quit - Terminates the client and unregisters it from the broker"));
                             break;
                         default:
                             System.out.println("Unknown command. Try 'help' to see available commands.");
                     }
                 }
-                Thread.sleep(500);
             }
         } catch (JMSException | IOException ex) {
             Logger.getLogger(JmsBrokerClient.class.getName()).log(Level.SEVERE, ex.getMessage(), ex);
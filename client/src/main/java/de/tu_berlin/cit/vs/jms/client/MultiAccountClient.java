@@ -0,0 +1,297 @@
+package de.tu_berlin.cit.vs.jms.client;
+
+import de.tu_berlin.cit.vs.jms.common.*;
+
+import javax.jms.*;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Many registered clients of one trading process (sub-accounts) on a single connection, instead of
+ * a JmsBrokerClient with its own connection, session and threads per client.
+ *
+ * Accounts are spread over a small pool of sessions. Each account sends through and receives on one
+ * of them, so its requests stay in order and its replies are dispatched by that session's thread.
+ * Replies to BrokerAccount requests complete their futures through one correlation table for the
+ * whole connection, which also bounds the requests in flight across all accounts; every other
+ * reply (order reports, replies to requests sent without correlation) goes to the account's reply
+ * listener.
+ */
+public class MultiAccountClient {
+    private static final Logger logger = LoggingUtils.getLogger(MultiAccountClient.class);
+
+    // -Dclient.sessions=4 sets the session pool size of the default constructor
+    public static final int DEFAULT_SESSIONS = Integer.getInteger("client.sessions", 4);
+    // registration gives up on the accounts still unacknowledged once no acknowledgement came for this long
+    static final long REGISTRATION_TIMEOUT_MILLIS = 3000;
+
+    private final Connection con;
+    private final Channel[] channels;
+    private final AtomicInteger nextChannel = new AtomicInteger();
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+    final PendingRequests pendingRequests;
+    private volatile long requestTimeoutMillis = JmsBrokerClient.DEFAULT_REQUEST_TIMEOUT_MILLIS;
+    // requested at registration, each account uses what the broker acknowledged
+    private final WireFormat wireFormat = WireFormat.BINARY;
+
+    // one pooled session and its anonymous producer, sends hold the channel since JMS sessions are single-threaded
+    private static final class Channel {
+        final Session session;
+        final MessageProducer producer;
+
+        Channel(Session session) throws JMSException {
+            this.session = session;
+            this.producer = session.createProducer(null);
+        }
+    }
+
+    public MultiAccountClient() throws JMSException {
+        this(JmsBrokerClient.DEFAULT_BROKER_URL, DEFAULT_SESSIONS, JmsBrokerClient.DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public MultiAccountClient(String brokerUrl, int sessions, int maxInFlight) throws JMSException {
+        this(JmsBrokerClient.connect(brokerUrl), sessions, maxInFlight);
+    }
+
+    /**
+     * @param connection a started connection, closed by quit()
+     */
+    public MultiAccountClient(Connection connection, int sessions, int maxInFlight) throws JMSException {
+        if (sessions <= 0) {
+            throw new IllegalArgumentException("At least one session is needed: " + sessions);
+        }
+        this.con = connection;
+        this.pendingRequests = new PendingRequests(maxInFlight);
+        this.channels = new Channel[sessions];
+        for (int i = 0; i < sessions; i++) {
+            channels[i] = new Channel(con.createSession(false, Session.AUTO_ACKNOWLEDGE));
+        }
+    }
+
+    /**
+     * Registers all clients in one pipelined round: every registration is sent before the first
+     * acknowledgement is awaited, all of them answered on one temporary queue. Clients the broker
+     * refused (already registered) or did not acknowledge within REGISTRATION_TIMEOUT_MILLIS of the
+     * previous acknowledgement are logged and left out of the result.
+     *
+     * @return the accounts registered by this call, in the order of the names
+     */
+    public Map<String, Account> register(Collection<String> clientNames, BigDecimal initialFunds) throws JMSException {
+        Set<String> waiting = new LinkedHashSet<>(clientNames);
+        waiting.removeAll(accounts.keySet());
+        Map<String, RegisterAcknowledgementMessage> acknowledged = new HashMap<>();
+        Session session = con.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        TemporaryQueue replyQueue = session.createTemporaryQueue();
+        try {
+            MessageConsumer replies = session.createConsumer(replyQueue);
+            MessageProducer registrations = session.createProducer(session.createQueue(JmsBrokerClient.REGISTRATION_QUEUE));
+            for (String clientName : waiting) {
+                ObjectMessage request = session.createObjectMessage(new RegisterMessage(clientName, initialFunds, wireFormat));
+                request.setJMSReplyTo(replyQueue);
+                request.setJMSCorrelationID(clientName);
+                registrations.send(request);
+            }
+            int pending = waiting.size();
+            while (pending > 0) {
+                Message reply = replies.receive(REGISTRATION_TIMEOUT_MILLIS);
+                if (reply == null) {
+                    break;
+                }
+                String clientName = reply.getJMSCorrelationID();
+                if (clientName == null || !waiting.contains(clientName) || acknowledged.containsKey(clientName)) {
+                    continue;
+                }
+                pending--;
+                if (reply instanceof ObjectMessage
+                        && ((ObjectMessage) reply).getObject() instanceof RegisterAcknowledgementMessage response) {
+                    acknowledged.put(clientName, response);
+                } else if (reply instanceof TextMessage) {
+                    logger.log(Level.WARNING, "Registration of " + clientName + " refused: " + ((TextMessage) reply).getText());
+                }
+            }
+            registrations.close();
+            replies.close();
+        } finally {
+            replyQueue.delete();
+            session.close();
+        }
+
+        Map<String, Account> registered = new LinkedHashMap<>();
+        for (String clientName : waiting) {
+            RegisterAcknowledgementMessage response = acknowledged.get(clientName);
+            if (response == null) {
+                continue;
+            }
+            if (!(response.getClientIncomingQueue() instanceof Queue && response.getClientOutgoingQueue() instanceof Queue)) {
+                logger.log(Level.WARNING, "Client " + clientName + " received a non-queue");
+                continue;
+            }
+            Channel channel = channels[Math.floorMod(nextChannel.getAndIncrement(), channels.length)];
+            Account account = new Account(clientName, channel, response);
+            accounts.put(clientName, account);
+            registered.put(clientName, account);
+        }
+        int missing = waiting.size() - registered.size();
+        if (missing > 0) {
+            logger.log(Level.WARNING, missing + " of " + waiting.size() + " clients could not be registered");
+        }
+        logger.log(Level.FINE, "Registered " + registered.size() + " accounts on " + channels.length + " sessions");
+        return registered;
+    }
+
+    public Account getAccount(String clientName) {
+        return accounts.get(clientName);
+    }
+
+    public Map<String, Account> getAccounts() {
+        return Collections.unmodifiableMap(accounts);
+    }
+
+    /**
+     * Time the BrokerAccount requests of all accounts wait for a free in-flight slot and then for the
+     * reply before their future fails with a TimeoutException.
+     */
+    public void setRequestTimeout(long timeoutMillis) {
+        this.requestTimeoutMillis = timeoutMillis;
+    }
+
+    // number of BrokerAccount requests of all accounts awaiting their reply
+    public int getInFlight() {
+        return pendingRequests.inFlight();
+    }
+
+    /**
+     * Unregisters every account and closes the connection.
+     */
+    public void quit() throws JMSException {
+        for (Account account : accounts.values()) {
+            try {
+                account.unregister();
+            } catch (JMSException e) {
+                logger.log(Level.WARNING, "Could not unregister " + account.getClientName(), e);
+            }
+        }
+        pendingRequests.failAll(new JMSException("Multi-account client quit"));
+        for (Channel channel : channels) {
+            channel.session.close();
+        }
+        con.close();
+        logger.log(Level.INFO, "Multi-account client disconnected. Queues remain on broker.");
+    }
+
+    /**
+     * One registered client on the shared connection.
+     */
+    public final class Account implements BrokerAccount {
+        private final String clientName;
+        private final Channel channel;
+        private final Queue outgoingQueue;
+        private final MessageConsumer consumer;
+        private final WireFormat wireFormat;
+        private volatile JmsBrokerClient.ReplyListener replyListener;
+        private final Portfolio portfolio = new Portfolio();
+
+        private Account(String clientName, Channel channel, RegisterAcknowledgementMessage response) throws JMSException {
+            this.clientName = clientName;
+            this.channel = channel;
+            this.wireFormat = response.getWireFormat();
+            this.replyListener = reply -> logger.log(Level.INFO, clientName + ": " + reply);
+            // the acknowledgement names the queues from the broker's side
+            this.outgoingQueue = response.getClientOutgoingQueue();
+            this.consumer = channel.session.createConsumer(response.getClientIncomingQueue());
+            this.consumer.setMessageListener(this::onMessage);
+        }
+
+        @Override
+        public String getClientName() {
+            return clientName;
+        }
+
+        /**
+         * Receives the replies that do not complete a BrokerAccount request, e.g. order reports.
+         */
+        public void setReplyListener(JmsBrokerClient.ReplyListener replyListener) {
+            this.replyListener = replyListener;
+        }
+
+        @Override
+        public <R extends BrokerMessage, T> CompletableFuture<T> request(BrokerMessage message, Class<R> replyType,
+                                                                         Function<R, T> result) {
+            return pendingRequests.submit(requestTimeoutMillis, correlationId -> {
+                message.setCorrelationId(correlationId);
+                send(message);
+            }, replyType, result);
+        }
+
+        /**
+         * Sends a request without correlation, its reply goes to the reply listener.
+         */
+        public void send(BrokerMessage message) throws JMSException {
+            synchronized (channel) {
+                channel.producer.send(outgoingQueue, JmsBrokerClient.toRequest(channel.session, message, wireFormat, clientName));
+            }
+        }
+
+        private void onMessage(Message message) {
+            try {
+                Object reply = JmsBrokerClient.fromReply(message, channel.session);
+                if (!(reply instanceof BrokerMessage)) {
+                    logger.log(Level.WARNING, "Unexpected message for " + clientName + ": " + message);
+                    return;
+                }
+                if (reply instanceof PortfolioSnapshotMessage snapshot) {
+                    portfolio.reset(snapshot);
+                    return;
+                }
+                if (reply instanceof PositionUpdateMessage update) {
+                    if (!portfolio.apply(update)) {
+                        logger.log(Level.WARNING, "Portfolio update " + update.getSequence() + " of " + clientName
+                                + " out of sequence, resynchronizing");
+                        subscribePortfolio();
+                    }
+                    return;
+                }
+                String correlationId = message.getJMSCorrelationID();
+                if (correlationId != null) {
+                    if (!pendingRequests.complete(correlationId, (BrokerMessage) reply)) {
+                        logger.log(Level.FINE, "Dropped late reply to request " + correlationId + " of " + clientName);
+                    }
+                    return;
+                }
+                replyListener.onReply((BrokerMessage) reply);
+            } catch (JMSException | RuntimeException e) {
+                logger.log(Level.SEVERE, "Error processing reply for " + clientName, e);
+            }
+        }
+
+        /**
+         * Asks the broker for a snapshot of this account's funds and positions and for an update
+         * after every later change, see getPortfolio.
+         */
+        public void subscribePortfolio() throws JMSException {
+            send(new PortfolioSubscribeMessage());
+        }
+
+        public Portfolio getPortfolio() {
+            return portfolio;
+        }
+
+        public void unregister() throws JMSException {
+            send(new UnregisterMessage(clientName));
+            consumer.close();
+            accounts.remove(clientName);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package de.tu_berlin.cit.vs.jms.client;
+
+import de.tu_berlin.cit.vs.jms.common.BrokerMessage;
+import de.tu_berlin.cit.vs.jms.common.ExecutionReportMessage;
+import de.tu_berlin.cit.vs.jms.common.TransactionRefusalMessage;
+
+import javax.jms.JMSException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Requests sent with a JMSCorrelationID and not answered yet, at most maxInFlight of them.
+ *
+ * A request waits for a free slot before it is sent, at most as long as its timeout, and gives the
+ * slot back when its reply arrives or the timeout expires, whichever comes first. A reply that
+ * arrives after its request timed out is dropped.
+ */
+final class PendingRequests {
+    private final Map<String, CompletableFuture<BrokerMessage>> pending = new ConcurrentHashMap<>();
+    private final AtomicLong nextCorrelationId = new AtomicLong();
+    private final Semaphore slots;
+    private final int maxInFlight;
+
+    interface Sender {
+        void send(String correlationId) throws JMSException;
+    }
+
+    PendingRequests(int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("At least one request must be allowed in flight: " + maxInFlight);
+        }
+        this.maxInFlight = maxInFlight;
+        this.slots = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Sends one request and maps its reply to the caller's result. The future fails with
+     * RequestRefusedException on a refusal, TimeoutException if no slot or no reply came in time,
+     * and IllegalStateException on a reply of an unexpected type.
+     */
+    <R extends BrokerMessage, T> CompletableFuture<T> submit(long timeoutMillis, Sender sender,
+                                                            Class<R> replyType, Function<R, T> result) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            if (!slots.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                future.completeExceptionally(new TimeoutException(maxInFlight + " requests already in flight"));
+                return future;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+            return future;
+        }
+        String correlationId = Long.toString(nextCorrelationId.incrementAndGet());
+        CompletableFuture<BrokerMessage> reply = new CompletableFuture<>();
+        pending.put(correlationId, reply);
+        reply.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).whenComplete((message, failure) -> {
+            // the slot is free again before any caller callback runs, so callbacks can send follow-ups
+            pending.remove(correlationId);
+            slots.release();
+            if (failure != null) {
+                future.completeExceptionally(failure);
+            } else if (message instanceof TransactionRefusalMessage refusal) {
+                future.completeExceptionally(new RequestRefusedException(refusal.getMessage()));
+            } else if (message instanceof ExecutionReportMessage report && !report.isFilled()) {
+                future.completeExceptionally(new RequestRefusedException(report));
+            } else if (replyType.isInstance(message)) {
+                try {
+                    future.complete(result.apply(replyType.cast(message)));
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            } else {
+                future.completeExceptionally(new IllegalStateException("Expected " + replyType.getSimpleName()
+                        + " but received " + message.getClass().getSimpleName()));
+            }
+        });
+        try {
+            sender.send(correlationId);
+        } catch (JMSException | RuntimeException e) {
+            reply.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * @return false if no request waits for this correlation id, it timed out or was never sent
+     */
+    boolean complete(String correlationId, BrokerMessage reply) {
+        CompletableFuture<BrokerMessage> future = pending.get(correlationId);
+        return future != null && future.complete(reply);
+    }
+
+    void failAll(Throwable cause) {
+        pending.values().forEach(future -> future.completeExceptionally(cause));
+    }
+
+    int inFlight() {
+        return pending.size();
+    }
+
+    int getMaxInFlight() {
+        return maxInFlight;
+    }
+}
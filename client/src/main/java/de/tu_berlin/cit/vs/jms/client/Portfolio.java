@@ -0,0 +1,88 @@
+package de.tu_berlin.cit.vs.jms.client;
+
+import de.tu_berlin.cit.vs.jms.common.FixedPoint;
+import de.tu_berlin.cit.vs.jms.common.PortfolioSnapshotMessage;
+import de.tu_berlin.cit.vs.jms.common.PositionUpdateMessage;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Local copy of a client's funds and positions, built from the broker's snapshot and kept current
+ * by the updates it pushes after every change, so nobody needs to poll the profile.
+ *
+ * The broker sends the updates about a trade before its reply, on the same queue, so once a buy or
+ * sell future completed the portfolio already shows the trade. A gap in the sequence numbers marks
+ * the view stale until the snapshot the owner then requests arrives.
+ */
+public class Portfolio {
+    private long funds; // FixedPoint micro-units
+    private final Map<String, Integer> positions = new HashMap<>();
+    private long sequence;
+    // false before the first snapshot and from a gap until the next one
+    private boolean current;
+
+    synchronized void reset(PortfolioSnapshotMessage snapshot) {
+        funds = snapshot.getFunds();
+        positions.clear();
+        positions.putAll(snapshot.getPositions());
+        sequence = snapshot.getSequence();
+        current = true;
+    }
+
+    /**
+     * @return false if the update revealed a gap, the owner has to request a new snapshot
+     */
+    synchronized boolean apply(PositionUpdateMessage update) {
+        if (!current || update.getSequence() <= sequence) {
+            // stale: a snapshot is on its way; older: the last snapshot already contains it
+            return true;
+        }
+        if (update.getSequence() != sequence + 1) {
+            current = false;
+            return false;
+        }
+        sequence = update.getSequence();
+        funds = FixedPoint.add(funds, update.getFundsDelta());
+        if (update.getStockName() != null && update.getQuantityDelta() != 0) {
+            int quantity = positions.getOrDefault(update.getStockName(), 0) + update.getQuantityDelta();
+            if (quantity == 0) {
+                positions.remove(update.getStockName());
+            } else {
+                positions.put(update.getStockName(), quantity);
+            }
+        }
+        return true;
+    }
+
+    public synchronized boolean isCurrent() {
+        return current;
+    }
+
+    // sequence number of the last change applied
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    public synchronized BigDecimal getFunds() {
+        return FixedPoint.toBigDecimal(funds);
+    }
+
+    public synchronized int getQuantity(String stockName) {
+        return positions.getOrDefault(stockName, 0);
+    }
+
+    // shares held per stock, a copy
+    public synchronized Map<String, Integer> getPositions() {
+        return new HashMap<>(positions);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Funds: " + FixedPoint.toBigDecimal(funds).setScale(2, RoundingMode.DOWN) + ", positions: "
+                + new TreeMap<>(positions) + (current ? "" : " (stale)") + " @" + sequence;
+    }
+}
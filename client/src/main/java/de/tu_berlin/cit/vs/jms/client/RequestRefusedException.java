@@ -0,0 +1,31 @@
+package de.tu_berlin.cit.vs.jms.client;
+
+import de.tu_berlin.cit.vs.jms.common.ExecutionReportMessage;
+import de.tu_berlin.cit.vs.jms.common.RejectReason;
+
+/**
+ * Completes the future of a request the broker answered with a TransactionRefusalMessage or a
+ * rejected ExecutionReportMessage.
+ */
+public class RequestRefusedException extends Exception {
+    private final ExecutionReportMessage report;
+
+    public RequestRefusedException(String message) {
+        super(message);
+        this.report = null;
+    }
+
+    public RequestRefusedException(ExecutionReportMessage report) {
+        super("Order rejected: " + report.getRejectReason());
+        this.report = report;
+    }
+
+    // the rejected order, null for other refusals
+    public ExecutionReportMessage getReport() {
+        return report;
+    }
+
+    public RejectReason getRejectReason() {
+        return report != null ? report.getRejectReason() : null;
+    }
+}
@@ -0,0 +1,91 @@
+package de.tu_berlin.cit.vs.jms.client;
+
+import de.tu_berlin.cit.vs.jms.common.ConcurrentHistogram;
+import de.tu_berlin.cit.vs.jms.common.MessageHeaders;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import java.util.Locale;
+
+/**
+ * Per-hop latency of the sampled requests of one client, built from the trace stamps the broker
+ * echoes on each reply. Hops that cross processes (REQUEST_TRANSIT, REPLY_TRANSIT) depend on
+ * synchronized clocks, TOTAL is measured on the client's clock alone.
+ */
+public class TraceStats {
+    public enum Hop {
+        // client send to broker listener: producer, ActiveMQ and consumer dispatch
+        REQUEST_TRANSIT,
+        // broker receive to holding the symbol (buy, sell and orders only): decode, sequencer ring, lock
+        LOCK_WAIT,
+        // receive, or lock acquired, to reply built
+        PROCESSING,
+        // reply built to handed to the producer, the sequencer's publisher stage
+        REPLY_QUEUE,
+        // broker send to client listener
+        REPLY_TRANSIT,
+        TOTAL
+    }
+
+    private final ConcurrentHistogram[] hops = new ConcurrentHistogram[Hop.values().length];
+
+    TraceStats() {
+        for (int i = 0; i < hops.length; i++) {
+            hops[i] = new ConcurrentHistogram();
+        }
+    }
+
+    /**
+     * Records the hops of a reply if it carries trace stamps.
+     */
+    void record(Message reply, long receivedMicros) throws JMSException {
+        if (!reply.propertyExists(MessageHeaders.TRACE_REPLY_SENT)) {
+            return;
+        }
+        long clientSent = reply.getLongProperty(MessageHeaders.TRACE_CLIENT_SENT);
+        long brokerReceived = reply.getLongProperty(MessageHeaders.TRACE_BROKER_RECEIVED);
+        long processed = reply.getLongProperty(MessageHeaders.TRACE_PROCESSED);
+        long replySent = reply.getLongProperty(MessageHeaders.TRACE_REPLY_SENT);
+        long processingStart = brokerReceived;
+        if (reply.propertyExists(MessageHeaders.TRACE_LOCK_ACQUIRED)) {
+            processingStart = reply.getLongProperty(MessageHeaders.TRACE_LOCK_ACQUIRED);
+            hops[Hop.LOCK_WAIT.ordinal()].record(processingStart - brokerReceived);
+        }
+        hops[Hop.REQUEST_TRANSIT.ordinal()].record(brokerReceived - clientSent);
+        hops[Hop.PROCESSING.ordinal()].record(processed - processingStart);
+        hops[Hop.REPLY_QUEUE.ordinal()].record(replySent - processed);
+        hops[Hop.REPLY_TRANSIT.ordinal()].record(receivedMicros - replySent);
+        hops[Hop.TOTAL.ordinal()].record(receivedMicros - clientSent);
+    }
+
+    public long getCount() {
+        return hops[Hop.TOTAL.ordinal()].snapshot().getCount();
+    }
+
+    public double getMeanMicros(Hop hop) {
+        return hops[hop.ordinal()].snapshot().getMean();
+    }
+
+    /**
+     * @param percentile 0 to 100
+     */
+    public long getPercentileMicros(Hop hop, double percentile) {
+        return hops[hop.ordinal()].snapshot().getValueAtPercentile(percentile);
+    }
+
+    public long getMaxMicros(Hop hop) {
+        return hops[hop.ordinal()].snapshot().getMax();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder("Traced requests: " + getCount());
+        for (Hop hop : Hop.values()) {
+            ConcurrentHistogram.Snapshot snapshot = hops[hop.ordinal()].snapshot();
+            out.append(String.format(Locale.ROOT, "%n  %-16s mean=%.0fus p50=%dus p99=%dus max=%dus", hop,
+                    snapshot.getMean(), snapshot.getValueAtPercentile(50), snapshot.getValueAtPercentile(99),
+                    snapshot.getMax()));
+        }
+        return out.toString();
+    }
+}
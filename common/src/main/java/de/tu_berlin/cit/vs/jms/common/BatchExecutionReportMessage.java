@@ -0,0 +1,104 @@
+package de.tu_berlin.cit.vs.jms.common;
+
+import java.io.Serializable;
+import java.math.RoundingMode;
+import java.util.List;
+
+/**
+ * Answer to a BatchOrderMessage: one entry per leg, in the order of the legs, each either filled
+ * completely at the quoted price or refused with a reason. All legs were priced from the same
+ * quote version.
+ */
+public class BatchExecutionReportMessage extends BrokerMessage {
+    private BatchOrderMessage.Mode mode;
+    private long quoteVersion;
+    private long funds; // FixedPoint micro-units, the client's funds after the batch
+    private List<LegReport> legs;
+
+    public BatchExecutionReportMessage(BatchOrderMessage.Mode mode, long quoteVersion, long funds, List<LegReport> legs) {
+        super(Type.BATCH_EXECUTION_REPORT);
+        this.mode = mode;
+        this.quoteVersion = quoteVersion;
+        this.funds = funds;
+        this.legs = legs;
+    }
+
+    public BatchOrderMessage.Mode getMode() {
+        return mode;
+    }
+
+    public long getQuoteVersion() {
+        return quoteVersion;
+    }
+
+    public long getFunds() {
+        return funds;
+    }
+
+    public List<LegReport> getLegs() {
+        return legs;
+    }
+
+    public int getFilledCount() {
+        int filled = 0;
+        for (LegReport leg : legs) {
+            if (leg.isFilled()) {
+                filled++;
+            }
+        }
+        return filled;
+    }
+
+    public static class LegReport implements Serializable {
+        private String stockName;
+        private Side side;
+        private int quantity;
+        private long price; // FixedPoint micro-units, 0 if refused
+        private RejectReason reason; // null if filled
+
+        public LegReport(String stockName, Side side, int quantity, long price, RejectReason reason) {
+            this.stockName = stockName;
+            this.side = side;
+            this.quantity = quantity;
+            this.price = price;
+            this.reason = reason;
+        }
+
+        public String getStockName() {
+            return stockName;
+        }
+
+        public Side getSide() {
+            return side;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+
+        public long getPrice() {
+            return price;
+        }
+
+        public RejectReason getReason() {
+            return reason;
+        }
+
+        public boolean isFilled() {
+            return reason == null;
+        }
+
+        @Override
+        public String toString() {
+            return side + " " + quantity + " " + stockName + (reason == null
+                    ? " filled at " + FixedPoint.toBigDecimal(price).setScale(2, RoundingMode.DOWN)
+                    : " refused (" + reason + ")");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Batch " + mode + ": " + getFilledCount() + " of " + legs.size() + " legs filled (quote " + quoteVersion
+                + "), funds " + FixedPoint.toBigDecimal(funds).setScale(2, RoundingMode.DOWN);
+    }
+}
@@ -0,0 +1,73 @@
+package de.tu_berlin.cit.vs.jms.common;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Many buys and sells at the market price in one request, executed in the order they were added
+ * and answered with one BatchExecutionReportMessage.
+ */
+public class BatchOrderMessage extends BrokerMessage {
+    private Mode mode;
+    private List<Leg> legs;
+
+    public BatchOrderMessage(Mode mode) {
+        this(mode, new ArrayList<>());
+    }
+
+    public BatchOrderMessage(Mode mode, List<Leg> legs) {
+        super(Type.STOCK_BATCH_ORDER);
+        this.mode = mode;
+        this.legs = legs;
+    }
+
+    public BatchOrderMessage buy(String stockName, int amount) {
+        legs.add(new Leg(stockName, Side.BUY, amount));
+        return this;
+    }
+
+    public BatchOrderMessage sell(String stockName, int amount) {
+        legs.add(new Leg(stockName, Side.SELL, amount));
+        return this;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public List<Leg> getLegs() {
+        return legs;
+    }
+
+    public enum Mode {
+        // every leg is executed or none is
+        ALL_OR_NOTHING,
+        // each leg is executed if it can be, refused legs do not affect the others
+        BEST_EFFORT
+    }
+
+    public static class Leg implements Serializable {
+        private String stockName;
+        private Side side;
+        private int amount;
+
+        public Leg(String stockName, Side side, int amount) {
+            this.stockName = stockName;
+            this.side = side;
+            this.amount = amount;
+        }
+
+        public String getStockName() {
+            return stockName;
+        }
+
+        public Side getSide() {
+            return side;
+        }
+
+        public int getAmount() {
+            return amount;
+        }
+    }
+}
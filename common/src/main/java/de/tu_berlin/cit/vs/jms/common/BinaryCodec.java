@@ -0,0 +1,409 @@
+package de.tu_berlin.cit.vs.jms.common;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.MessageFormatException;
+import javax.jms.Session;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Schema-driven binary encoding of BrokerMessages for WireFormat.BINARY.
+ *
+ * Every body starts with a version byte and a tag byte identifying the concrete message class
+ * (requests and replies share a BrokerMessage.Type, so the type alone is not enough).
+ * The rest is a fixed field layout per tag: ints and longs are big-endian, strings are
+ * length-prefixed modified UTF-8, prices and funds are FixedPoint micro-units.
+ *
+ * Bodies come from the network, so enum ordinals and element counts are checked while decoding;
+ * a malformed body fails with a MessageFormatException instead of a runtime exception.
+ */
+public final class BinaryCodec {
+    public static final byte VERSION = 4;
+
+    private static final byte TAG_BUY = 1;
+    private static final byte TAG_SELL = 2;
+    private static final byte TAG_REQUEST_INFO = 3;
+    private static final byte TAG_REQUEST_LIST = 4;
+    private static final byte TAG_REQUEST_PROFILE = 5;
+    private static final byte TAG_WATCH = 6;
+    private static final byte TAG_UNWATCH = 7;
+    private static final byte TAG_UNREGISTER = 8;
+    private static final byte TAG_INFO = 9;
+    private static final byte TAG_LIST = 10;
+    private static final byte TAG_PROFILE = 11;
+    private static final byte TAG_REFUSAL = 13;
+    private static final byte TAG_TOPIC = 14;
+    private static final byte TAG_LIMIT_ORDER = 15;
+    private static final byte TAG_CANCEL_ORDER = 16;
+    private static final byte TAG_ORDER_REPORT = 17;
+    private static final byte TAG_BATCH_ORDER = 18;
+    private static final byte TAG_BATCH_REPORT = 19;
+    private static final byte TAG_PORTFOLIO_SUBSCRIBE = 20;
+    private static final byte TAG_PORTFOLIO_SNAPSHOT = 21;
+    private static final byte TAG_POSITION_UPDATE = 22;
+    private static final byte TAG_EXECUTION_REPORT = 23;
+
+    private static final Side[] SIDES = Side.values();
+    private static final OrderReportMessage.Status[] ORDER_STATUSES = OrderReportMessage.Status.values();
+    private static final BatchOrderMessage.Mode[] BATCH_MODES = BatchOrderMessage.Mode.values();
+    private static final RejectReason[] REJECT_REASONS = RejectReason.values();
+
+    private BinaryCodec() {
+    }
+
+    public static BytesMessage toBytesMessage(Session session, BrokerMessage message) throws JMSException {
+        return toBytesMessage(session, encode(message));
+    }
+
+    /**
+     * @param body a message encoded earlier by {@link #encode(BrokerMessage)}
+     */
+    public static BytesMessage toBytesMessage(Session session, byte[] body) throws JMSException {
+        BytesMessage bytesMessage = session.createBytesMessage();
+        bytesMessage.writeBytes(body);
+        return bytesMessage;
+    }
+
+    /**
+     * @param session used to re-create the Topic of a TopicMessage, may be null on the broker side
+     */
+    public static BrokerMessage fromBytesMessage(BytesMessage bytesMessage, Session session) throws JMSException {
+        byte[] body = new byte[(int) bytesMessage.getBodyLength()];
+        bytesMessage.readBytes(body);
+        return decode(body, session);
+    }
+
+    public static byte[] encode(BrokerMessage message) throws JMSException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            write(out, message);
+        } catch (IOException e) {
+            throw jmsException("Could not encode " + message.getType(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static BrokerMessage decode(byte[] body, Session session) throws JMSException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(body))) {
+            return read(in, session);
+        } catch (IOException e) {
+            throw jmsException("Could not decode binary message", e);
+        }
+    }
+
+    private static void write(DataOutput out, BrokerMessage message) throws IOException, JMSException {
+        out.writeByte(VERSION);
+        switch (message) {
+            case BuyMessage buy -> {
+                out.writeByte(TAG_BUY);
+                out.writeUTF(buy.getStockName());
+                out.writeInt(buy.getAmount());
+            }
+            case SellMessage sell -> {
+                out.writeByte(TAG_SELL);
+                out.writeUTF(sell.getStockName());
+                out.writeInt(sell.getAmount());
+            }
+            case RequestInfoMessage requestInfo -> {
+                out.writeByte(TAG_REQUEST_INFO);
+                out.writeUTF(requestInfo.getStockName());
+            }
+            case RequestListMessage ignored -> out.writeByte(TAG_REQUEST_LIST);
+            case RequestProfileMessage ignored -> out.writeByte(TAG_REQUEST_PROFILE);
+            case WatchMessage watch -> {
+                out.writeByte(TAG_WATCH);
+                out.writeUTF(watch.getStockName());
+            }
+            case UnwatchMessage unwatch -> {
+                out.writeByte(TAG_UNWATCH);
+                out.writeUTF(unwatch.getStockName());
+            }
+            case UnregisterMessage unregister -> {
+                out.writeByte(TAG_UNREGISTER);
+                out.writeUTF(unregister.getClientName());
+            }
+            case InfoMessage info -> {
+                out.writeByte(TAG_INFO);
+                writeStock(out, info.getInfo());
+            }
+            case ListMessage list -> {
+                out.writeByte(TAG_LIST);
+                writeStocks(out, list.getStocks());
+            }
+            case ProfileMessage profile -> {
+                out.writeByte(TAG_PROFILE);
+                out.writeUTF(profile.getClientName());
+                out.writeLong(FixedPoint.fromBigDecimal(profile.getFunds()));
+                writeStocks(out, profile.getStocks());
+            }
+            case TransactionRefusalMessage refusal -> {
+                out.writeByte(TAG_REFUSAL);
+                out.writeUTF(refusal.getMessage());
+            }
+            case TopicMessage topic -> {
+                out.writeByte(TAG_TOPIC);
+                out.writeUTF(topic.getTopic().getTopicName());
+                out.writeBoolean(topic.isSetSubscribing());
+            }
+            case LimitOrderMessage limitOrder -> {
+                out.writeByte(TAG_LIMIT_ORDER);
+                out.writeUTF(limitOrder.getStockName());
+                out.writeByte(limitOrder.getSide().ordinal());
+                out.writeInt(limitOrder.getAmount());
+                out.writeLong(limitOrder.getLimitPrice());
+            }
+            case CancelOrderMessage cancelOrder -> {
+                out.writeByte(TAG_CANCEL_ORDER);
+                out.writeUTF(cancelOrder.getStockName());
+                out.writeLong(cancelOrder.getOrderId());
+            }
+            case OrderReportMessage report -> {
+                out.writeByte(TAG_ORDER_REPORT);
+                out.writeLong(report.getOrderId());
+                out.writeUTF(report.getStockName());
+                out.writeByte(report.getSide() == null ? -1 : report.getSide().ordinal());
+                out.writeByte(report.getStatus().ordinal());
+                out.writeInt(report.getLastQuantity());
+                out.writeLong(report.getLastPrice());
+                out.writeInt(report.getRemainingQuantity());
+                out.writeByte(report.getReason() == null ? -1 : report.getReason().ordinal());
+            }
+            case BatchOrderMessage batch -> {
+                out.writeByte(TAG_BATCH_ORDER);
+                out.writeByte(batch.getMode().ordinal());
+                out.writeInt(batch.getLegs().size());
+                for (BatchOrderMessage.Leg leg : batch.getLegs()) {
+                    out.writeUTF(leg.getStockName());
+                    out.writeByte(leg.getSide().ordinal());
+                    out.writeInt(leg.getAmount());
+                }
+            }
+            case BatchExecutionReportMessage report -> {
+                out.writeByte(TAG_BATCH_REPORT);
+                out.writeByte(report.getMode().ordinal());
+                out.writeLong(report.getQuoteVersion());
+                out.writeLong(report.getFunds());
+                out.writeInt(report.getLegs().size());
+                for (BatchExecutionReportMessage.LegReport leg : report.getLegs()) {
+                    out.writeUTF(leg.getStockName());
+                    out.writeByte(leg.getSide().ordinal());
+                    out.writeInt(leg.getQuantity());
+                    out.writeLong(leg.getPrice());
+                    out.writeByte(leg.getReason() == null ? -1 : leg.getReason().ordinal());
+                }
+            }
+            case PortfolioSubscribeMessage ignored -> out.writeByte(TAG_PORTFOLIO_SUBSCRIBE);
+            case PortfolioSnapshotMessage snapshot -> {
+                out.writeByte(TAG_PORTFOLIO_SNAPSHOT);
+                out.writeLong(snapshot.getSequence());
+                out.writeLong(snapshot.getFunds());
+                out.writeInt(snapshot.getPositions().size());
+                for (Map.Entry<String, Integer> position : snapshot.getPositions().entrySet()) {
+                    out.writeUTF(position.getKey());
+                    out.writeInt(position.getValue());
+                }
+            }
+            case PositionUpdateMessage update -> {
+                out.writeByte(TAG_POSITION_UPDATE);
+                out.writeLong(update.getSequence());
+                writeNullableString(out, update.getStockName());
+                out.writeInt(update.getQuantityDelta());
+                out.writeLong(update.getFundsDelta());
+            }
+            case ExecutionReportMessage report -> {
+                out.writeByte(TAG_EXECUTION_REPORT);
+                out.writeLong(report.getOrderId());
+                out.writeUTF(report.getStockName());
+                out.writeByte(report.getSide().ordinal());
+                out.writeInt(report.getQuantity());
+                out.writeLong(report.getPrice());
+                out.writeLong(report.getFunds());
+                out.writeLong(report.getQuoteVersion());
+                out.writeByte(report.getRejectReason() == null ? -1 : report.getRejectReason().ordinal());
+            }
+            default -> throw new JMSException("No binary layout for " + message.getClass().getSimpleName());
+        }
+    }
+
+    private static BrokerMessage read(DataInputStream in, Session session) throws IOException, JMSException {
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new JMSException("Unsupported binary message version: " + version);
+        }
+        byte tag = in.readByte();
+        return switch (tag) {
+            case TAG_BUY -> new BuyMessage(in.readUTF(), in.readInt());
+            case TAG_SELL -> new SellMessage(in.readUTF(), in.readInt());
+            case TAG_REQUEST_INFO -> new RequestInfoMessage(in.readUTF());
+            case TAG_REQUEST_LIST -> new RequestListMessage();
+            case TAG_REQUEST_PROFILE -> new RequestProfileMessage();
+            case TAG_WATCH -> new WatchMessage(in.readUTF());
+            case TAG_UNWATCH -> new UnwatchMessage(in.readUTF());
+            case TAG_UNREGISTER -> new UnregisterMessage(in.readUTF());
+            case TAG_INFO -> new InfoMessage(readStock(in));
+            case TAG_LIST -> new ListMessage(readStocks(in));
+            case TAG_PROFILE -> new ProfileMessage(in.readUTF(), FixedPoint.toBigDecimal(in.readLong()), readStocks(in));
+            case TAG_REFUSAL -> new TransactionRefusalMessage(in.readUTF());
+            case TAG_TOPIC -> {
+                String topicName = in.readUTF();
+                boolean subscribing = in.readBoolean();
+                if (session == null) {
+                    throw new JMSException("A session is required to decode topic " + topicName);
+                }
+                yield new TopicMessage(session.createTopic(topicName), subscribing);
+            }
+            case TAG_LIMIT_ORDER -> new LimitOrderMessage(in.readUTF(), readSide(in), in.readInt(), in.readLong());
+            case TAG_CANCEL_ORDER -> new CancelOrderMessage(in.readUTF(), in.readLong());
+            case TAG_ORDER_REPORT -> new OrderReportMessage(in.readLong(), in.readUTF(), readNullableSide(in),
+                    readEnum(in, ORDER_STATUSES), in.readInt(), in.readLong(), in.readInt(), readNullableRejectReason(in));
+            case TAG_BATCH_ORDER -> readBatchOrder(in);
+            case TAG_BATCH_REPORT -> readBatchReport(in);
+            case TAG_PORTFOLIO_SUBSCRIBE -> new PortfolioSubscribeMessage();
+            case TAG_PORTFOLIO_SNAPSHOT -> readPortfolioSnapshot(in);
+            case TAG_POSITION_UPDATE -> new PositionUpdateMessage(in.readLong(), readNullableString(in), in.readInt(),
+                    in.readLong());
+            case TAG_EXECUTION_REPORT -> new ExecutionReportMessage(in.readLong(), in.readUTF(), readSide(in),
+                    in.readInt(), in.readLong(), in.readLong(), in.readLong(), readNullableRejectReason(in));
+            default -> throw new JMSException("Unknown binary message tag: " + tag);
+        };
+    }
+
+    private static BatchOrderMessage readBatchOrder(DataInputStream in) throws IOException, JMSException {
+        BatchOrderMessage.Mode mode = readEnum(in, BATCH_MODES);
+        // name length, side, amount
+        int count = readCount(in, 2 + 1 + 4);
+        List<BatchOrderMessage.Leg> legs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            legs.add(new BatchOrderMessage.Leg(in.readUTF(), readSide(in), in.readInt()));
+        }
+        return new BatchOrderMessage(mode, legs);
+    }
+
+    private static BatchExecutionReportMessage readBatchReport(DataInputStream in) throws IOException, JMSException {
+        BatchOrderMessage.Mode mode = readEnum(in, BATCH_MODES);
+        long quoteVersion = in.readLong();
+        long funds = in.readLong();
+        // name length, side, quantity, price, reason
+        int count = readCount(in, 2 + 1 + 4 + 8 + 1);
+        List<BatchExecutionReportMessage.LegReport> legs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            legs.add(new BatchExecutionReportMessage.LegReport(in.readUTF(), readSide(in), in.readInt(),
+                    in.readLong(), readNullableRejectReason(in)));
+        }
+        return new BatchExecutionReportMessage(mode, quoteVersion, funds, legs);
+    }
+
+    private static PortfolioSnapshotMessage readPortfolioSnapshot(DataInputStream in) throws IOException, JMSException {
+        long sequence = in.readLong();
+        long funds = in.readLong();
+        // name length, quantity
+        int count = readCount(in, 2 + 4);
+        Map<String, Integer> positions = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            positions.put(in.readUTF(), in.readInt());
+        }
+        return new PortfolioSnapshotMessage(sequence, funds, positions);
+    }
+
+    private static void writeNullableString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static Side readSide(DataInput in) throws IOException, JMSException {
+        return readEnum(in, SIDES);
+    }
+
+    private static Side readNullableSide(DataInput in) throws IOException, JMSException {
+        return readNullableEnum(in, SIDES);
+    }
+
+    private static RejectReason readNullableRejectReason(DataInput in) throws IOException, JMSException {
+        return readNullableEnum(in, REJECT_REASONS);
+    }
+
+    private static <E extends Enum<E>> E readEnum(DataInput in, E[] values) throws IOException, JMSException {
+        E value = readNullableEnum(in, values);
+        if (value == null) {
+            throw new MessageFormatException("Missing " + values[0].getDeclaringClass().getSimpleName());
+        }
+        return value;
+    }
+
+    // -1 encodes null
+    private static <E extends Enum<E>> E readNullableEnum(DataInput in, E[] values) throws IOException, JMSException {
+        byte ordinal = in.readByte();
+        if (ordinal == -1) {
+            return null;
+        }
+        if (ordinal < 0 || ordinal >= values.length) {
+            throw new MessageFormatException("Invalid " + values[0].getDeclaringClass().getSimpleName() + ": " + ordinal);
+        }
+        return values[ordinal];
+    }
+
+    /**
+     * Reads an element count and checks it against the bytes left, so a corrupt count cannot make
+     * the decoder allocate more than the body could hold.
+     */
+    private static int readCount(DataInputStream in, int minElementBytes) throws IOException, JMSException {
+        int count = in.readInt();
+        if (count < 0 || count > in.available() / minElementBytes) {
+            throw new MessageFormatException("Invalid element count: " + count);
+        }
+        return count;
+    }
+
+    private static void writeStocks(DataOutput out, List<Stock> stocks) throws IOException {
+        out.writeInt(stocks.size());
+        for (Stock stock : stocks) {
+            writeStock(out, stock);
+        }
+    }
+
+    private static List<Stock> readStocks(DataInputStream in) throws IOException, JMSException {
+        // name length, max count, available count, price
+        int count = readCount(in, 2 + 4 + 4 + 8);
+        List<Stock> stocks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            stocks.add(readStock(in));
+        }
+        return stocks;
+    }
+
+    private static void writeStock(DataOutput out, Stock stock) throws IOException {
+        out.writeUTF(stock.getName());
+        out.writeInt(stock.getMaxStockCount());
+        out.writeInt(stock.getAvailableCount());
+        out.writeLong(stock.getPriceMicros());
+    }
+
+    private static Stock readStock(DataInput in) throws IOException {
+        Stock stock = new Stock(in.readUTF(), in.readInt(), 0L);
+        stock.setAvailableCount(in.readInt());
+        stock.setPriceMicros(in.readLong());
+        return stock;
+    }
+
+    private static JMSException jmsException(String reason, Exception cause) {
+        JMSException e = new JMSException(reason + ": " + cause.getMessage());
+        e.setLinkedException(cause);
+        return e;
+    }
+}
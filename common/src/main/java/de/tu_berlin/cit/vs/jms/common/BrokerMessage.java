@@ -5,6 +5,11 @@ import java.io.Serializable;
 
 public abstract class BrokerMessage implements Serializable {
     private Type type;
+    // broker-side only, never serialized; set on requests a client sampled and on their replies
+    private transient TraceStamps trace;
+    // JMSCorrelationID of the request, echoed on its reply; set by the sending client and by the broker
+    // on a decoded request and its reply, never serialized
+    private transient String correlationId;
     
     public BrokerMessage(Type type) {
         this.type = type;
@@ -13,6 +18,22 @@ public abstract class BrokerMessage implements Serializable {
     public Type getType() {
         return type;
     }
+
+    public TraceStamps getTrace() {
+        return trace;
+    }
+
+    public void setTrace(TraceStamps trace) {
+        this.trace = trace;
+    }
+
+    public String getCorrelationId() {
+        return correlationId;
+    }
+
+    public void setCorrelationId(String correlationId) {
+        this.correlationId = correlationId;
+    }
     
     public enum Type {
         SYSTEM_REGISTER,
@@ -27,7 +48,15 @@ public abstract class BrokerMessage implements Serializable {
         STOCK_SELL,
         STOCK_INFO,
         STOCK_PROFILE,
-        TRANSACTION_CONFIRMATION,
-        TRANSACTION_REFUSAL
+        TRANSACTION_REFUSAL,
+        STOCK_LIMIT_ORDER,
+        STOCK_CANCEL_ORDER,
+        ORDER_REPORT,
+        STOCK_BATCH_ORDER,
+        BATCH_EXECUTION_REPORT,
+        PORTFOLIO_SUBSCRIBE,
+        PORTFOLIO_SNAPSHOT,
+        POSITION_UPDATE,
+        EXECUTION_REPORT
     }
 }
@@ -0,0 +1,20 @@
+package de.tu_berlin.cit.vs.jms.common;
+
+public class CancelOrderMessage extends BrokerMessage {
+    private String stockName;
+    private long orderId;
+
+    public CancelOrderMessage(String stockName, long orderId) {
+        super(Type.STOCK_CANCEL_ORDER);
+        this.stockName = stockName;
+        this.orderId = orderId;
+    }
+
+    public String getStockName() {
+        return stockName;
+    }
+
+    public long getOrderId() {
+        return orderId;
+    }
+}
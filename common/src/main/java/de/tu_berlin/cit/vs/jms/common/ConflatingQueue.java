@@ -0,0 +1,79 @@
+package de.tu_berlin.cit.vs.jms.common;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Latest-value queue between a fast producer and a possibly slow consumer.
+ *
+ * Holds at most one pending value per offered key: offering a key that is still waiting replaces
+ * its value in place and keeps its position, so memory is bounded by the number of keys and the
+ * consumer always gets the freshest value. Appended values are never replaced, they are for
+ * events where every occurrence matters. Everything is handed out in the order it first became
+ * pending.
+ */
+public class ConflatingQueue<K, V> {
+    // offered entries are stored under their key, appended ones under a key of their own
+    private final LinkedHashMap<Object, Map.Entry<K, V>> pending = new LinkedHashMap<>();
+    private long offered;
+    private long conflated;
+
+    public synchronized void offer(K key, V value) {
+        offered++;
+        if (pending.put(key, Map.entry(key, value)) != null) {
+            conflated++;
+        } else {
+            notifyAll();
+        }
+    }
+
+    public synchronized void append(K key, V value) {
+        offered++;
+        pending.put(new Object(), Map.entry(key, value));
+        notifyAll();
+    }
+
+    /**
+     * Removes the oldest pending key with its latest value, waiting up to the timeout.
+     *
+     * @return the entry, or null if nothing became pending in time
+     */
+    public synchronized Map.Entry<K, V> poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (pending.isEmpty()) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                return null;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+        Iterator<Map.Entry<K, V>> it = pending.values().iterator();
+        Map.Entry<K, V> head = it.next();
+        it.remove();
+        return head;
+    }
+
+    public synchronized void removeIf(Predicate<? super K> filter) {
+        pending.values().removeIf(entry -> filter.test(entry.getKey()));
+    }
+
+    public synchronized void clear() {
+        pending.clear();
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    public synchronized long getOfferedCount() {
+        return offered;
+    }
+
+    // values overwritten before the consumer got to them
+    public synchronized long getConflatedCount() {
+        return conflated;
+    }
+}
@@ -0,0 +1,84 @@
+package de.tu_berlin.cit.vs.jms.common;
+
+import java.math.RoundingMode;
+
+/**
+ * Answer to a BuyMessage or SellMessage: the fill, or why the order was rejected. Plain fields
+ * only, clients word it themselves.
+ */
+public class ExecutionReportMessage extends BrokerMessage {
+    public static final long NO_QUOTE_VERSION = -1;
+
+    private long orderId; // 0 if rejected
+    private String stockName;
+    private Side side;
+    private int quantity;
+    private long price; // FixedPoint micro-units per share, 0 if rejected
+    private long funds; // FixedPoint micro-units, the client's funds after the order
+    private long quoteVersion; // quote board version the order was priced from, NO_QUOTE_VERSION if rejected
+    private RejectReason rejectReason; // null if filled
+
+    public ExecutionReportMessage(long orderId, String stockName, Side side, int quantity, long price, long funds,
+                                  long quoteVersion, RejectReason rejectReason) {
+        super(Type.EXECUTION_REPORT);
+        this.orderId = orderId;
+        this.stockName = stockName;
+        this.side = side;
+        this.quantity = quantity;
+        this.price = price;
+        this.funds = funds;
+        this.quoteVersion = quoteVersion;
+        this.rejectReason = rejectReason;
+    }
+
+    public static ExecutionReportMessage rejected(String stockName, Side side, int quantity, long funds,
+                                                  RejectReason reason) {
+        return new ExecutionReportMessage(0L, stockName, side, quantity, 0L, funds, NO_QUOTE_VERSION, reason);
+    }
+
+    public long getOrderId() {
+        return orderId;
+    }
+
+    public String getStockName() {
+        return stockName;
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public long getPrice() {
+        return price;
+    }
+
+    public long getFunds() {
+        return funds;
+    }
+
+    public long getQuoteVersion() {
+        return quoteVersion;
+    }
+
+    public RejectReason getRejectReason() {
+        return rejectReason;
+    }
+
+    public boolean isFilled() {
+        return rejectReason == null;
+    }
+
+    @Override
+    public String toString() {
+        String text = side + " " + quantity + " " + stockName;
+        if (isFilled()) {
+            return "Order " + orderId + " filled: " + text + " at " + FixedPoint.toBigDecimal(price).setScale(2, RoundingMode.DOWN)
+                    + ", quote " + quoteVersion;
+        }
+        return "Order rejected: " + text + ", " + rejectReason;
+    }
+}
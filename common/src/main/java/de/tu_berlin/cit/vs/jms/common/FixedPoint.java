@@ -0,0 +1,102 @@
+package de.tu_berlin.cit.vs.jms.common;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Prices and money amounts are kept as longs in micro-units (1.000000 == 1_000_000).
+ * All arithmetic is overflow-checked and throws ArithmeticException instead of wrapping.
+ * BigDecimal is only used when converting to and from the presentation layer.
+ */
+public final class FixedPoint {
+    public static final int DECIMALS = 6;
+    public static final long SCALE = 1_000_000L;
+
+    private FixedPoint() {
+    }
+
+    public static long fromBigDecimal(BigDecimal value) {
+        return value.setScale(DECIMALS, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toBigDecimal(long micros) {
+        return BigDecimal.valueOf(micros, DECIMALS);
+    }
+
+    public static long fromUnits(long units) {
+        return Math.multiplyExact(units, SCALE);
+    }
+
+    public static long add(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    public static long subtract(long a, long b) {
+        return Math.subtractExact(a, b);
+    }
+
+    // price * quantity, e.g. the cost of a trade
+    public static long multiply(long micros, int quantity) {
+        return Math.multiplyExact(micros, (long) quantity);
+    }
+
+    /**
+     * Parses a plain decimal string such as "193.44708251953125" without allocating.
+     * Digits beyond micro precision are rounded half-up.
+     */
+    public static long parse(CharSequence text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) <= ' ') start++;
+        while (end > start && text.charAt(end - 1) <= ' ') end--;
+        if (start == end) {
+            throw new NumberFormatException("Empty price");
+        }
+
+        boolean negative = false;
+        char first = text.charAt(start);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            start++;
+        }
+
+        long result = 0;
+        int fractionDigits = -1; // -1 until the decimal point is seen
+        boolean roundUp = false;
+        boolean anyDigit = false;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '.') {
+                if (fractionDigits >= 0) {
+                    throw new NumberFormatException("Invalid price: " + text);
+                }
+                fractionDigits = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("Invalid price: " + text);
+            }
+            anyDigit = true;
+            if (fractionDigits >= DECIMALS) {
+                if (fractionDigits == DECIMALS) {
+                    roundUp = c >= '5';
+                }
+                fractionDigits++;
+                continue;
+            }
+            result = Math.addExact(Math.multiplyExact(result, 10L), c - '0');
+            if (fractionDigits >= 0) fractionDigits++;
+        }
+        if (!anyDigit) {
+            throw new NumberFormatException("Invalid price: " + text);
+        }
+
+        for (int i = Math.max(fractionDigits, 0); i < DECIMALS; i++) {
+            result = Math.multiplyExact(result, 10L);
+        }
+        if (roundUp) {
+            result = Math.addExact(result, 1L);
+        }
+        return negative ? -result : result;
+    }
+}
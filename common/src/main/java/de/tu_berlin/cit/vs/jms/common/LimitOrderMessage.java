@@ -0,0 +1,32 @@
+package de.tu_berlin.cit.vs.jms.common;
+
+public class LimitOrderMessage extends BrokerMessage {
+    private String stockName;
+    private Side side;
+    private int amount;
+    private long limitPrice; // FixedPoint micro-units
+
+    public LimitOrderMessage(String stockName, Side side, int amount, long limitPrice) {
+        super(Type.STOCK_LIMIT_ORDER);
+        this.stockName = stockName;
+        this.side = side;
+        this.amount = amount;
+        this.limitPrice = limitPrice;
+    }
+
+    public String getStockName() {
+        return stockName;
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
+    public int getAmount() {
+        return amount;
+    }
+
+    public long getLimitPrice() {
+        return limitPrice;
+    }
+}
@@ -0,0 +1,25 @@
+package de.tu_berlin.cit.vs.jms.common;
+
+/**
+ * JMS property names stamped on client requests and on the broker's stock topic updates.
+ */
+public final class MessageHeaders {
+    // name of the sending client, lets the broker route requests arriving on a shared queue
+    public static final String CLIENT_ID = "clientId";
+    // standard JMS group property, ActiveMQ pins every group to one consumer so per-client order is kept
+    public static final String GROUP_ID = "JMSXGroupID";
+    // stock name and StockEvent of a topic update, watchers conflate price updates without parsing the text
+    public static final String SYMBOL = "symbol";
+    public static final String EVENT = "event";
+    // long, epoch millis of the historical row the exchange is replaying, set on topic updates and tick batches
+    public static final String SIMULATED_TIME = "simulatedTime";
+    // long, epoch micros of a sampled request's hops, see TraceStamps; the broker echoes them on the reply
+    public static final String TRACE_CLIENT_SENT = "traceClientSent";
+    public static final String TRACE_BROKER_RECEIVED = "traceBrokerReceived";
+    public static final String TRACE_LOCK_ACQUIRED = "traceLockAcquired";
+    public static final String TRACE_PROCESSED = "traceProcessed";
+    public static final String TRACE_REPLY_SENT = "traceReplySent";
+
+    private MessageHeaders() {
+    }
+}
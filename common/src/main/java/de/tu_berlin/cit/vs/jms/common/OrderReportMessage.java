@@ -0,0 +1,84 @@
+package de.tu_berlin.cit.vs.jms.common;
+
+import java.math.RoundingMode;
+
+/**
+ * Sent to the owner of a limit order whenever its state changes: accepted onto the book,
+ * (partially) filled against another client's order, cancelled or rejected.
+ */
+public class OrderReportMessage extends BrokerMessage {
+    private long orderId;
+    private String stockName;
+    private Side side;
+    private Status status;
+    private int lastQuantity;
+    private long lastPrice; // FixedPoint micro-units, 0 unless this report is a fill
+    private int remainingQuantity;
+    private RejectReason reason; // null unless REJECTED
+
+    public OrderReportMessage(long orderId, String stockName, Side side, Status status,
+                              int lastQuantity, long lastPrice, int remainingQuantity, RejectReason reason) {
+        super(Type.ORDER_REPORT);
+        this.orderId = orderId;
+        this.stockName = stockName;
+        this.side = side;
+        this.status = status;
+        this.lastQuantity = lastQuantity;
+        this.lastPrice = lastPrice;
+        this.remainingQuantity = remainingQuantity;
+        this.reason = reason;
+    }
+
+    public long getOrderId() {
+        return orderId;
+    }
+
+    public String getStockName() {
+        return stockName;
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public int getLastQuantity() {
+        return lastQuantity;
+    }
+
+    public long getLastPrice() {
+        return lastPrice;
+    }
+
+    public int getRemainingQuantity() {
+        return remainingQuantity;
+    }
+
+    public RejectReason getReason() {
+        return reason;
+    }
+
+    public enum Status {
+        ACCEPTED,
+        PARTIALLY_FILLED,
+        FILLED,
+        CANCELLED,
+        REJECTED
+    }
+
+    @Override
+    public String toString() {
+        String text = "Order " + orderId + " " + status + ": " + (side != null ? side + " " : "") + stockName;
+        if (status == Status.PARTIALLY_FILLED || status == Status.FILLED) {
+            text += ", filled " + lastQuantity + " at " + FixedPoint.toBigDecimal(lastPrice).setScale(2, RoundingMode.DOWN);
+        }
+        text += ", remaining " + remainingQuantity;
+        if (reason != null) {
+            text += " (" + reason + ")";
+        }
+        return text;
+    }
+}
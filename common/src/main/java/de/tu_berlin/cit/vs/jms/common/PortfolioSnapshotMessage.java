@@ -0,0 +1,32 @@
+package de.tu_berlin.cit.vs.jms.common;
+
+import java.util.Map;
+
+/**
+ * A client's funds and positions as of sequence number {@code sequence}; the next
+ * PositionUpdateMessage carries {@code sequence + 1}.
+ */
+public class PortfolioSnapshotMessage extends BrokerMessage {
+    private long sequence;
+    private long funds; // FixedPoint micro-units
+    private Map<String, Integer> positions; // shares held per stock, stocks not held are left out
+
+    public PortfolioSnapshotMessage(long sequence, long funds, Map<String, Integer> positions) {
+        super(Type.PORTFOLIO_SNAPSHOT);
+        this.sequence = sequence;
+        this.funds = funds;
+        this.positions = positions;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getFunds() {
+        return funds;
+    }
+
+    public Map<String, Integer> getPositions() {
+        return positions;
+    }
+}
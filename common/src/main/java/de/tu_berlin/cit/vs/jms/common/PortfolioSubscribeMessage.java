@@ -0,0 +1,13 @@
+package de.tu_berlin.cit.vs.jms.common;
+
+/**
+ * Asks the broker to push this client's position and funds changes. Answered by a
+ * PortfolioSnapshotMessage, followed by a PositionUpdateMessage per change; sent again to
+ * resynchronize after a gap in the sequence.
+ */
+public class PortfolioSubscribeMessage extends BrokerMessage {
+
+    public PortfolioSubscribeMessage() {
+        super(Type.PORTFOLIO_SUBSCRIBE);
+    }
+}
@@ -0,0 +1,36 @@
+package de.tu_berlin.cit.vs.jms.common;
+
+/**
+ * One change of a subscribed client's funds and/or position, pushed before the reply or order
+ * report about the trade that caused it. Sequence numbers are consecutive per client.
+ */
+public class PositionUpdateMessage extends BrokerMessage {
+    private long sequence;
+    private String stockName; // null if only the funds changed
+    private int quantityDelta;
+    private long fundsDelta; // FixedPoint micro-units
+
+    public PositionUpdateMessage(long sequence, String stockName, int quantityDelta, long fundsDelta) {
+        super(Type.POSITION_UPDATE);
+        this.sequence = sequence;
+        this.stockName = stockName;
+        this.quantityDelta = quantityDelta;
+        this.fundsDelta = fundsDelta;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public String getStockName() {
+        return stockName;
+    }
+
+    public int getQuantityDelta() {
+        return quantityDelta;
+    }
+
+    public long getFundsDelta() {
+        return fundsDelta;
+    }
+}
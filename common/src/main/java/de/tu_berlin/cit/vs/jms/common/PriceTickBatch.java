@@ -0,0 +1,47 @@
+package de.tu_berlin.cit.vs.jms.common;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+
+/**
+ * Layout of the batched market-data topic: one BytesMessage per exchange tick carrying every
+ * symbol whose price changed, instead of one TextMessage per symbol.
+ *
+ * Body: long quote version of the tick, int count, then count times (UTF symbol, long FixedPoint
+ * price). Versions increase from batch to batch and skip ticks that changed no price; trade
+ * confirmations carry the version they executed against.
+ */
+public final class PriceTickBatch {
+    public static final String TOPIC = "price-ticks";
+
+    public interface Handler {
+        void onPrice(String symbol, long price);
+    }
+
+    private PriceTickBatch() {
+    }
+
+    public static void write(BytesMessage message, long quoteVersion, String[] symbols, long[] prices, int count)
+            throws JMSException {
+        message.writeLong(quoteVersion);
+        message.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            message.writeUTF(symbols[i]);
+            message.writeLong(prices[i]);
+        }
+    }
+
+    /**
+     * Hands every (symbol, price) pair of the batch to the handler.
+     *
+     * @return the quote version of the batch
+     */
+    public static long read(BytesMessage message, Handler handler) throws JMSException {
+        long quoteVersion = message.readLong();
+        int count = message.readInt();
+        for (int i = 0; i < count; i++) {
+            handler.onPrice(message.readUTF(), message.readLong());
+        }
+        return quoteVersion;
+    }
+}
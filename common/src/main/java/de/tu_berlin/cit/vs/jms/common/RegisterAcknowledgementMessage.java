@@ -6,12 +6,19 @@ public class RegisterAcknowledgementMessage extends BrokerMessage {
     private String clientName;
     private Queue clientIncomingQueue;
     private Queue clientOutgoingQueue;
+    private WireFormat wireFormat;
 
     public RegisterAcknowledgementMessage(String clientName, Queue clientIncomingQueue, Queue clientOutgoingQueue) {
+        this(clientName, clientIncomingQueue, clientOutgoingQueue, WireFormat.OBJECT);
+    }
+
+    public RegisterAcknowledgementMessage(String clientName, Queue clientIncomingQueue, Queue clientOutgoingQueue,
+                                          WireFormat wireFormat) {
         super(Type.SYSTEM_REGISTER);
         this.clientName = clientName;
         this.clientIncomingQueue = clientIncomingQueue;
         this.clientOutgoingQueue = clientOutgoingQueue;
+        this.wireFormat = wireFormat;
     }
 
     public Queue getClientOutgoingQueue() {
@@ -25,4 +32,8 @@ public class RegisterAcknowledgementMessage extends BrokerMessage {
     public String getClientName() {
         return clientName;
     }
+
+    public WireFormat getWireFormat() {
+        return wireFormat == null ? WireFormat.OBJECT : wireFormat;
+    }
 }
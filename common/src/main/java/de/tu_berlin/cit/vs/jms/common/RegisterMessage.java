@@ -7,12 +7,18 @@ import java.math.BigDecimal;
 public class RegisterMessage extends BrokerMessage {
     private String clientName;
     private BigDecimal initialAmount;
+    private WireFormat wireFormat;
     
     public RegisterMessage(String clientName, BigDecimal initialAmount) {
+        this(clientName, initialAmount, WireFormat.OBJECT);
+    }
+
+    public RegisterMessage(String clientName, BigDecimal initialAmount, WireFormat wireFormat) {
         super(Type.SYSTEM_REGISTER);
         
         this.clientName = clientName;
         this.initialAmount = initialAmount;
+        this.wireFormat = wireFormat;
     }
     
     public String getClientName() {
@@ -21,4 +27,8 @@ public class RegisterMessage extends BrokerMessage {
     public BigDecimal getInitialAmount() {
         return initialAmount;
     }
+
+    public WireFormat getWireFormat() {
+        return wireFormat == null ? WireFormat.OBJECT : wireFormat;
+    }
 }
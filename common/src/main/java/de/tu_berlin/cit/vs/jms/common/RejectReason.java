@@ -0,0 +1,26 @@
+package de.tu_berlin.cit.vs.jms.common;
+
+/**
+ * Why the broker rejected a market order, a leg of a batch or a limit order request, see
+ * ExecutionReportMessage, BatchExecutionReportMessage and OrderReportMessage. Only ever appended
+ * to, the binary codec sends the ordinal.
+ */
+public enum RejectReason {
+    UNKNOWN_STOCK,
+    INVALID_QUANTITY,
+    // the exchange has fewer shares left than the buy asked for
+    NOT_AVAILABLE,
+    INSUFFICIENT_FUNDS,
+    // the client holds fewer shares than the sell asked for
+    INSUFFICIENT_HOLDINGS,
+    // the broker failed to execute the order, nothing about it was wrong
+    INTERNAL_ERROR,
+    // the stock has no price yet, before the first tick of the replay
+    NO_QUOTE,
+    // another leg of an ALL_OR_NOTHING batch would have been refused, so none was executed
+    BATCH_ABORTED,
+    // a limit order without a positive limit price
+    INVALID_PRICE,
+    // a cancel for an order that is not on the book or belongs to another client
+    UNKNOWN_ORDER
+}
@@ -0,0 +1,6 @@
+package de.tu_berlin.cit.vs.jms.common;
+
+public enum Side {
+    BUY,
+    SELL
+}
@@ -9,13 +9,20 @@ public class Stock implements Serializable {
     private String name;
     private int maxStockCount;
     private int availableCount;
-    private BigDecimal price;
+    // price in FixedPoint micro-units, NO_PRICE until the first tick arrives
+    private volatile long price = NO_PRICE;
+
+    public static final long NO_PRICE = Long.MIN_VALUE;
     
     public Stock(String name, int maxStockCount, BigDecimal price) {
+        this(name, maxStockCount, price == null ? NO_PRICE : FixedPoint.fromBigDecimal(price));
+    }
+
+    public Stock(String name, int maxStockCount, long priceMicros) {
         this.maxStockCount = maxStockCount;
         this.availableCount = maxStockCount;
         this.name = name;
-        this.price = price;
+        this.price = priceMicros;
     }
 
     public Stock(String name, int maxStockCount) {
@@ -49,11 +56,23 @@ public class Stock implements Serializable {
     }
 
     public BigDecimal getPrice() {
-        return price;
+        return hasPrice() ? FixedPoint.toBigDecimal(price) : null;
     }
 
     public void setPrice(BigDecimal price) {
-        this.price = price;
+        this.price = price == null ? NO_PRICE : FixedPoint.fromBigDecimal(price);
+    }
+
+    public long getPriceMicros() {
+        return price;
+    }
+
+    public void setPriceMicros(long priceMicros) {
+        this.price = priceMicros;
+    }
+
+    public boolean hasPrice() {
+        return price != NO_PRICE;
     }
     
     @Override
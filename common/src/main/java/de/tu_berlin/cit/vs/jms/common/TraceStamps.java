@@ -0,0 +1,65 @@
+package de.tu_berlin.cit.vs.jms.common;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import java.time.Instant;
+
+/**
+ * Wall-clock stamps (epoch micros) of one sampled request on its way through the broker.
+ *
+ * The client stamps MessageHeaders.TRACE_CLIENT_SENT on the request; the broker adds its own
+ * stamps while processing and copies all of them onto the reply together with
+ * TRACE_REPLY_SENT. Hops between processes compare clocks of different hosts and are only
+ * meaningful when those are synchronized.
+ */
+public final class TraceStamps {
+    private final long clientSent;
+    private long brokerReceived;
+    private long lockAcquired;
+    private long processed;
+
+    private TraceStamps(long clientSent, long brokerReceived) {
+        this.clientSent = clientSent;
+        this.brokerReceived = brokerReceived;
+    }
+
+    public static long nowMicros() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000 + now.getNano() / 1_000;
+    }
+
+    /**
+     * Broker side: starts the trace of a request, or returns null if the client did not sample it.
+     */
+    public static TraceStamps received(Message request) throws JMSException {
+        if (!request.propertyExists(MessageHeaders.TRACE_CLIENT_SENT)) {
+            return null;
+        }
+        return new TraceStamps(request.getLongProperty(MessageHeaders.TRACE_CLIENT_SENT), nowMicros());
+    }
+
+    public void lockAcquired() {
+        lockAcquired = nowMicros();
+    }
+
+    public void processed() {
+        processed = nowMicros();
+    }
+
+    /**
+     * Copies the stamps onto the outgoing JMS message of a reply that carries a trace.
+     */
+    public static void stampReply(Message reply, BrokerMessage message) throws JMSException {
+        TraceStamps trace = message.getTrace();
+        if (trace == null) {
+            return;
+        }
+        reply.setLongProperty(MessageHeaders.TRACE_CLIENT_SENT, trace.clientSent);
+        reply.setLongProperty(MessageHeaders.TRACE_BROKER_RECEIVED, trace.brokerReceived);
+        if (trace.lockAcquired != 0) {
+            reply.setLongProperty(MessageHeaders.TRACE_LOCK_ACQUIRED, trace.lockAcquired);
+        }
+        reply.setLongProperty(MessageHeaders.TRACE_PROCESSED, trace.processed);
+        reply.setLongProperty(MessageHeaders.TRACE_REPLY_SENT, nowMicros());
+    }
+}
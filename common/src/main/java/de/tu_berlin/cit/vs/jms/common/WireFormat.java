@@ -0,0 +1,9 @@
+package de.tu_berlin.cit.vs.jms.common;
+
+/**
+ * Body encoding used on a client's ToBroker/FromBroker queues, agreed on during registration.
+ */
+public enum WireFormat {
+    OBJECT,  // Java-serialized ObjectMessage, the fallback every peer understands
+    BINARY   // BytesMessage with the fixed layouts of BinaryCodec
+}
@@ -0,0 +1,85 @@
+package de.tu_berlin.cit.vs.jms.common;
+
+import org.junit.jupiter.api.Test;
+
+import javax.jms.JMSException;
+import javax.jms.MessageFormatException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryCodecTest {
+
+    @Test
+    void roundTripsFields() throws Exception {
+        LimitOrderMessage order = (LimitOrderMessage) BinaryCodec.decode(BinaryCodec.encode(
+                new LimitOrderMessage("AAPL", Side.SELL, 10, FixedPoint.fromUnits(190))), null);
+        assertEquals("AAPL", order.getStockName());
+        assertEquals(Side.SELL, order.getSide());
+        assertEquals(10, order.getAmount());
+        assertEquals(FixedPoint.fromUnits(190), order.getLimitPrice());
+
+        ExecutionReportMessage rejected = (ExecutionReportMessage) BinaryCodec.decode(BinaryCodec.encode(
+                ExecutionReportMessage.rejected("MSFT", Side.BUY, 5, 42L, RejectReason.NO_QUOTE)), null);
+        assertEquals(RejectReason.NO_QUOTE, rejected.getRejectReason());
+        assertEquals(42L, rejected.getFunds());
+
+        ListMessage list = (ListMessage) BinaryCodec.decode(BinaryCodec.encode(
+                new ListMessage(List.of(new Stock("MSFT", 150, FixedPoint.fromUnits(400))))), null);
+        assertEquals("MSFT", list.getStocks().get(0).getName());
+        assertEquals(FixedPoint.fromUnits(400), list.getStocks().get(0).getPriceMicros());
+
+        BatchExecutionReportMessage batch = (BatchExecutionReportMessage) BinaryCodec.decode(BinaryCodec.encode(
+                new BatchExecutionReportMessage(BatchOrderMessage.Mode.ALL_OR_NOTHING, 3L, 100L, List.of(
+                        new BatchExecutionReportMessage.LegReport("AAPL", Side.BUY, 1, 0, RejectReason.BATCH_ABORTED),
+                        new BatchExecutionReportMessage.LegReport("MSFT", Side.SELL, 2, 5L, null)))), null);
+        assertEquals(RejectReason.BATCH_ABORTED, batch.getLegs().get(0).getReason());
+        assertTrue(batch.getLegs().get(1).isFilled());
+
+        PortfolioSnapshotMessage snapshot = (PortfolioSnapshotMessage) BinaryCodec.decode(BinaryCodec.encode(
+                new PortfolioSnapshotMessage(7, 100L, Map.of("AAPL", 3))), null);
+        assertEquals(Map.of("AAPL", 3), snapshot.getPositions());
+    }
+
+    @Test
+    void rejectsOutOfRangeOrdinals() throws Exception {
+        byte[] order = BinaryCodec.encode(new LimitOrderMessage("AAPL", Side.BUY, 10, FixedPoint.fromUnits(190)));
+        // version, tag, "AAPL" with its length, then the side
+        int side = 2 + 2 + 4;
+        order[side] = 7;
+        assertThrows(MessageFormatException.class, () -> BinaryCodec.decode(order, null));
+        order[side] = -1;
+        assertThrows(MessageFormatException.class, () -> BinaryCodec.decode(order, null));
+
+        byte[] batch = BinaryCodec.encode(new BatchOrderMessage(BatchOrderMessage.Mode.BEST_EFFORT).buy("AAPL", 1));
+        batch[2] = 99;
+        assertThrows(MessageFormatException.class, () -> BinaryCodec.decode(batch, null));
+    }
+
+    @Test
+    void rejectsCountsTheBodyCannotHold() throws Exception {
+        byte[] batch = BinaryCodec.encode(new BatchOrderMessage(BatchOrderMessage.Mode.BEST_EFFORT).buy("AAPL", 1));
+        // version, tag, mode, then the leg count
+        ByteBuffer.wrap(batch).putInt(3, Integer.MAX_VALUE);
+        assertThrows(MessageFormatException.class, () -> BinaryCodec.decode(batch, null));
+        ByteBuffer.wrap(batch).putInt(3, -1);
+        assertThrows(MessageFormatException.class, () -> BinaryCodec.decode(batch, null));
+
+        byte[] list = BinaryCodec.encode(new ListMessage(List.of()));
+        ByteBuffer.wrap(list).putInt(2, 1 << 30);
+        assertThrows(MessageFormatException.class, () -> BinaryCodec.decode(list, null));
+    }
+
+    @Test
+    void rejectsTruncatedBodies() throws Exception {
+        byte[] report = BinaryCodec.encode(new ExecutionReportMessage(1L, "AAPL", Side.BUY, 10,
+                FixedPoint.fromUnits(190), FixedPoint.fromUnits(1000), 3L, null));
+        for (int length = 0; length < report.length; length++) {
+            byte[] truncated = Arrays.copyOf(report, length);
+            assertThrows(JMSException.class, () -> BinaryCodec.decode(truncated, null), "length " + length);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package de.tu_berlin.cit.vs.jms.common;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentHistogramTest {
+
+    @Test
+    void percentilesStayWithinThePrecisionOfTheSubBuckets() {
+        for (int bits : new int[]{4, 7}) {
+            ConcurrentHistogram histogram = new ConcurrentHistogram(bits);
+            for (long value = 1; value <= 1_000_000; value++) {
+                histogram.record(value);
+            }
+            ConcurrentHistogram.Snapshot snapshot = histogram.snapshot();
+            double precision = 1.0 / (1 << bits);
+            for (double percentile : new double[]{50, 90, 99, 99.9}) {
+                long exact = (long) Math.ceil(percentile / 100 * 1_000_000);
+                long reported = snapshot.getValueAtPercentile(percentile);
+                assertTrue(reported >= exact && reported <= exact * (1 + precision),
+                        bits + " bits, p" + percentile + ": " + reported + " for " + exact);
+            }
+            assertEquals(1_000_000, snapshot.getValueAtPercentile(100));
+            assertEquals(500_000.5, snapshot.getMean(), 1e-6);
+        }
+    }
+
+    @Test
+    void addedSnapshotsCountBothHistograms() {
+        ConcurrentHistogram low = new ConcurrentHistogram(7);
+        ConcurrentHistogram high = new ConcurrentHistogram(7);
+        for (int i = 0; i < 100; i++) {
+            low.record(10);
+            high.record(10_000);
+        }
+        ConcurrentHistogram.Snapshot both = low.snapshot().add(high.snapshot());
+        assertEquals(200, both.getCount());
+        assertEquals(10, both.getValueAtPercentile(50));
+        assertEquals(10_000, both.getMax());
+        assertEquals(100, both.countAtMost(10));
+
+        assertThrows(IllegalArgumentException.class, () -> both.add(new ConcurrentHistogram().snapshot()));
+    }
+}
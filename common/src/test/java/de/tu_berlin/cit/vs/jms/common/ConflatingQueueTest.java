@@ -0,0 +1,85 @@
+package de.tu_berlin.cit.vs.jms.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConflatingQueueTest {
+    private static final int SYMBOLS = 10;
+    private static final int PRICE_UPDATES = 200_000;
+    private static final int TRADE_EVERY = 1000;
+
+    @Test
+    void throttledConsumerSeesLatestPricesAndEveryTrade() throws Exception {
+        ConflatingQueue<String, String> queue = new ConflatingQueue<>();
+        Map<String, String> delivered = new HashMap<>();
+        List<String> trades = new ArrayList<>();
+        Thread consumer = new Thread(() -> {
+            try {
+                Map.Entry<String, String> update;
+                while ((update = queue.poll(1, TimeUnit.SECONDS)) != null) {
+                    if (update.getValue().startsWith("trade")) {
+                        trades.add(update.getValue());
+                    } else {
+                        delivered.put(update.getKey(), update.getValue());
+                    }
+                    Thread.sleep(1);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        consumer.start();
+
+        int maxBacklog = 0;
+        for (int i = 0; i < PRICE_UPDATES; i++) {
+            String symbol = "SYM" + (i % SYMBOLS);
+            queue.offer(symbol, "price " + i);
+            if (i % TRADE_EVERY == 0) {
+                queue.append(symbol, "trade " + i);
+            }
+            maxBacklog = Math.max(maxBacklog, queue.size());
+        }
+        consumer.join(30_000);
+        assertFalse(consumer.isAlive());
+
+        int tradeCount = PRICE_UPDATES / TRADE_EVERY;
+        assertTrue(maxBacklog <= SYMBOLS + tradeCount, "backlog reached " + maxBacklog);
+        assertTrue(queue.getConflatedCount() > 0, "the consumer kept up, nothing was conflated");
+        for (int s = 0; s < SYMBOLS; s++) {
+            assertEquals("price " + (PRICE_UPDATES - SYMBOLS + s), delivered.get("SYM" + s));
+        }
+        assertEquals(tradeCount, trades.size());
+        for (int t = 0; t < tradeCount; t++) {
+            assertEquals("trade " + t * TRADE_EVERY, trades.get(t));
+        }
+    }
+
+    @Test
+    void offeredKeysKeepTheirPositionAndAppendedOnesAreNeverReplaced() throws Exception {
+        ConflatingQueue<String, String> queue = new ConflatingQueue<>();
+        queue.offer("A", "1");
+        queue.append("A", "t1");
+        queue.offer("B", "1");
+        queue.offer("A", "2");
+        queue.append("A", "t2");
+        assertEquals(4, queue.size());
+        assertEquals(Map.entry("A", "2"), queue.poll(0, TimeUnit.MILLISECONDS));
+        assertEquals(Map.entry("A", "t1"), queue.poll(0, TimeUnit.MILLISECONDS));
+        assertEquals(Map.entry("B", "1"), queue.poll(0, TimeUnit.MILLISECONDS));
+        assertEquals(Map.entry("A", "t2"), queue.poll(0, TimeUnit.MILLISECONDS));
+        assertNull(queue.poll(0, TimeUnit.MILLISECONDS));
+        assertEquals(1, queue.getConflatedCount());
+
+        queue.offer("A", "3");
+        queue.append("B", "t3");
+        queue.removeIf("A"::equals);
+        assertEquals(Map.entry("B", "t3"), queue.poll(0, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,239 @@
+package de.tu_berlin.cit.vs.jms.loadgen;
+
+import de.tu_berlin.cit.vs.jms.broker.BrokerOptions;
+import de.tu_berlin.cit.vs.jms.broker.EmbeddedBroker;
+import de.tu_berlin.cit.vs.jms.broker.IntradayTickGenerator;
+import de.tu_berlin.cit.vs.jms.broker.ReplayClock;
+import de.tu_berlin.cit.vs.jms.broker.SimpleBroker;
+import de.tu_berlin.cit.vs.jms.broker.StockExchange;
+import de.tu_berlin.cit.vs.jms.client.JmsBrokerClient;
+import de.tu_berlin.cit.vs.jms.common.ConcurrentHistogram;
+import de.tu_berlin.cit.vs.jms.common.LoggingUtils;
+import de.tu_berlin.cit.vs.jms.common.Stock;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Open-loop load against a broker: N registered clients send a weighted mix of requests at a
+ * fixed total rate and the send-to-reply latency of every request is recorded per type.
+ *
+ * Without --broker-url an in-process broker on an embedded ActiveMQ is started, so no external
+ * service is needed; broker options such as --engine or --channels apply to it. --transport tcp
+ * makes the simulated clients go through the embedded broker's TCP connector (--listen) instead
+ * of vm://, which isolates the cost of the loopback socket and wire marshalling.
+ *
+ * Options: --clients N, --rate REQUESTS_PER_SECOND (all clients together), --duration SECONDS,
+ * --warmup SECONDS (not recorded), --mix buy=40,sell=40,list=5,info=10,profile=5,watch=0,
+ * --symbols AAPL,MSFT,..., --seed S, --broker-url URL, --transport vm|tcp
+ */
+public class LoadGenerator {
+    private static final Logger logger = LoggingUtils.getLogger(LoadGenerator.class);
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    // reports latencies within 0.8%
+    private static final int HISTOGRAM_SUB_BUCKET_BITS = 7;
+    // held here so the level set in main is not lost when the loggers are garbage collected
+    private static final Logger clientLogger = Logger.getLogger(JmsBrokerClient.class.getPackageName());
+    private static final Logger brokerLogger = Logger.getLogger(SimpleBroker.class.getPackageName());
+
+    public static void main(String[] args) throws Exception {
+        int clientCount = Integer.parseInt(option(args, "--clients", "10"));
+        double rate = Double.parseDouble(option(args, "--rate", "1000"));
+        long durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(option(args, "--duration", "30")));
+        long warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(option(args, "--warmup", "5")));
+        RequestMix mix = new RequestMix(option(args, "--mix", "buy=40,sell=40,list=5,info=10,profile=5"));
+        String[] symbols = option(args, "--symbols", "MSFT,NVDA,AAPL,GOOGL,AMZN,META,TSLA,TSM,WMT").split(",");
+        long seed = Long.parseLong(option(args, "--seed", "1"));
+        String brokerUrl = option(args, "--broker-url", null);
+
+        // per-request logging of client and broker would dominate the measurement
+        clientLogger.setLevel(Level.WARNING);
+        brokerLogger.setLevel(Level.WARNING);
+
+        EmbeddedBroker embeddedBroker = null;
+        SimpleBroker broker = null;
+        if (brokerUrl == null) {
+            BrokerOptions options = BrokerOptions.fromArgs(args);
+            boolean tcp = option(args, "--transport", "vm").equals("tcp");
+            embeddedBroker = new EmbeddedBroker(tcp ? options.getListenUrl() : EmbeddedBroker.NO_LISTENER, false);
+            options.setBrokerUrl(EmbeddedBroker.VM_URL);
+            broker = startExchange(options, symbols);
+            brokerUrl = tcp ? "tcp://localhost:" + URI.create(options.getListenUrl()).getPort() : EmbeddedBroker.VM_URL;
+        }
+
+        logger.log(Level.INFO, "Registering " + clientCount + " clients at " + brokerUrl);
+        long start = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        long measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+        ConcurrentHistogram[] histograms = new ConcurrentHistogram[RequestType.values().length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new ConcurrentHistogram(HISTOGRAM_SUB_BUCKET_BITS);
+        }
+        List<SimulatedClient> clients = new ArrayList<>();
+        for (int i = 0; i < clientCount; i++) {
+            clients.add(new SimulatedClient("load-" + i + "-" + ProcessHandle.current().pid(), brokerUrl,
+                    symbols, seed + i, measureFrom, histograms));
+        }
+        start = Math.max(start, System.nanoTime());
+        measureFrom = start + warmupNanos;
+        end = measureFrom + durationNanos;
+
+        logger.log(Level.INFO, "Sending " + rate + " requests/s (" + mix + ") for "
+                + TimeUnit.NANOSECONDS.toSeconds(warmupNanos) + "s warm-up + "
+                + TimeUnit.NANOSECONDS.toSeconds(durationNanos) + "s");
+        long intervalNanos = (long) (1e9 * clientCount / rate);
+        List<Thread> schedulers = new ArrayList<>();
+        for (int i = 0; i < clientCount; i++) {
+            SimulatedClient client = clients.get(i);
+            Random random = new Random(seed * 31 + i);
+            // spread the clients' first requests over one interval so they do not all fire at once
+            long first = start + (long) (random.nextDouble() * intervalNanos);
+            long stop = end;
+            schedulers.add(Thread.ofVirtual().name("load-" + i).start(() -> runSchedule(client, mix, random,
+                    first, intervalNanos, stop)));
+        }
+        for (Thread scheduler : schedulers) {
+            scheduler.join();
+        }
+        awaitReplies(clients, TimeUnit.SECONDS.toNanos(10));
+
+        report(clients, histograms, durationNanos, rate);
+
+        for (SimulatedClient client : clients) {
+            client.close();
+        }
+        if (broker != null) {
+            broker.stop();
+            embeddedBroker.stop();
+        }
+    }
+
+    private static void runSchedule(SimulatedClient client, RequestMix mix, Random random, long first,
+                                    long intervalNanos, long end) {
+        for (long next = first; next < end; next += intervalNanos) {
+            long wait;
+            while ((wait = next - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            try {
+                client.issue(mix.next(random), next);
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "Send failed, stopping this client", e);
+                return;
+            }
+        }
+    }
+
+    private static void awaitReplies(List<SimulatedClient> clients, long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (System.nanoTime() < deadline) {
+            int outstanding = 0;
+            for (SimulatedClient client : clients) {
+                outstanding += client.outstanding();
+            }
+            if (outstanding == 0) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+        logger.log(Level.WARNING, "Some replies did not arrive within "
+                + TimeUnit.NANOSECONDS.toSeconds(timeoutNanos) + "s and are missing from the histograms");
+    }
+
+    private static SimpleBroker startExchange(BrokerOptions options, String[] symbols) throws Exception {
+        Map<String, Stock> stocks = new HashMap<>();
+        for (String symbol : symbols) {
+            stocks.put(symbol, new Stock(symbol, 1_000_000));
+        }
+        StockExchange exchange = new StockExchange(stocks, options.getPriceFile(), ReplayClock.of(options),
+                IntradayTickGenerator.of(options));
+        SimpleBroker broker = new SimpleBroker(exchange, options);
+        exchange.start();
+        // the replay prices the first row right away, trading before that would be refused
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!exchange.getQuotes().hasAllPrices()) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("No prices for all of " + stocks.keySet() + " in " + options.getPriceFile());
+            }
+            Thread.sleep(10);
+        }
+        logger.log(Level.INFO, "Exchange started: " + options);
+        return broker;
+    }
+
+    private static void report(List<SimulatedClient> clients, ConcurrentHistogram[] histograms, long durationNanos,
+                               double rate) {
+        RequestType[] types = RequestType.values();
+        ConcurrentHistogram.Snapshot all = new ConcurrentHistogram(HISTOGRAM_SUB_BUCKET_BITS).snapshot();
+        StringBuilder table = new StringBuilder(String.format("%n%-8s %9s %9s %8s %10s", "type", "sent", "replies",
+                "refused", "mean(us)"));
+        for (double percentile : PERCENTILES) {
+            table.append(String.format(" %10s", "p" + formatPercentile(percentile) + "(us)"));
+        }
+        table.append(String.format(" %10s%n", "max(us)"));
+
+        for (RequestType type : types) {
+            ConcurrentHistogram.Snapshot histogram = histograms[type.ordinal()].snapshot();
+            long sent = 0;
+            long refused = 0;
+            for (SimulatedClient client : clients) {
+                sent += client.sent[type.ordinal()].get();
+                refused += client.refused[type.ordinal()];
+            }
+            if (sent == 0) {
+                continue;
+            }
+            all = all.add(histogram);
+            appendRow(table, type.name().toLowerCase(), sent, histogram, refused);
+        }
+        long sentTotal = clients.stream().mapToLong(c -> {
+            long sum = 0;
+            for (var counter : c.sent) {
+                sum += counter.get();
+            }
+            return sum;
+        }).sum();
+        appendRow(table, "all", sentTotal, all, -1);
+
+        long unexpected = clients.stream().mapToLong(c -> c.unexpectedReplies).sum();
+        double seconds = durationNanos / 1e9;
+        table.append(String.format("%ntarget %.0f req/s, replies %.0f/s over %.0fs", rate,
+                all.getCount() / seconds, seconds));
+        if (unexpected > 0) {
+            table.append(", ").append(unexpected).append(" unmatched replies");
+        }
+        System.out.println(table);
+    }
+
+    private static void appendRow(StringBuilder table, String name, long sent, ConcurrentHistogram.Snapshot histogram,
+                                  long refused) {
+        table.append(String.format("%-8s %9d %9d %8s %10.1f", name, sent, histogram.getCount(),
+                refused < 0 ? "" : Long.toString(refused), histogram.getMean() / 1000));
+        for (double percentile : PERCENTILES) {
+            table.append(String.format(" %10.1f", histogram.getValueAtPercentile(percentile) / 1000.0));
+        }
+        table.append(String.format(" %10.1f%n", histogram.getMax() / 1000.0));
+    }
+
+    private static String formatPercentile(double percentile) {
+        return percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile);
+    }
+
+    // reads "--name value" from the command line
+    private static String option(String[] args, String name, String defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,68 @@
+package de.tu_berlin.cit.vs.jms.loadgen;
+
+import java.util.Random;
+
+/**
+ * Weighted choice of request types, parsed from e.g. "buy=40,sell=40,list=5,info=10,profile=5".
+ * Types that are not listed are never sent.
+ */
+class RequestMix {
+    private final RequestType[] types;
+    private final int[] cumulativeWeights;
+    private final int totalWeight;
+
+    RequestMix(String spec) {
+        RequestType[] all = RequestType.values();
+        int[] weights = new int[all.length];
+        for (String part : spec.split(",")) {
+            String[] entry = part.trim().split("=");
+            if (entry.length != 2) {
+                throw new IllegalArgumentException("Expected type=weight in request mix: " + part);
+            }
+            weights[RequestType.valueOf(entry[0].trim().toUpperCase()).ordinal()] = Integer.parseInt(entry[1].trim());
+        }
+        int count = 0;
+        for (int weight : weights) {
+            if (weight > 0) {
+                count++;
+            }
+        }
+        if (count == 0) {
+            throw new IllegalArgumentException("Request mix has no positive weight: " + spec);
+        }
+        this.types = new RequestType[count];
+        this.cumulativeWeights = new int[count];
+        int total = 0;
+        int next = 0;
+        for (int i = 0; i < all.length; i++) {
+            if (weights[i] > 0) {
+                total += weights[i];
+                types[next] = all[i];
+                cumulativeWeights[next++] = total;
+            }
+        }
+        this.totalWeight = total;
+    }
+
+    RequestType next(Random random) {
+        int pick = random.nextInt(totalWeight);
+        for (int i = 0; i < types.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return types[i];
+            }
+        }
+        return types[types.length - 1];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        int previous = 0;
+        for (int i = 0; i < types.length; i++) {
+            builder.append(i > 0 ? "," : "").append(types[i].name().toLowerCase()).append('=')
+                    .append(cumulativeWeights[i] - previous);
+            previous = cumulativeWeights[i];
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,5 @@
+package de.tu_berlin.cit.vs.jms.loadgen;
+
+enum RequestType {
+    BUY, SELL, LIST, INFO, PROFILE, WATCH
+}
@@ -0,0 +1,130 @@
+package de.tu_berlin.cit.vs.jms.loadgen;
+
+import de.tu_berlin.cit.vs.jms.client.JmsBrokerClient;
+import de.tu_berlin.cit.vs.jms.common.BrokerMessage;
+import de.tu_berlin.cit.vs.jms.common.ConcurrentHistogram;
+import de.tu_berlin.cit.vs.jms.common.ExecutionReportMessage;
+import de.tu_berlin.cit.vs.jms.common.TransactionRefusalMessage;
+
+import javax.jms.JMSException;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One JmsBrokerClient driven on an open-loop schedule.
+ *
+ * The broker answers every buy, sell, list, info, profile and watch with exactly one reply, in
+ * request order per client, so replies are matched to requests first-in first-out. Latency is
+ * measured from the time a request was scheduled, not from when it was actually sent, so a
+ * backed-up broker or sender shows up in the numbers instead of silently lowering the rate.
+ */
+class SimulatedClient implements JmsBrokerClient.ReplyListener {
+    private final JmsBrokerClient client;
+    private final String[] symbols;
+    private final Random random;
+    private final ConcurrentLinkedQueue<Pending> pending = new ConcurrentLinkedQueue<>();
+    // shares this client expects to hold per symbol, so sells mostly target real positions
+    private final AtomicIntegerArray positions;
+    private final long measureFromNanos;
+
+    // latency per request type, shared by all clients
+    private final ConcurrentHistogram[] histograms;
+    // written by the client's JMS listener thread only, read after the run
+    final long[] refused = new long[RequestType.values().length];
+    final AtomicLong[] sent = new AtomicLong[RequestType.values().length];
+    long unexpectedReplies;
+
+    private record Pending(RequestType type, int symbol, long scheduledNanos) {
+    }
+
+    SimulatedClient(String name, String brokerUrl, String[] symbols, long seed, long measureFromNanos,
+                    ConcurrentHistogram[] histograms) throws JMSException {
+        this.symbols = symbols;
+        this.histograms = histograms;
+        this.random = new Random(seed);
+        this.positions = new AtomicIntegerArray(symbols.length);
+        this.measureFromNanos = measureFromNanos;
+        for (int i = 0; i < sent.length; i++) {
+            sent[i] = new AtomicLong();
+        }
+        this.client = new JmsBrokerClient(name, brokerUrl);
+        client.setWatchHandler((stockName, update) -> { });
+        client.setReplyListener(this);
+    }
+
+    /**
+     * Sends one request of the given type. Called by the client's scheduler thread only.
+     */
+    void issue(RequestType type, long scheduledNanos) throws JMSException {
+        int symbol = random.nextInt(symbols.length);
+        if (type == RequestType.SELL) {
+            // prefer a symbol we hold, start at a random one so sells spread across positions
+            for (int i = 0; i < symbols.length && positions.get(symbol) == 0; i++) {
+                symbol = (symbol + 1) % symbols.length;
+            }
+        }
+        pending.add(new Pending(type, symbol, scheduledNanos));
+        if (scheduledNanos >= measureFromNanos) {
+            sent[type.ordinal()].incrementAndGet();
+        }
+        switch (type) {
+            case BUY:
+                positions.incrementAndGet(symbol);
+                client.buy(symbols[symbol], 1);
+                break;
+            case SELL:
+                positions.decrementAndGet(symbol);
+                client.sell(symbols[symbol], 1);
+                break;
+            case LIST:
+                client.requestList();
+                break;
+            case INFO:
+                client.info(symbols[symbol]);
+                break;
+            case PROFILE:
+                client.profile();
+                break;
+            case WATCH:
+                client.watch(symbols[symbol]);
+                break;
+        }
+    }
+
+    @Override
+    public void onReply(BrokerMessage reply) {
+        long now = System.nanoTime();
+        Pending request = pending.poll();
+        if (request == null) {
+            unexpectedReplies++;
+            return;
+        }
+        boolean refused = reply instanceof TransactionRefusalMessage
+                || reply instanceof ExecutionReportMessage report && !report.isFilled();
+        if (refused) {
+            // the position change assumed at send time did not happen
+            if (request.type() == RequestType.BUY) {
+                positions.decrementAndGet(request.symbol());
+            } else if (request.type() == RequestType.SELL) {
+                positions.incrementAndGet(request.symbol());
+            }
+        }
+        if (request.scheduledNanos() < measureFromNanos) {
+            return;
+        }
+        histograms[request.type().ordinal()].record(now - request.scheduledNanos());
+        if (refused) {
+            this.refused[request.type().ordinal()]++;
+        }
+    }
+
+    int outstanding() {
+        return pending.size();
+    }
+
+    void close() throws JMSException {
+        client.quit();
+    }
+}